@@ -0,0 +1,93 @@
+package link.wo.mysheetmcp.bench;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import link.wo.mysheetmcp.store.AttachmentIndex;
+import link.wo.mysheetmcp.store.InMemoryAttachmentStore;
+import link.wo.mysheetmcp.util.AttachmentMode;
+import link.wo.mysheetmcp.util.Excel2JsonUtil;
+import link.wo.mysheetmcp.util.JsonStreamSink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 带嵌入图片的工作簿转换：提取图片、计算摘要并上传到内存中的桩存储(可注入上传延迟)。
+ * <p>
+ * 每次调用前换用空的附件索引，所有图片都会真正上传，不会因为按内容去重而跳过；
+ * LAZY 模式不上传，只记录附件引用，作为对照。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AttachmentBenchmark {
+
+    @Param({"xlsx", "xls"})
+    private String format;
+    @Param({"PIPELINED", "UPLOAD", "LAZY"})
+    private AttachmentMode mode;
+    @Param({"50"})
+    private int images;
+    @Param({"1000"})
+    private int rows;
+    // 桩存储每次上传的延迟(毫秒)
+    @Param({"0"})
+    private long latency;
+
+    private File file;
+    private File workDir;
+    private Excel2JsonUtil util;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = BenchWorkbooks.create(BenchWorkbooks.dir(), format, rows, 8, 0, true, images);
+        workDir = Files.createTempDirectory("attachment-bench").toFile();
+        InMemoryAttachmentStore store = new InMemoryAttachmentStore();
+        ReflectionTestUtils.setField(store, "LATENCY", latency);
+        util = BenchServices.converter(workDir, store);
+    }
+
+    @Setup(Level.Invocation)
+    public void emptyIndex() {
+        File indexDir = new File(workDir, "index");
+        indexDir.mkdirs();
+        new File(indexDir, "attachments.idx").delete();
+        AttachmentIndex index = new AttachmentIndex();
+        ReflectionTestUtils.setField(index, "STORAGE_CACHE", indexDir.getPath());
+        ReflectionTestUtils.setField(index, "meterRegistry", new SimpleMeterRegistry());
+        index.init();
+        ReflectionTestUtils.setField(util, "attachmentIndex", index);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        util.shutdown();
+    }
+
+    @Benchmark
+    public boolean convert() throws IOException {
+        JsonStreamSink sink = new JsonStreamSink(OutputStream.nullOutputStream(), false);
+        boolean uploaded = util.convert(file, "basic", sink, mode);
+        sink.finish(file.getName(), "");
+        return uploaded;
+    }
+}
@@ -0,0 +1,101 @@
+package link.wo.mysheetmcp.bench;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import link.wo.mysheetmcp.SampleWorkbooks;
+import link.wo.mysheetmcp.service.Excel2JsonService;
+import link.wo.mysheetmcp.service.SourceService;
+import link.wo.mysheetmcp.store.AttachmentStore;
+import link.wo.mysheetmcp.store.DiskCacheManager;
+import link.wo.mysheetmcp.store.ResultCache;
+import link.wo.mysheetmcp.store.RowStoreRegistry;
+import link.wo.mysheetmcp.store.SessionStore;
+import link.wo.mysheetmcp.util.Excel2JsonUtil;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+
+/**
+ * 不依赖 Spring 上下文组装的 Excel2JsonService 及其缓存、会话组件，与生产配置的默认值一致
+ */
+final class BenchServices implements AutoCloseable {
+
+    final Excel2JsonUtil util;
+    final DiskCacheManager diskCacheManager;
+    final SessionStore sessionStore;
+    final Excel2JsonService service;
+
+    /**
+     * @param hotBytes 内存热点缓存上限，0 表示关闭(每次从磁盘行存储写出)
+     */
+    BenchServices(File dir, long hotBytes) {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        String cache = new File(dir, "cache").getPath();
+        String upload = new File(dir, "upload").getPath();
+
+        util = converter(dir, null);
+        diskCacheManager = new DiskCacheManager();
+        ReflectionTestUtils.setField(diskCacheManager, "STORAGE_CACHE", cache);
+        ReflectionTestUtils.setField(diskCacheManager, "STORAGE_FILE", upload);
+        ReflectionTestUtils.setField(diskCacheManager, "QUOTA", Long.MAX_VALUE);
+        ReflectionTestUtils.setField(diskCacheManager, "EVICT_INTERVAL", 60_000L);
+        ReflectionTestUtils.setField(diskCacheManager, "meterRegistry", registry);
+        diskCacheManager.init();
+        ResultCache resultCache = new ResultCache();
+        ReflectionTestUtils.setField(resultCache, "MAX_BYTES", hotBytes);
+        ReflectionTestUtils.setField(resultCache, "meterRegistry", registry);
+        resultCache.init();
+        SourceService sourceService = new SourceService();
+        ReflectionTestUtils.setField(sourceService, "diskCacheManager", diskCacheManager);
+        ReflectionTestUtils.setField(sourceService, "STORAGE_FILE", upload);
+        ReflectionTestUtils.setField(sourceService, "STORAGE_CACHE", cache);
+        ReflectionTestUtils.setField(sourceService, "FRESH_TTL", 0L);
+        RowStoreRegistry rowStoreRegistry = new RowStoreRegistry();
+        ReflectionTestUtils.setField(rowStoreRegistry, "meterRegistry", registry);
+        rowStoreRegistry.init();
+        sessionStore = new SessionStore();
+        ReflectionTestUtils.setField(sessionStore, "rowStoreRegistry", rowStoreRegistry);
+        ReflectionTestUtils.setField(sessionStore, "MEMORY_BUDGET", 268435456L);
+        ReflectionTestUtils.setField(sessionStore, "MAX_IN_MEMORY", 10000);
+        ReflectionTestUtils.setField(sessionStore, "TTL", 86400000L);
+        ReflectionTestUtils.setField(sessionStore, "STORAGE_CACHE", cache);
+        ReflectionTestUtils.setField(sessionStore, "meterRegistry", registry);
+        sessionStore.init();
+
+        service = new Excel2JsonService();
+        ReflectionTestUtils.setField(service, "excel2JsonUtil", util);
+        ReflectionTestUtils.setField(service, "sourceService", sourceService);
+        ReflectionTestUtils.setField(service, "sessionStore", sessionStore);
+        ReflectionTestUtils.setField(service, "diskCacheManager", diskCacheManager);
+        ReflectionTestUtils.setField(service, "resultCache", resultCache);
+        ReflectionTestUtils.setField(service, "STORAGE_CACHE", cache);
+        ReflectionTestUtils.setField(service, "READ_MAX_ROWS", 500);
+        ReflectionTestUtils.setField(service, "READ_MAX_BYTES", 262144L);
+        ReflectionTestUtils.setField(service, "QUERY_CHUNK_ROWS", 65536);
+        ReflectionTestUtils.setField(service, "NDJSON_CHUNK_ROWS", 1000);
+    }
+
+    /**
+     * 完整加载工作簿的转换器，并行参数使用生产配置的默认值，attachmentStore 为 null 时不能上传附件
+     */
+    static Excel2JsonUtil converter(File dir, AttachmentStore attachmentStore) {
+        return converter(dir, attachmentStore, Long.MAX_VALUE);
+    }
+
+    /**
+     * streamingThreshold 为 0 时 xlsx 总是使用流式引擎
+     */
+    static Excel2JsonUtil converter(File dir, AttachmentStore attachmentStore, long streamingThreshold) {
+        Excel2JsonUtil util = SampleWorkbooks.converter(dir, streamingThreshold, attachmentStore);
+        ReflectionTestUtils.setField(util, "MAX_PARALLEL_PER_REQUEST", 4);
+        ReflectionTestUtils.setField(util, "PARALLEL_BUFFER_BYTES", 64L << 20);
+        util.init();
+        return util;
+    }
+
+    @Override
+    public void close() {
+        sessionStore.shutdown();
+        diskCacheManager.shutdown();
+        util.shutdown();
+    }
+}
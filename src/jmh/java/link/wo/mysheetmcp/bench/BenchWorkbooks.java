@@ -0,0 +1,151 @@
+package link.wo.mysheetmcp.bench;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.usermodel.CreationHelper;
+import org.apache.poi.ss.usermodel.Drawing;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Random;
+
+/**
+ * 基准用的合成工作簿，行数、列数、合并单元格密度、日期/金额格式、图片数量和文件格式(xls/xlsx)均可调整。
+ * <p>
+ * 列按 c % 4 依次为文本、数字、日期、金额；不带格式时日期和金额列为普通数字。第一行为表头。
+ * 相同参数的文件只生成一次，内容固定，不同次运行的结果可以直接比较。
+ */
+public final class BenchWorkbooks {
+
+    private static final LocalDate BASE_DATE = LocalDate.of(2025, 1, 1);
+
+    private BenchWorkbooks() {
+    }
+
+    /**
+     * 生成的工作簿所在目录，可用 -Dbench.dir 指定，默认 target/bench，多次运行和各 fork 之间共用
+     */
+    public static File dir() {
+        return new File(System.getProperty("bench.dir", "target/bench"));
+    }
+
+    /**
+     * @param format       xlsx 或 xls
+     * @param mergeDensity 数据行中开始一个 2x2 合并区域的比例，0 ~ 0.5
+     * @param formats      日期、金额列是否带数字格式
+     * @param images       单张 sheet 上的图片数量，内容互不相同
+     */
+    public static File create(File dir, String format, int rows, int cols, double mergeDensity, boolean formats, int images) throws IOException {
+        boolean xls = "xls".equalsIgnoreCase(format);
+        File file = new File(dir, String.format("bench-%dx%d-m%s-%s-i%d.%s", rows, cols, mergeDensity, formats ? "fmt" : "raw", images,
+                xls ? "xls" : "xlsx"));
+        if (file.exists()) {
+            return file;
+        }
+        if (xls && (rows >= 65536 || cols > 256)) {
+            throw new IllegalArgumentException("xls supports at most 65535 data rows and 256 columns");
+        }
+        dir.mkdirs();
+        try (Workbook workbook = xls ? new HSSFWorkbook() : new XSSFWorkbook()) {
+            CreationHelper helper = workbook.getCreationHelper();
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(helper.createDataFormat().getFormat("yyyy-mm-dd"));
+            CellStyle moneyStyle = workbook.createCellStyle();
+            moneyStyle.setDataFormat(helper.createDataFormat().getFormat("\"￥\"#,##0.00"));
+
+            Sheet sheet = workbook.createSheet("数据");
+            Row header = sheet.createRow(0);
+            for (int c = 0; c < cols; c++) {
+                header.createCell(c).setCellValue("列" + (c + 1));
+            }
+            for (int r = 1; r <= rows; r++) {
+                Row row = sheet.createRow(r);
+                for (int c = 0; c < cols; c++) {
+                    switch (c % 4) {
+                        case 0 -> row.createCell(c).setCellValue("R" + r + "C" + c);
+                        case 1 -> row.createCell(c).setCellValue(r * 1.5 + c);
+                        case 2 -> {
+                            if (formats) {
+                                row.createCell(c).setCellValue(date(r));
+                                row.getCell(c).setCellStyle(dateStyle);
+                            } else {
+                                row.createCell(c).setCellValue(r + c);
+                            }
+                        }
+                        default -> {
+                            row.createCell(c).setCellValue(r * 100.25);
+                            if (formats) {
+                                row.getCell(c).setCellStyle(moneyStyle);
+                            }
+                        }
+                    }
+                }
+            }
+            addMerges(sheet, rows, cols, mergeDensity);
+            addImages(workbook, sheet, rows, images);
+
+            // 先写临时文件，中断的生成不会留下不完整的工作簿
+            File tmp = new File(dir, file.getName() + ".tmp");
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                workbook.write(out);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+
+    private static Date date(int r) {
+        return Date.from(BASE_DATE.plusDays(r % 3650).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    /**
+     * 每隔 1/density 行开始一个 2 行 2 列的合并区域，起始列逐个右移，区域之间不重叠
+     */
+    private static void addMerges(Sheet sheet, int rows, int cols, double density) {
+        if (density <= 0 || cols < 2) {
+            return;
+        }
+        int step = Math.max(2, (int) Math.round(1 / Math.min(density, 0.5)));
+        int n = 0;
+        for (int r = 1; r + 1 <= rows; r += step, n++) {
+            int c = n % (cols - 1);
+            // 区域之间不重叠，跳过 POI 的重叠检查(合并区域多时为平方复杂度)
+            sheet.addMergedRegionUnsafe(new CellRangeAddress(r, r + 1, c, c + 1));
+        }
+    }
+
+    /**
+     * 图片锚定在第一列，均匀分布在数据行中，每张 4KB 且内容不同
+     */
+    private static void addImages(Workbook workbook, Sheet sheet, int rows, int images) {
+        if (images <= 0) {
+            return;
+        }
+        Drawing<?> drawing = sheet.createDrawingPatriarch();
+        Random random = new Random(images);
+        for (int i = 0; i < images; i++) {
+            byte[] png = new byte[4096];
+            random.nextBytes(png);
+            System.arraycopy(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'}, 0, png, 0, 8);
+            ClientAnchor anchor = workbook.getCreationHelper().createClientAnchor();
+            anchor.setCol1(0);
+            anchor.setRow1(1 + (int) ((long) i * rows / images));
+            anchor.setCol2(1);
+            anchor.setRow2(anchor.getRow1() + 1);
+            drawing.createPicture(anchor, workbook.addPicture(png, Workbook.PICTURE_TYPE_PNG));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package link.wo.mysheetmcp.bench;
+
+import com.alibaba.fastjson2.JSON;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Excel2JsonService.excel2Json 的缓存命中路径，文件在准备阶段已转换过一次。
+ * <ul>
+ *     <li>hot：结果从内存热点缓存返回</li>
+ *     <li>disk：热点缓存关闭，每次从 mmap 的行存储写出 JSON(或紧凑格式)</li>
+ * </ul>
+ * 参数为本地路径：hot 按文件大小和修改时间复用上次的摘要，disk 每次都包含计算文件 MD5 的开销。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Excel2JsonCacheBenchmark {
+
+    @Param({"hot", "disk"})
+    private String cache;
+    @Param({"basic", "row-object"})
+    private String type;
+    @Param({"json", "compact"})
+    private String output;
+    @Param({"5000"})
+    private int rows;
+    @Param({"12"})
+    private int cols;
+
+    private String path;
+    private BenchServices services;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        path = BenchWorkbooks.create(BenchWorkbooks.dir(), "xlsx", rows, cols, 0.05, true, 0).getAbsolutePath();
+        File workDir = Files.createTempDirectory("cache-bench").toFile();
+        services = new BenchServices(workDir, "hot".equals(cache) ? 64L << 20 : 0);
+        String first = excel2Json();
+        if (JSON.parseObject(first).containsKey("error")) {
+            throw new IllegalStateException("Conversion failed: " + first);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        services.close();
+    }
+
+    @Benchmark
+    public String excel2Json() {
+        return services.service.excel2Json(path, type, "lazy", null, null, null, null, output);
+    }
+}
@@ -0,0 +1,69 @@
+package link.wo.mysheetmcp.bench;
+
+import com.alibaba.fastjson2.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话逐行读取(foreach)的吞吐，每次操作读取一行；读到末尾后重置指针，所以只计入读行和组装响应的开销。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ForeachBenchmark {
+
+    @Param({"basic", "row-object"})
+    private String type;
+    @Param({"5000"})
+    private int rows;
+    @Param({"12"})
+    private int cols;
+
+    private BenchServices services;
+    private String sessionId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String path = BenchWorkbooks.create(BenchWorkbooks.dir(), "xlsx", rows, cols, 0.05, true, 0).getAbsolutePath();
+        File workDir = Files.createTempDirectory("foreach-bench").toFile();
+        services = new BenchServices(workDir, 0);
+        JSONObject opened = services.service.openFile(path, type, 0, "lazy", null, null, null, null);
+        sessionId = opened.getString("sessionId");
+        if (sessionId == null) {
+            throw new IllegalStateException("openFile failed: " + opened);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        services.close();
+    }
+
+    @Benchmark
+    public JSONObject foreach() {
+        JSONObject row = services.service.foreach(sessionId);
+        if (row.isEmpty()) {
+            services.service.reset(sessionId);
+        }
+        return row;
+    }
+}
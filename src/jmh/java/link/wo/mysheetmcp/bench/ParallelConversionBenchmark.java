@@ -0,0 +1,81 @@
+package link.wo.mysheetmcp.bench;
+
+import link.wo.mysheetmcp.SampleWorkbooks;
+import link.wo.mysheetmcp.util.AttachmentMode;
+import link.wo.mysheetmcp.util.Excel2JsonUtil;
+import link.wo.mysheetmcp.util.JsonStreamSink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按 sheet 并行解析多 sheet 工作簿，比较单请求并行度(parallelism)对吞吐的影响，parallelism=1 为逐个解析的基线。
+ * <p>
+ * xlsx 由流式引擎解析，xls 由每个线程各自打开的工作簿解析(多打开的工作簿计入耗时)。
+ * bufferBytes 为并行缓冲的预算，调小时可以观察超出预算后退回逐个直接写出的开销。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelConversionBenchmark {
+
+    @Param({"1", "2", "4"})
+    private int parallelism;
+    @Param({"xlsx", "xls"})
+    private String format;
+    @Param({"67108864"})
+    private long bufferBytes;
+    @Param({"8"})
+    private int sheets;
+    @Param({"5000"})
+    private int rows;
+    @Param({"10"})
+    private int cols;
+
+    private File file;
+    private Excel2JsonUtil util;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File dir = BenchWorkbooks.dir();
+        dir.mkdirs();
+        file = SampleWorkbooks.createMultiSheet(dir, sheets, rows, cols, format);
+        util = SampleWorkbooks.converter(Files.createTempDirectory("parallel-bench").toFile(), 0);
+        ReflectionTestUtils.setField(util, "PARALLEL_THREADS", 4);
+        ReflectionTestUtils.setField(util, "MAX_PARALLEL_PER_REQUEST", parallelism);
+        ReflectionTestUtils.setField(util, "PARALLEL_BUFFER_BYTES", bufferBytes);
+        util.init();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        util.shutdown();
+    }
+
+    @Benchmark
+    public long convert() throws IOException {
+        JsonStreamSink sink = new JsonStreamSink(OutputStream.nullOutputStream(), false);
+        util.convert(file, "basic", sink, AttachmentMode.LAZY);
+        return sink.finish(file.getName(), "");
+    }
+}
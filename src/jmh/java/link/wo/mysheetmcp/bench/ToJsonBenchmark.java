@@ -0,0 +1,73 @@
+package link.wo.mysheetmcp.bench;
+
+import com.alibaba.fastjson2.JSONObject;
+import link.wo.mysheetmcp.util.Excel2JsonUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Excel2JsonUtil.toJson 完整转换：打开工作簿、逐个单元格判断类型和格式(setCellValue)、列名(getExcelColumnName)、
+ * 合并区域查找，结果构建为 JSONObject 树。
+ * <p>
+ * 合并密度、日期/金额格式和列数分别放大合并区域查找、格式化和列名生成的开销，配合 -prof gc 观察每次转换的分配量。
+ * streaming=true 时 xlsx 使用流式引擎(XlsxStreamingReader)，单元格判断走同样的样式分类。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ToJsonBenchmark {
+
+    @Param({"xlsx", "xls"})
+    private String format;
+    @Param({"basic", "row-object"})
+    private String type;
+    @Param({"5000"})
+    private int rows;
+    @Param({"12"})
+    private int cols;
+    @Param({"0", "0.05"})
+    private double merges;
+    @Param({"true"})
+    private boolean formats;
+    // xlsx 是否使用流式引擎(xls 总是完整加载)
+    @Param({"false"})
+    private boolean streaming;
+
+    private File file;
+    private Excel2JsonUtil util;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = BenchWorkbooks.create(BenchWorkbooks.dir(), format, rows, cols, merges, formats, 0);
+        util = BenchServices.converter(Files.createTempDirectory("tojson-bench").toFile(), null, streaming ? 0 : Long.MAX_VALUE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        util.shutdown();
+    }
+
+    @Benchmark
+    public JSONObject toJson() throws IOException {
+        return util.toJson(file, type);
+    }
+}
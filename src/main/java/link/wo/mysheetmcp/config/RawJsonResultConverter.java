@@ -0,0 +1,22 @@
+package link.wo.mysheetmcp.config;
+
+import org.springframework.ai.tool.execution.DefaultToolCallResultConverter;
+import org.springframework.ai.tool.execution.ToolCallResultConverter;
+
+import java.lang.reflect.Type;
+
+/**
+ * 工具方法已经返回序列化好的 JSON 文本时原样返回，避免默认转换器再次解析/转义；
+ * 其他类型仍交给默认转换器处理
+ */
+public class RawJsonResultConverter implements ToolCallResultConverter {
+    private static final ToolCallResultConverter DEFAULT = new DefaultToolCallResultConverter();
+
+    @Override
+    public String convert(Object result, Type returnType) {
+        if (result instanceof String json) {
+            return json;
+        }
+        return DEFAULT.convert(result, returnType);
+    }
+}
@@ -4,18 +4,26 @@ import com.qcloud.cos.COSClient;
 import com.qcloud.cos.ClientConfig;
 import com.qcloud.cos.auth.BasicCOSCredentials;
 import com.qcloud.cos.auth.COSCredentials;
+import com.qcloud.cos.exception.CosClientException;
+import com.qcloud.cos.model.ObjectMetadata;
 import com.qcloud.cos.model.PutObjectRequest;
 import com.qcloud.cos.region.Region;
+import com.qcloud.cos.transfer.TransferManager;
+import com.qcloud.cos.transfer.TransferManagerConfiguration;
 import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.Date;
+import java.util.concurrent.Executors;
 
 @Service
+@ConditionalOnProperty(name = "attachment.store", havingValue = "cos", matchIfMissing = true)
 public class CosService {
 
     @Value("${cos.secret-id}")
@@ -30,7 +38,12 @@ public class CosService {
     @Value("${cos.bucket-name}")
     private String bucketName;
 
+    // 超过该大小(字节)的文件使用分块上传
+    @Value("${upload.multipart-threshold:16777216}")
+    private long multipartThreshold;
+
     private COSClient cosClient;
+    private TransferManager transferManager;
 
     @PostConstruct
     public void init() {
@@ -38,6 +51,13 @@ public class CosService {
         Region region = new Region(regionName);
         ClientConfig clientConfig = new ClientConfig(region);
         cosClient = new COSClient(cred, clientConfig);
+
+        // 分块上传：TransferManager 并发上传各个分块
+        transferManager = new TransferManager(cosClient, Executors.newFixedThreadPool(8));
+        TransferManagerConfiguration configuration = new TransferManagerConfiguration();
+        configuration.setMultipartUploadThreshold(multipartThreshold);
+        configuration.setMinimumUploadPartSize(Math.max(1024 * 1024, multipartThreshold / 4));
+        transferManager.setConfiguration(configuration);
     }
 
     /**
@@ -67,13 +87,39 @@ public class CosService {
         return getUrl(key);
     }
 
-    private String getUrl(String key) {
+    /**
+     * 上传内存中的数据，超过分块阈值时使用分块上传
+     *
+     * @param key  文件名 (包含路径)
+     * @param data 文件内容
+     * @return 文件的 URL
+     */
+    public String uploadBytes(String key, byte[] data) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(data.length);
+        if (data.length < multipartThreshold) {
+            return uploadFile(key, new ByteArrayInputStream(data), metadata);
+        }
+        try {
+            PutObjectRequest putObjectRequest = new PutObjectRequest(bucketName, key, new ByteArrayInputStream(data), metadata);
+            transferManager.upload(putObjectRequest).waitForUploadResult();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CosClientException("Multipart upload interrupted: " + key, e);
+        }
+        return getUrl(key);
+    }
+
+    public String getUrl(String key) {
         // 使用 SDK 提供的方法获取 URL，这能更好地处理不同区域的域名差异
         URL url = cosClient.getObjectUrl(bucketName, key);
         return url.toString();
     }
     
     public void shutdown() {
+        if (transferManager != null) {
+            transferManager.shutdownNow(false);
+        }
         if (cosClient != null) {
             cosClient.shutdown();
         }
@@ -1,154 +1,166 @@
 package link.wo.mysheetmcp.service;
 
-import cn.hutool.cache.CacheUtil;
-import cn.hutool.cache.impl.TimedCache;
-import cn.hutool.crypto.digest.DigestUtil;
 import cn.hutool.core.io.FileUtil;
-import cn.hutool.core.util.IdUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.http.HttpUtil;
 import cn.hutool.log.Log;
 import cn.hutool.log.LogFactory;
 import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
+import link.wo.mysheetmcp.config.RawJsonResultConverter;
+import link.wo.mysheetmcp.service.SourceService.SourceFile;
+import link.wo.mysheetmcp.store.ColumnarTable;
+import link.wo.mysheetmcp.store.DeferredAttachmentIndex;
+import link.wo.mysheetmcp.store.DiskCacheManager;
+import link.wo.mysheetmcp.store.ResultCache;
+import link.wo.mysheetmcp.store.RowStore;
+import link.wo.mysheetmcp.store.SessionStore;
+import link.wo.mysheetmcp.store.SessionStore.Session;
+import link.wo.mysheetmcp.util.AttachmentMode;
+import link.wo.mysheetmcp.util.CompactJsonSink;
 import link.wo.mysheetmcp.util.Excel2JsonUtil;
+import link.wo.mysheetmcp.util.ExcelJsonSink;
+import link.wo.mysheetmcp.util.JsonStreamSink;
+import link.wo.mysheetmcp.util.JsonTreeSink;
+import link.wo.mysheetmcp.util.Selection;
+import link.wo.mysheetmcp.util.TableQuery;
+import link.wo.mysheetmcp.util.TeeSink;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 @Service
 public class Excel2JsonService {
 
-    @Value("${storage.file}")
-    private String STORAGE_FILE;
     @Value("${storage.cache}")
     private String STORAGE_CACHE;
+    // 批量读取的行数与字节上限
+    @Value("${session.read.max-rows:500}")
+    private int READ_MAX_ROWS;
+    @Value("${session.read.max-bytes:262144}")
+    private long READ_MAX_BYTES;
+    // 查询按行区间并行执行时每个区间的最少行数
+    @Value("${session.query.chunk-rows:65536}")
+    private int QUERY_CHUNK_ROWS;
+    // ndjson 输出每行包含的数据行数
+    @Value("${output.ndjson-chunk-rows:1000}")
+    private int NDJSON_CHUNK_ROWS;
 
     @Autowired
     Excel2JsonUtil excel2JsonUtil;
+    @Autowired
+    SourceService sourceService;
+    @Autowired
+    SessionStore sessionStore;
+    @Autowired
+    DiskCacheManager diskCacheManager;
+    @Autowired
+    ResultCache resultCache;
 
     private static final Log log = LogFactory.get();
 
-    // Session Cache: Key = sessionId, Value = SessionData. Expire after 24 hours.
-    private static final TimedCache<String, SessionData> sessionCache = CacheUtil.newTimedCache(24 * 60 * 60 * 1000);
-
-    static {
-        // Schedule pruning every hour to remove expired sessions
-        sessionCache.schedulePrune(60 * 60 * 1000);
-    }
-
-    // Inner class to hold session data
-    public static class SessionData {
-        private String sessionId;
-        private JSONArray dataRows;
-        private JSONObject header;
-        private int currentIndex;
+    // 缓存文件路径 -> 正在进行的转换
+    private final ConcurrentHashMap<String, CompletableFuture<RowStore>> conversions = new ConcurrentHashMap<>();
 
-        public SessionData(String sessionId, JSONArray dataRows, JSONObject header, int currentIndex) {
-            this.sessionId = sessionId;
-            this.dataRows = dataRows;
-            this.header = header;
-            this.currentIndex = currentIndex;
-        }
-
-        public String getSessionId() { return sessionId; }
-        public JSONArray getDataRows() { return dataRows; }
-        public JSONObject getHeader() { return header; }
-        public int getCurrentIndex() { return currentIndex; }
-        public void setCurrentIndex(int currentIndex) { this.currentIndex = currentIndex; }
-    }
+    private static final String ATTACHMENTS_DESCRIPTION = "Embedded attachment mode: 'eager' (default) uploads attachments and returns URLs; "
+            + "'lazy' skips uploads and returns attachment:{md5} references for resolveAttachment";
+    private static final String SHEET_DESCRIPTION = "Sheet name or 0-based index; basic mode converts all sheets and row-object mode the first sheet by default";
+    private static final String COLUMNS_DESCRIPTION = "Comma-separated columns to return, as letters (A,C,F) or header names from the first row";
+    private static final String ROWS_DESCRIPTION = "Excel row range (1-based, inclusive), e.g. 2-100, 10- or -50";
+    private static final String WHERE_DESCRIPTION = "Row filter, conditions joined with 'and': column op value, op is one of = != > >= < <= ~ (contains), "
+            + "e.g. Amount > 100 and Status = 'paid'";
+    private static final String FORMAT_DESCRIPTION = "Output format: 'json' (default) writes every cell as an object; 'compact' writes a column schema "
+            + "(types and merged ranges) once per sheet and each row as an array [rowIndex, ...values in column order]; "
+            + "'ndjson' is compact split into one JSON object per line: metadata, then per sheet its schema followed by row chunks";
 
     @Tool(description = "Open an Excel file and create a read session. Returns a sessionId.")
     public JSONObject openFile(@ToolParam(description = "Excel file URL or local path") String url,
                            @ToolParam(description = "Reading mode: 'basic' or 'row-object'", required = false) String type,
-                           @ToolParam(description = "Start reading from this line offset (default 0)", required = false) Integer offset) {
-        log.info("Calling openFile, url:{}, type:{}, offset:{}", url, type, offset);
-        
-        // 1. Convert Excel to JSON
-        JSONObject json = excel2Json(url, type);
-        
-        if (json == null || json.isEmpty()) {
-            throw new RuntimeException("Failed to parse Excel file or file is empty.");
+                           @ToolParam(description = "Start reading from this line offset (default 0)", required = false) Integer offset,
+                           @ToolParam(description = ATTACHMENTS_DESCRIPTION, required = false) String attachments,
+                           @ToolParam(description = SHEET_DESCRIPTION, required = false) String sheet,
+                           @ToolParam(description = COLUMNS_DESCRIPTION, required = false) String columns,
+                           @ToolParam(description = ROWS_DESCRIPTION, required = false) String rows,
+                           @ToolParam(description = WHERE_DESCRIPTION, required = false) String where) {
+        log.info("Calling openFile, url:{}, type:{}, offset:{}, attachments:{}, sheet:{}, columns:{}, rows:{}, where:{}",
+                url, type, offset, attachments, sheet, columns, rows, where);
+
+        // 1. Convert Excel into an on-disk row store (reused if the same content was opened before)
+        RowStore store;
+        try {
+            store = openRowStore(url, type, AttachmentMode.isLazy(attachments), Selection.parse(sheet, columns, rows, where));
+        } catch (IllegalArgumentException e) {
+            JSONObject error = new JSONObject();
+            error.put("error", e.getMessage());
+            return error;
         }
 
-        // 2. Prepare Data for Session
-        JSONArray dataRows = new JSONArray();
-        JSONObject header = null;
-
-        if ("row-object".equalsIgnoreCase(type)) {
-            if (json.containsKey("data")) {
-                dataRows = json.getJSONArray("data");
-            }
-            if (json.containsKey("header")) {
-                header = json.getJSONObject("header");
-            }
-        } else {
-            // Default 'basic' mode: Flatten rows from all sheets
-            if (json.containsKey("data")) {
-                JSONArray sheets = json.getJSONArray("data");
-                for (int i = 0; i < sheets.size(); i++) {
-                    JSONObject sheet = sheets.getJSONObject(i);
-                    if (sheet.containsKey("rows")) {
-                        dataRows.addAll(sheet.getJSONArray("rows"));
-                    }
-                }
-            }
+        if (store == null) {
+            throw new RuntimeException("Failed to parse Excel file or file is empty.");
         }
 
-        // 3. Generate Session ID
-        String sessionId = IdUtil.fastSimpleUUID();
+        // 2. Create the session, the opened row store is kept while it fits the session memory budget
         int startOffset = (offset != null && offset >= 0) ? offset : 0;
+        Session session = sessionStore.create(store, startOffset);
 
-        // 4. Store in Cache
-        SessionData sessionData = new SessionData(sessionId, dataRows, header, startOffset);
-        sessionCache.put(sessionId, sessionData);
-
-        log.info("Session created: {}, rows: {}", sessionId, dataRows.size());
+        log.info("Session created: {}, rows: {}", session.getSessionId(), store.getRowCount());
         
         JSONObject result = new JSONObject();
-        result.put("sessionId", sessionId);
+        result.put("sessionId", session.getSessionId());
         return result;
     }
 
     @Tool(description = "Read next line from the opened session. Returns header and current line content.")
     public JSONObject foreach(@ToolParam(description = "Session ID returned by openFile") String sessionId) {
         // 1. Get Session
-        SessionData sessionData = sessionCache.get(sessionId);
+        Session sessionData = sessionStore.get(sessionId);
         if (sessionData == null) {
             JSONObject error = new JSONObject();
             error.put("error", "Session expired or invalid");
             return error;
         }
 
-        // 2. Refresh Expiry (by re-putting) - strictly speaking TimedCache get doesn't refresh, so we must put.
-        // We will put it back at the end anyway after updating index.
-
-        // 3. Read Current Line
+        // 2. Read Current Line (SessionStore.get refreshes the expiry)
         int index = sessionData.getCurrentIndex();
-        JSONArray rows = sessionData.getDataRows();
 
-        if (index >= rows.size()) {
+        if (index >= sessionData.getRowCount()) {
             // End of file
-            sessionCache.put(sessionId, sessionData); // Refresh expiry even if EOF? Yes, keep session alive.
             return new JSONObject(); // Return empty to indicate EOF
         }
 
-        Object currentRow = rows.get(index);
-        
-        // 4. Update Index
+        JSONObject currentRow;
+        JSONObject header;
+        try {
+            RowStore store = sessionStore.open(sessionData);
+            currentRow = store.readRow(index);
+            header = store.readHeader();
+        } catch (IOException e) {
+            log.error("Failed to read row {} of session {}", index, sessionId, e);
+            JSONObject error = new JSONObject();
+            error.put("error", "Session data unavailable");
+            return error;
+        }
+
+        // 3. Update Index
         sessionData.setCurrentIndex(index + 1);
-        sessionCache.put(sessionId, sessionData); // Update cache and refresh expiry
 
-        // 5. Construct Response
+        // 4. Construct Response
         JSONObject result = new JSONObject();
-        if (sessionData.getHeader() != null) {
-            result.put("header", sessionData.getHeader());
+        if (header != null) {
+            result.put("header", header);
         }
         result.put("row", currentRow);
         
@@ -157,89 +169,477 @@ public class Excel2JsonService {
 
     @Tool(description = "Reset the reading pointer to the beginning (0) for the given session.")
     public String reset(@ToolParam(description = "Session ID") String sessionId) {
-        SessionData sessionData = sessionCache.get(sessionId);
+        Session sessionData = sessionStore.get(sessionId);
         if (sessionData == null) {
             return "Error: Session expired or invalid";
         }
         
         sessionData.setCurrentIndex(0);
-        sessionCache.put(sessionId, sessionData); // Update and refresh
         
         return "Success: Session reset to 0";
     }
 
-    @Tool(description = "将excel文件转换成json")
-    public JSONObject excel2Json(@ToolParam(description = "excel文件URL或本地路径") String excelFileURL,
-                             @ToolParam(description = "解析模式：basic 或 row-object", required = false) String type) {
-        log.info("调用excel2Json方法,url:{}, type:{}", excelFileURL, type);
-        JSONObject json = new JSONObject();
-        if (StrUtil.isEmpty(excelFileURL)) {
-            return json;
+    @Tool(description = "Read a batch of rows starting at the session cursor and advance the cursor. Returns header, rows and the next position.")
+    public JSONObject readRows(@ToolParam(description = "Session ID returned by openFile") String sessionId,
+                               @ToolParam(description = "Number of rows to read (capped by the server row/byte budget)", required = false) Integer count) {
+        Session sessionData = sessionStore.get(sessionId);
+        if (sessionData == null) {
+            JSONObject error = new JSONObject();
+            error.put("error", "Session expired or invalid");
+            return error;
         }
 
-        File destFile;
-        String fileName;
+        JSONObject result = readBatch(sessionId, sessionData, sessionData.getCurrentIndex(), count);
+        if (result.containsKey("next")) {
+            sessionData.setCurrentIndex(result.getIntValue("next"));
+        }
+        return result;
+    }
 
-        if (excelFileURL.startsWith("http://") || excelFileURL.startsWith("https://")) {
-            // 获取文件名
-            fileName = excelFileURL.substring(excelFileURL.lastIndexOf('/') + 1);
-            // 获取文件扩展名
-            String fileExtension = fileName.substring(fileName.lastIndexOf('.') + 1);
+    @Tool(description = "Read rows in the absolute range [from, from + count) without moving the session cursor.")
+    public JSONObject readRange(@ToolParam(description = "Session ID returned by openFile") String sessionId,
+                                @ToolParam(description = "First row offset (0-based)") Integer from,
+                                @ToolParam(description = "Number of rows to read (capped by the server row/byte budget)", required = false) Integer count) {
+        Session sessionData = sessionStore.get(sessionId);
+        if (sessionData == null) {
+            JSONObject error = new JSONObject();
+            error.put("error", "Session expired or invalid");
+            return error;
+        }
+
+        int start = (from != null && from >= 0) ? from : 0;
+        return readBatch(sessionId, sessionData, start, count);
+    }
+
+    @Tool(description = "Move the session cursor to an absolute row offset.")
+    public JSONObject seek(@ToolParam(description = "Session ID") String sessionId,
+                           @ToolParam(description = "Row offset (0-based) to move the cursor to") Integer offset) {
+        JSONObject result = new JSONObject();
+        Session sessionData = sessionStore.get(sessionId);
+        if (sessionData == null) {
+            result.put("error", "Session expired or invalid");
+            return result;
+        }
 
-            //生成一个以时间戳+四位随机数字的新文件名
-            String newFileName = System.currentTimeMillis() + IdUtil.nanoId(4) + "." + fileExtension;
-            // 将excelFile保存到STORAGE_FILE中
-            destFile = new File(STORAGE_FILE, newFileName);
-            // 确保目录存在
-            if (!destFile.getParentFile().exists()) {
-                destFile.getParentFile().mkdirs();
+        int position = (offset != null && offset >= 0) ? Math.min(offset, sessionData.getRowCount()) : 0;
+        sessionData.setCurrentIndex(position);
+
+        result.put("position", position);
+        result.put("total", sessionData.getRowCount());
+        return result;
+    }
+
+    @Tool(description = "Query an open session inside the server instead of reading every row: filter (where), project (select), "
+            + "group by, aggregate (sum, count, avg, min, max, distinct), order by and limit. Returns only the result table. "
+            + "Columns are referenced by letter (B) or header name; in basic mode the first row of the sheet is the header.")
+    public JSONObject query(@ToolParam(description = "Session ID returned by openFile") String sessionId,
+                            @ToolParam(description = "Sheet name or 0-based index in basic mode (default: first sheet)", required = false) String sheet,
+                            @ToolParam(description = "Comma-separated columns to return when not aggregating (default: all columns)", required = false) String select,
+                            @ToolParam(description = WHERE_DESCRIPTION, required = false) String where,
+                            @ToolParam(description = "Comma-separated group by columns", required = false) String groupBy,
+                            @ToolParam(description = "Comma-separated aggregates, e.g. sum(Amount), count(*), avg(B), min(C), max(C), distinct(A) "
+                                    + "(distinct counts distinct values)", required = false) String aggregates,
+                            @ToolParam(description = "Comma-separated result columns to sort by, each optionally followed by asc or desc, "
+                                    + "e.g. sum(Amount) desc", required = false) String orderBy,
+                            @ToolParam(description = "Maximum number of result rows (capped by the server row budget)", required = false) Integer limit) {
+        log.info("Calling query, sessionId:{}, sheet:{}, select:{}, where:{}, groupBy:{}, aggregates:{}, orderBy:{}, limit:{}",
+                sessionId, sheet, select, where, groupBy, aggregates, orderBy, limit);
+        JSONObject error = new JSONObject();
+        Session sessionData = sessionStore.get(sessionId);
+        if (sessionData == null) {
+            error.put("error", "Session expired or invalid");
+            return error;
+        }
+        try {
+            TableQuery query = TableQuery.parse(select, where, groupBy, aggregates, orderBy);
+            ColumnarTable table = sessionStore.table(sessionData);
+            if (table.getTables().isEmpty()) {
+                error.put("error", "Session has no data");
+                return error;
             }
+            List<String> names = new ArrayList<>();
+            table.getTables().forEach(t -> names.add(t.getName()));
+            int sheetIndex = table.isRowObject() ? 0 : Selection.parse(sheet, null, null, null).sheetIndex(names, 0);
+            int max = (limit != null && limit > 0) ? Math.min(limit, READ_MAX_ROWS) : READ_MAX_ROWS;
+            long start = System.currentTimeMillis();
+            JSONObject result = query.execute(table, table.getTables().get(sheetIndex), excel2JsonUtil.getConvertPool(),
+                    excel2JsonUtil.getMaxParallelPerRequest(), QUERY_CHUNK_ROWS, max);
+            log.info("Query on session {} matched {} rows in {}ms", sessionId, result.get("matched"), System.currentTimeMillis() - start);
+            return result;
+        } catch (IllegalArgumentException e) {
+            error.put("error", e.getMessage());
+            return error;
+        } catch (IOException e) {
+            log.error("Failed to query session {}", sessionId, e);
+            error.put("error", "Session data unavailable");
+            return error;
+        }
+    }
+
+    /**
+     * 从行存储中读取一批行，返回的行数受 READ_MAX_ROWS / READ_MAX_BYTES 限制
+     */
+    private JSONObject readBatch(String sessionId, Session sessionData, int from, Integer count) {
+        JSONObject result = new JSONObject();
+        int total = sessionData.getRowCount();
+        int limit = (count != null && count > 0) ? Math.min(count, READ_MAX_ROWS) : READ_MAX_ROWS;
 
-            long size = HttpUtil.downloadFile(excelFileURL, FileUtil.file(destFile));
+        JSONArray rows;
+        JSONObject header;
+        try {
+            RowStore store = sessionStore.open(sessionData);
+            rows = store.readRows(from, limit, READ_MAX_BYTES);
+            header = store.readHeader();
+        } catch (IOException e) {
+            log.error("Failed to read rows from {} of session {}", from, sessionId, e);
+            result.put("error", "Session data unavailable");
+            return result;
+        }
 
-            if (size <= 0) {
-                log.error("下载文件失败");
-                return json;
+        int next = Math.min(from, total) + rows.size();
+        int requested = Math.max(0, Math.min(count != null && count > 0 ? count : limit, total - from));
+        if (header != null) {
+            result.put("header", header);
+        }
+        result.put("rows", rows);
+        result.put("from", from);
+        result.put("next", next);
+        result.put("total", total);
+        result.put("eof", next >= total);
+        // 因行数或字节预算被截断，调用方可从 next 继续读取
+        result.put("truncated", rows.size() < requested);
+        log.debug("Session {} read rows [{}, {}) of {}", sessionId, from, next, total);
+        return result;
+    }
+
+    @Tool(description = "Resolve an attachment reference (attachment:{md5}) returned in 'lazy' attachment mode to a URL, uploading the attachment on first use.")
+    public JSONObject resolveAttachment(@ToolParam(description = "Attachment reference from a 'file' cell, e.g. attachment:9e107d9d372bb6826bd81d3542a419d6") String ref) {
+        log.info("Calling resolveAttachment, ref:{}", ref);
+        JSONObject result = new JSONObject();
+        String hash = DeferredAttachmentIndex.hashOf(ref);
+        if (hash == null) {
+            result.put("error", "Invalid attachment reference");
+            return result;
+        }
+
+        String url;
+        try {
+            url = excel2JsonUtil.resolveAttachment(hash);
+        } catch (Exception e) {
+            log.error("Failed to resolve attachment {}", ref, e);
+            result.put("error", "Failed to upload attachment");
+            return result;
+        }
+        if (url == null) {
+            result.put("error", "Attachment not found");
+            return result;
+        }
+        result.put("ref", ref);
+        result.put("url", url);
+        return result;
+    }
+
+    @Tool(description = "将excel文件转换成json", resultConverter = RawJsonResultConverter.class)
+    public String excel2Json(@ToolParam(description = "excel文件URL或本地路径") String excelFileURL,
+                             @ToolParam(description = "解析模式：basic 或 row-object", required = false) String type,
+                             @ToolParam(description = ATTACHMENTS_DESCRIPTION, required = false) String attachments,
+                             @ToolParam(description = SHEET_DESCRIPTION, required = false) String sheet,
+                             @ToolParam(description = COLUMNS_DESCRIPTION, required = false) String columns,
+                             @ToolParam(description = ROWS_DESCRIPTION, required = false) String rows,
+                             @ToolParam(description = WHERE_DESCRIPTION, required = false) String where,
+                             @ToolParam(description = FORMAT_DESCRIPTION, required = false) String format) {
+        log.info("调用excel2Json方法,url:{}, type:{}, attachments:{}, sheet:{}, columns:{}, rows:{}, where:{}, format:{}",
+                excelFileURL, type, attachments, sheet, columns, rows, where, format);
+        if (StrUtil.isEmpty(excelFileURL)) {
+            return "{}";
+        }
+        try {
+            Selection selection = Selection.parse(sheet, columns, rows, where);
+            if (StrUtil.isBlank(format) || "json".equalsIgnoreCase(format.trim())) {
+                return excel2Json(excelFileURL, type, attachments, selection);
+            }
+            String compact = format.trim().toLowerCase();
+            if (!CompactJsonSink.FORMAT.equals(compact) && !"ndjson".equals(compact)) {
+                throw new IllegalArgumentException("Unknown format: " + format);
             }
+            return excel2Compact(excelFileURL, type, attachments, selection, "ndjson".equals(compact) ? NDJSON_CHUNK_ROWS : 0);
+        } catch (IllegalArgumentException e) {
+            JSONObject error = new JSONObject();
+            error.put("error", e.getMessage());
+            return error.toJSONString();
+        }
+    }
+
+    private String excel2Json(String excelFileURL, String type, String attachments, Selection selection) {
+        boolean lazy = AttachmentMode.isLazy(attachments);
+        boolean rowObject = Excel2JsonUtil.isRowObject(type);
+        String suffix = selectionSuffix(selection);
+
+        // 热点结果直接从内存返回，摘要可由 URL 元数据或文件大小、修改时间确定时不解析来源
+        String known = sourceService.knownMd5(excelFileURL);
+        String hot = known != null ? resultCache.get(ResultCache.key(known, rowObject, lazy) + suffix) : null;
+        if (hot != null) {
+            log.info("Memory cache hit for file: {}, md5: {}", excelFileURL, known);
+            return hot;
+        }
+
+        SourceFile source = sourceService.resolve(excelFileURL);
+        if (source == null) {
+            return "{}";
+        }
+
+        String md5 = source.md5();
+        String hotKey = ResultCache.key(md5, rowObject, lazy) + suffix;
+        hot = md5.equals(known) ? null : resultCache.get(hotKey);
+        if (hot != null) {
+            log.info("Memory cache hit for file: {}, md5: {}", source.fileName(), md5);
+            return hot;
+        }
+
+        // 结果直接以 JSON 文本写入响应缓冲区，不构建中间的 JSONObject 树
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+
+        // Cache Logic: 二进制缓存同时作为会话行存储，命中时逐行从 mmap 的文件写出
+        RowStore cached = openCachedStore(source, md5, type, lazy, selection);
+        if (cached != null) {
+            log.info("Cache hit for file: {}, md5: {}", source.fileName(), md5);
         } else {
-            // 本地文件
-            destFile = new File(excelFileURL);
-            if (!destFile.exists()) {
-                log.error("文件不存在: {}", excelFileURL);
+            // 同一内容同时只转换一次，等待中的调用方从转换好的行存储写出
+            Flight flight = singleFlight(rowStoreFile(md5, type, lazy, selection),
+                    () -> convertToJson(source, type, lazy, selection, response));
+            if (flight.leader()) {
+                String json = response.toString(StandardCharsets.UTF_8);
+                resultCache.put(hotKey, json);
                 return json;
             }
-            fileName = destFile.getName();
+            cached = flight.store();
         }
+        cached.writeJson(new JsonStreamSink(response, rowObject));
+        String json = response.toString(StandardCharsets.UTF_8);
+        resultCache.put(hotKey, json);
+        return json;
+    }
 
-        // Calculate MD5
-        String md5 = DigestUtil.md5Hex(destFile);
-        
-        // Cache Logic
-        File cacheDir = new File(STORAGE_CACHE);
-        if (!cacheDir.exists()) {
-            cacheDir.mkdirs();
+    /**
+     * 紧凑格式：先得到(必要时生成)行存储，再写出列定义和值数组；chunkRows 大于 0 时输出 NDJSON
+     */
+    private String excel2Compact(String excelFileURL, String type, String attachments, Selection selection, int chunkRows) {
+        boolean lazy = AttachmentMode.isLazy(attachments);
+        boolean rowObject = Excel2JsonUtil.isRowObject(type);
+        String suffix = selectionSuffix(selection) + (chunkRows > 0 ? "_ndjson" + chunkRows : "_compact");
+
+        String known = sourceService.knownMd5(excelFileURL);
+        String hot = known != null ? resultCache.get(ResultCache.key(known, rowObject, lazy) + suffix) : null;
+        if (hot != null) {
+            log.info("Memory cache hit for file: {}, md5: {}", excelFileURL, known);
+            return hot;
+        }
+
+        SourceFile source = sourceService.resolve(excelFileURL);
+        if (source == null) {
+            return "{}";
+        }
+        String hotKey = ResultCache.key(source.md5(), rowObject, lazy) + suffix;
+        hot = source.md5().equals(known) ? null : resultCache.get(hotKey);
+        if (hot != null) {
+            log.info("Memory cache hit for file: {}, md5: {}", source.fileName(), source.md5());
+            return hot;
+        }
+
+        RowStore store = openRowStore(source, type, lazy, selection);
+        if (store == null) {
+            throw new RuntimeException("Failed to parse Excel file or file is empty.");
+        }
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        CompactJsonSink sink = new CompactJsonSink(response, store.isRowObject(), chunkRows);
+        store.replay(sink);
+        long bytes = sink.finish(store.getFilename(), store.getMd5());
+        log.info("excel2json compact: {}, md5:{}, bytes:{}", source.fileName(), source.md5(), bytes);
+        String json = response.toString(StandardCharsets.UTF_8);
+        resultCache.put(hotKey, json);
+        return json;
+    }
+
+    /**
+     * 解析文件，JSON 文本写入 response 的同时写入二进制缓存；附件上传与解析同时进行
+     */
+    private RowStore convertToJson(SourceFile source, String type, boolean lazy, Selection selection, ByteArrayOutputStream response) {
+        boolean rowObject = Excel2JsonUtil.isRowObject(type);
+        JsonStreamSink jsonSink = new JsonStreamSink(response, rowObject);
+        RowStore store;
+        if (lazy) {
+            store = convertToStore(source, type, jsonSink, AttachmentMode.LAZY, selection);
+        } else {
+            store = convertToStore(source, type, jsonSink, AttachmentMode.PIPELINED, selection);
+            if (store == null) {
+                log.warn("Attachment uploads failed for {}, converting again without them", source.fileName());
+                response.reset();
+                jsonSink = new JsonStreamSink(response, rowObject);
+                store = convertToStore(source, type, jsonSink, AttachmentMode.UPLOAD, selection);
+            }
+        }
+        long bytes = jsonSink.finish(source.fileName(), source.md5());
+        log.info("excel2json: {}, md5:{}, bytes:{}", source.fileName(), source.md5(), bytes);
+        return store;
+    }
+
+    /**
+     * 打开(必要时生成)文件对应的行存储，解析时只写磁盘，不在内存中构建完整的 JSON
+     */
+    private RowStore openRowStore(String excelFileURL, String type, boolean lazy, Selection selection) {
+        if (StrUtil.isEmpty(excelFileURL)) {
+            return null;
+        }
+        SourceFile source = sourceService.resolve(excelFileURL);
+        if (source == null) {
+            return null;
         }
-        String cacheFileName = md5 + (StrUtil.isEmpty(type) ? "" : "_" + type) + ".json";
-        File cacheFile = new File(cacheDir, cacheFileName);
+        return openRowStore(source, type, lazy, selection);
+    }
 
-        if (cacheFile.exists()) {
-            log.info("Cache hit for file: {}, md5: {}", fileName, md5);
-            return JSON.parseObject(FileUtil.readUtf8String(cacheFile));
+    private RowStore openRowStore(SourceFile source, String type, boolean lazy, Selection selection) {
+        String md5 = source.md5();
+        RowStore cached = openCachedStore(source, md5, type, lazy, selection);
+        if (cached != null) {
+            log.info("Row store hit for file: {}, md5: {}", source.fileName(), md5);
+            return cached;
         }
 
+        return singleFlight(rowStoreFile(md5, type, lazy, selection), () -> {
+            if (lazy) {
+                return convertToStore(source, type, null, AttachmentMode.LAZY, selection);
+            }
+            RowStore store = convertToStore(source, type, null, AttachmentMode.PIPELINED, selection);
+            if (store == null) {
+                log.warn("Attachment uploads failed for {}, converting again without them", source.fileName());
+                store = convertToStore(source, type, null, AttachmentMode.UPLOAD, selection);
+            }
+            return store;
+        }).store();
+    }
+
+    /**
+     * 单次转换的结果，leader 为 true 表示由当前调用方执行了转换
+     */
+    private record Flight(RowStore store, boolean leader) {
+    }
+
+    /**
+     * 同一缓存文件同时只执行一次转换：第一个调用方执行 conversion，其余调用方等待并共享同一个行存储，
+     * 转换失败时一起失败。获得执行权后先检查等待期间是否已有转换提交了缓存
+     */
+    private Flight singleFlight(File storeFile, Supplier<RowStore> conversion) {
+        String key = storeFile.getAbsolutePath();
+        CompletableFuture<RowStore> flight = new CompletableFuture<>();
+        CompletableFuture<RowStore> running = conversions.putIfAbsent(key, flight);
+        if (running != null) {
+            log.info("Waiting for in-flight conversion: {}", storeFile.getName());
+            try {
+                return new Flight(running.join(), false);
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : new RuntimeException(e.getCause());
+            }
+        }
         try {
-            json = excel2JsonUtil.toJson(destFile, type);
-            // Add metadata
-            json.put("filename", fileName);
-            json.put("md5", md5);
-            
-            // Save to cache
-            FileUtil.writeUtf8String(json.toJSONString(), cacheFile);
-            
-            log.info("excel2json:{}", json);
+            RowStore committed = committedStore(storeFile);
+            Flight result = committed != null ? new Flight(committed, false) : new Flight(conversion.get(), true);
+            flight.complete(result.store());
+            return result;
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            conversions.remove(key, flight);
+        }
+    }
+
+    /**
+     * 解析文件并写入二进制缓存，jsonSink 不为空时同时写出 JSON 文本。
+     * PIPELINED 模式下有附件上传失败时不提交缓存，返回 null
+     */
+    private RowStore convertToStore(SourceFile source, String type, JsonStreamSink jsonSink, AttachmentMode mode, Selection selection) {
+        File storeFile = rowStoreFile(source.md5(), type, mode == AttachmentMode.LAZY, selection);
+        try (RowStore.Writer writer = RowStore.create(storeFile, Excel2JsonUtil.isRowObject(type))) {
+            ExcelJsonSink sink = jsonSink != null ? new TeeSink(jsonSink, writer) : writer;
+            if (!excel2JsonUtil.convert(source.file(), type, sink, mode, selection)) {
+                return null;
+            }
+            writer.setMeta(source.fileName(), source.md5());
+            RowStore store = writer.commit();
+            diskCacheManager.add(storeFile);
+            return store;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        return json;
     }
-}
\ No newline at end of file
+
+    /**
+     * 打开已有的二进制缓存；若只有旧版本的 .json 缓存，则迁移为二进制格式后删除旧文件。
+     * 都不存在时返回 null
+     */
+    private RowStore openCachedStore(SourceFile source, String md5, String type, boolean lazy, Selection selection) {
+        File storeFile = rowStoreFile(md5, type, lazy, selection);
+        if (storeFile.exists()) {
+            try {
+                RowStore store = RowStore.open(storeFile);
+                diskCacheManager.hit(storeFile);
+                return store;
+            } catch (IOException e) {
+                log.warn("Invalid row store {}, rebuilding: {}", storeFile.getName(), e.getMessage());
+            }
+        }
+        // 旧版本缓存中的附件都已上传，只用于 eager 模式的完整转换
+        File legacyFile = new File(cacheDir(), md5 + (StrUtil.isEmpty(type) ? "" : "_" + type) + ".json");
+        if (lazy || !selection.isAll() || !legacyFile.exists()) {
+            diskCacheManager.miss(storeFile);
+            return null;
+        }
+        boolean rowObject = Excel2JsonUtil.isRowObject(type);
+        try (RowStore.Writer writer = RowStore.create(storeFile, rowObject)) {
+            JSONObject legacy = JSON.parseObject(FileUtil.readUtf8String(legacyFile));
+            JsonTreeSink.replay(legacy, rowObject, writer);
+            writer.setMeta(legacy.getString("filename") != null ? legacy.getString("filename") : source.fileName(), md5);
+            RowStore store = writer.commit();
+            FileUtil.del(legacyFile);
+            diskCacheManager.remove(legacyFile);
+            diskCacheManager.add(storeFile);
+            log.info("Migrated legacy cache {} to {}", legacyFile.getName(), storeFile.getName());
+            return store;
+        } catch (Exception e) {
+            log.warn("Failed to migrate legacy cache {}: {}", legacyFile.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    private RowStore committedStore(File storeFile) {
+        if (!storeFile.exists()) {
+            return null;
+        }
+        try {
+            return RowStore.open(storeFile);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 缓存文件按内容摘要、解析模式和附件模式区分：{md5}_{mode}.bin，lazy 模式为 {md5}_{mode}_lazy.bin；
+     * 只转换部分数据时再加上选择条件的摘要：{md5}_{mode}[_lazy]_s{selection}.bin
+     */
+    private File rowStoreFile(String md5, String type, boolean lazy, Selection selection) {
+        String mode = Excel2JsonUtil.isRowObject(type) ? "row-object" : "basic";
+        return new File(cacheDir(), md5 + "_" + mode + (lazy ? "_lazy" : "") + selectionSuffix(selection) + ".bin");
+    }
+
+    private static String selectionSuffix(Selection selection) {
+        return selection.isAll() ? "" : "_s" + selection.key();
+    }
+
+    private File cacheDir() {
+        File cacheDir = new File(STORAGE_CACHE);
+        if (!cacheDir.exists()) {
+            cacheDir.mkdirs();
+        }
+        return cacheDir;
+    }
+}
@@ -0,0 +1,281 @@
+package link.wo.mysheetmcp.service;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IoUtil;
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestAlgorithm;
+import cn.hutool.crypto.digest.DigestUtil;
+import cn.hutool.http.HttpException;
+import cn.hutool.http.HttpRequest;
+import cn.hutool.http.HttpResponse;
+import cn.hutool.http.HttpStatus;
+import cn.hutool.log.Log;
+import cn.hutool.log.LogFactory;
+import com.alibaba.fastjson2.JSON;
+import link.wo.mysheetmcp.store.DiskCacheManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 解析 excel 来源：URL 下载到 STORAGE_FILE(按内容摘要存储)，本地路径直接使用。
+ * <p>
+ * 每个 URL 记录一份元数据(内容摘要、ETag、Last-Modified、校验时间)，保存在 STORAGE_CACHE/url 下：
+ * 在 download.fresh-ttl 内重复请求直接使用已下载的文件，不访问网络；
+ * 超过有效期后发送 If-None-Match / If-Modified-Since 条件请求，304 时继续使用本地文件。
+ */
+@Service
+public class SourceService {
+    private static final Log log = LogFactory.get();
+
+    @Value("${storage.file}")
+    private String STORAGE_FILE;
+    @Value("${storage.cache}")
+    private String STORAGE_CACHE;
+    // URL 元数据的有效期(毫秒)，0 表示每次都发送条件请求
+    @Value("${download.fresh-ttl:300000}")
+    private long FRESH_TTL;
+
+    @Autowired
+    private DiskCacheManager diskCacheManager;
+
+    private final Map<String, UrlMeta> urlMetas = new ConcurrentHashMap<>();
+    // 本地路径 -> 上次计算的摘要
+    private final Map<String, LocalDigest> localDigests = new ConcurrentHashMap<>();
+
+    /**
+     * 已解析的 excel 文件，md5 在解析来源时计算一次
+     */
+    public record SourceFile(File file, String fileName, String md5) {
+    }
+
+    /**
+     * 本地文件的摘要，以及计算时的文件大小和修改时间
+     */
+    private record LocalDigest(long size, long lastModified, String md5) {
+    }
+
+    /**
+     * URL 对应的下载元数据
+     */
+    public static class UrlMeta {
+        private String url;
+        private String md5;
+        private String extension;
+        private String etag;
+        private String lastModified;
+        private long checkedAt;
+
+        public String getUrl() { return url; }
+        public void setUrl(String url) { this.url = url; }
+        public String getMd5() { return md5; }
+        public void setMd5(String md5) { this.md5 = md5; }
+        public String getExtension() { return extension; }
+        public void setExtension(String extension) { this.extension = extension; }
+        public String getEtag() { return etag; }
+        public void setEtag(String etag) { this.etag = etag; }
+        public String getLastModified() { return lastModified; }
+        public void setLastModified(String lastModified) { this.lastModified = lastModified; }
+        public long getCheckedAt() { return checkedAt; }
+        public void setCheckedAt(long checkedAt) { this.checkedAt = checkedAt; }
+    }
+
+    /**
+     * URL 下载(或复用已下载的文件)，本地路径直接使用
+     */
+    public SourceFile resolve(String excelFileURL) {
+        if (isUrl(excelFileURL)) {
+            // 获取文件名
+            String fileName = excelFileURL.substring(excelFileURL.lastIndexOf('/') + 1);
+            // 获取文件扩展名
+            String fileExtension = fileName.substring(fileName.lastIndexOf('.') + 1);
+            return download(excelFileURL, fileName, fileExtension);
+        }
+
+        // 本地文件
+        File destFile = new File(excelFileURL);
+        if (!destFile.exists()) {
+            log.error("文件不存在: {}", excelFileURL);
+            return null;
+        }
+        // 先取大小和修改时间，计算摘要期间文件被修改时下次不会复用
+        long size = destFile.length();
+        long lastModified = destFile.lastModified();
+        String md5 = DigestUtil.md5Hex(destFile);
+        localDigests.put(excelFileURL, new LocalDigest(size, lastModified, md5));
+        return new SourceFile(destFile, destFile.getName(), md5);
+    }
+
+    /**
+     * 不访问网络、不读取文件内容即可确定的内容摘要，用于在 resolve 之前查找内存中的结果：
+     * URL 在 download.fresh-ttl 内时为上次下载的摘要，本地文件的大小和修改时间与上次计算时相同时为上次的摘要，
+     * 其余情况返回 null
+     */
+    public String knownMd5(String excelFileURL) {
+        if (isUrl(excelFileURL)) {
+            UrlMeta meta = loadMeta(excelFileURL);
+            return meta != null && System.currentTimeMillis() - meta.getCheckedAt() < FRESH_TTL ? meta.getMd5() : null;
+        }
+        LocalDigest digest = localDigests.get(excelFileURL);
+        if (digest == null) {
+            return null;
+        }
+        File file = new File(excelFileURL);
+        return file.length() == digest.size() && file.lastModified() == digest.lastModified() ? digest.md5() : null;
+    }
+
+    private static boolean isUrl(String excelFileURL) {
+        return excelFileURL.startsWith("http://") || excelFileURL.startsWith("https://");
+    }
+
+    /**
+     * 边下载边计算 MD5，文件按内容存储为 STORAGE_FILE/{md5}.{ext}。
+     * 相同内容只保留一份，已存在时丢弃本次下载的临时文件
+     */
+    private SourceFile download(String excelFileURL, String fileName, String fileExtension) {
+        File dir = new File(STORAGE_FILE);
+        // 确保目录存在
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+
+        UrlMeta meta = loadMeta(excelFileURL);
+        File cachedFile = meta != null ? new File(dir, meta.getMd5() + "." + meta.getExtension()) : null;
+        if (cachedFile != null && !cachedFile.exists()) {
+            meta = null;
+            cachedFile = null;
+        }
+        long now = System.currentTimeMillis();
+        if (meta != null && now - meta.getCheckedAt() < FRESH_TTL) {
+            log.debug("URL fresh, skip download: {}", excelFileURL);
+            diskCacheManager.hit(cachedFile);
+            return new SourceFile(cachedFile, fileName, meta.getMd5());
+        }
+
+        HttpRequest request = HttpRequest.get(excelFileURL).setFollowRedirects(true);
+        if (meta != null) {
+            if (StrUtil.isNotEmpty(meta.getEtag())) {
+                request.header("If-None-Match", meta.getEtag());
+            }
+            if (StrUtil.isNotEmpty(meta.getLastModified())) {
+                request.header("If-Modified-Since", meta.getLastModified());
+            }
+        }
+
+        File tmpFile = new File(dir, System.currentTimeMillis() + IdUtil.nanoId(4) + ".download");
+        MessageDigest digest = DigestUtil.digester(DigestAlgorithm.MD5).getDigest();
+        long size;
+        String etag;
+        String lastModified;
+        try (HttpResponse response = request.executeAsync()) {
+            if (meta != null && response.getStatus() == HttpStatus.HTTP_NOT_MODIFIED) {
+                log.debug("URL not modified: {}", excelFileURL);
+                diskCacheManager.hit(cachedFile);
+                meta.setCheckedAt(now);
+                saveMeta(meta);
+                return new SourceFile(cachedFile, fileName, meta.getMd5());
+            }
+            if (!response.isOk()) {
+                log.error("下载文件失败, status:{}, url:{}", response.getStatus(), excelFileURL);
+                return null;
+            }
+            etag = response.header("ETag");
+            lastModified = response.header("Last-Modified");
+            try (InputStream in = new DigestInputStream(response.bodyStream(), digest);
+                 OutputStream out = new BufferedOutputStream(new FileOutputStream(tmpFile))) {
+                size = IoUtil.copy(in, out);
+            }
+        } catch (IOException | HttpException e) {
+            log.error("下载文件失败: {}", excelFileURL, e);
+            FileUtil.del(tmpFile);
+            return null;
+        }
+
+        if (size <= 0) {
+            log.error("下载文件失败");
+            FileUtil.del(tmpFile);
+            return null;
+        }
+
+        String md5 = HexUtil.encodeHexStr(digest.digest());
+        File destFile = new File(dir, md5 + "." + fileExtension);
+        try {
+            if (destFile.exists()) {
+                log.debug("Upload already stored: {}", destFile.getName());
+                Files.delete(tmpFile.toPath());
+                diskCacheManager.hit(destFile);
+            } else {
+                Files.move(tmpFile.toPath(), destFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                diskCacheManager.miss(destFile);
+                diskCacheManager.add(destFile);
+            }
+        } catch (IOException e) {
+            FileUtil.del(tmpFile);
+            throw new RuntimeException(e);
+        }
+
+        UrlMeta updated = new UrlMeta();
+        updated.setUrl(excelFileURL);
+        updated.setMd5(md5);
+        updated.setExtension(fileExtension);
+        updated.setEtag(etag);
+        updated.setLastModified(lastModified);
+        updated.setCheckedAt(now);
+        saveMeta(updated);
+        return new SourceFile(destFile, fileName, md5);
+    }
+
+    private UrlMeta loadMeta(String url) {
+        UrlMeta meta = urlMetas.get(url);
+        if (meta != null) {
+            return meta;
+        }
+        File metaFile = metaFile(url);
+        if (!metaFile.exists()) {
+            return null;
+        }
+        try {
+            meta = JSON.parseObject(FileUtil.readUtf8String(metaFile), UrlMeta.class);
+        } catch (Exception e) {
+            log.warn("Invalid url meta {}: {}", metaFile.getName(), e.getMessage());
+            return null;
+        }
+        if (meta == null || !url.equals(meta.getUrl())) {
+            return null;
+        }
+        urlMetas.put(url, meta);
+        return meta;
+    }
+
+    private void saveMeta(UrlMeta meta) {
+        urlMetas.put(meta.getUrl(), meta);
+        File metaFile = metaFile(meta.getUrl());
+        File tmpFile = new File(metaFile.getParentFile(), metaFile.getName() + "." + IdUtil.fastSimpleUUID() + ".tmp");
+        try {
+            FileUtil.writeUtf8String(JSON.toJSONString(meta), tmpFile);
+            Files.move(tmpFile.toPath(), metaFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            FileUtil.del(tmpFile);
+            log.warn("Failed to save url meta for {}: {}", meta.getUrl(), e.getMessage());
+        }
+    }
+
+    private File metaFile(String url) {
+        return new File(new File(STORAGE_CACHE, "url"), DigestUtil.md5Hex(url) + ".json");
+    }
+}
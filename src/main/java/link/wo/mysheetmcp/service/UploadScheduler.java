@@ -0,0 +1,245 @@
+package link.wo.mysheetmcp.service;
+
+import cn.hutool.log.Log;
+import cn.hutool.log.LogFactory;
+import com.qcloud.cos.exception.CosServiceException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import link.wo.mysheetmcp.store.AttachmentStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 附件上传调度：全局并发上限、单次转换的字节预算、失败指数退避重试，以及上传耗时/失败指标。
+ * <p>
+ * 每次转换通过 {@link #newBatch()} 创建一个批次，上传任务仍运行在虚拟线程上，
+ * 但真正访问存储前需要获取全局信号量，因此同时打开的存储连接数不超过 upload.max-concurrency。
+ * <p>
+ * 附件 key 由内容摘要决定，URL 在上传前即可确定({@link Batch#url(String)})，
+ * 因此单元格解析不必等待上传完成，只需在转换结束前 {@link Batch#await()}。
+ */
+@Service
+public class UploadScheduler {
+    private static final Log log = LogFactory.get();
+
+    @Value("${upload.max-concurrency:16}")
+    private int MAX_CONCURRENCY;
+    // 单次转换允许上传的附件总字节数
+    @Value("${upload.max-bytes-per-conversion:536870912}")
+    private long MAX_BYTES_PER_CONVERSION;
+    @Value("${upload.max-retries:3}")
+    private int MAX_RETRIES;
+    // 第一次重试前的等待时间(毫秒)，之后每次翻倍
+    @Value("${upload.retry-backoff:200}")
+    private long RETRY_BACKOFF;
+
+    @Autowired
+    private AttachmentStore attachmentStore;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Semaphore permits;
+    private Timer latency;
+    private Counter failures;
+    private Counter retries;
+    private Counter rejected;
+    private Counter uploadedBytes;
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(MAX_CONCURRENCY, true);
+        latency = Timer.builder("attachment.upload.latency").description("Attachment upload latency, including retries")
+                .publishPercentiles(0.5, 0.95, 0.99).register(meterRegistry);
+        failures = Counter.builder("attachment.upload.failures").description("Attachment uploads failed after all retries").register(meterRegistry);
+        retries = Counter.builder("attachment.upload.retries").description("Attachment upload retries").register(meterRegistry);
+        rejected = Counter.builder("attachment.upload.rejected").description("Attachments skipped by the per-conversion byte budget").register(meterRegistry);
+        uploadedBytes = Counter.builder("attachment.upload.bytes").baseUnit("bytes").description("Attachment bytes uploaded").register(meterRegistry);
+    }
+
+    /**
+     * 单次转换超过字节预算
+     */
+    public static class BudgetExceededException extends RuntimeException {
+        public BudgetExceededException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 单次转换的上传批次
+     */
+    public class Batch implements AutoCloseable {
+        private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        private final List<CompletableFuture<?>> futures = Collections.synchronizedList(new ArrayList<>());
+        private final Map<String, String> pending = new ConcurrentHashMap<>();
+        private final Map<String, String> result = new ConcurrentHashMap<>();
+        private final Set<String> reserved = ConcurrentHashMap.newKeySet();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicInteger failures = new AtomicInteger();
+
+        public Executor executor() {
+            return executor;
+        }
+
+        public void track(CompletableFuture<?> future) {
+            futures.add(future);
+        }
+
+        /**
+         * 附件坐标 -> 上传完成的 URL
+         */
+        public Map<String, String> result() {
+            return result;
+        }
+
+        /**
+         * 附件坐标 -> 预先确定的 URL，包含仍在上传中的附件
+         */
+        public Map<String, String> pending() {
+            return pending;
+        }
+
+        /**
+         * 上传前即可确定的附件 URL
+         */
+        public String url(String key) {
+            return attachmentStore.url(key);
+        }
+
+        /**
+         * 为 key 预留本批次的字节预算，同一 key 只计算一次，超出预算时返回 false
+         */
+        public boolean reserve(String key, long size) {
+            if (!reserved.add(key)) {
+                return true;
+            }
+            long total = bytes.addAndGet(size);
+            if (total > MAX_BYTES_PER_CONVERSION) {
+                bytes.addAndGet(-size);
+                reserved.remove(key);
+                rejected.increment();
+                log.warn("Upload budget exceeded for {}, used {} of {} bytes", key, total - size, MAX_BYTES_PER_CONVERSION);
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * 上传一个附件：检查本批次字节预算后，在全局并发上限内上传，失败时退避重试
+         */
+        public String upload(String key, byte[] data) {
+            if (!reserve(key, data.length)) {
+                throw new BudgetExceededException("Upload budget exceeded for " + key + ", limit "
+                        + MAX_BYTES_PER_CONVERSION + " bytes");
+            }
+            return UploadScheduler.this.upload(key, data);
+        }
+
+        /**
+         * 记录一个上传失败的附件
+         */
+        public void failed() {
+            failures.incrementAndGet();
+        }
+
+        public int getFailures() {
+            return failures.get();
+        }
+
+        /**
+         * 等待本批次所有上传结束，返回附件坐标 -> URL
+         */
+        public Map<String, String> await() {
+            CompletableFuture<?>[] all;
+            synchronized (futures) {
+                all = futures.toArray(new CompletableFuture[0]);
+            }
+            if (all.length > 0) {
+                CompletableFuture.allOf(all).join();
+            }
+            return result;
+        }
+
+        @Override
+        public void close() {
+            executor.close();
+        }
+    }
+
+    public Batch newBatch() {
+        return new Batch();
+    }
+
+    private String upload(String key, byte[] data) {
+        long start = System.nanoTime();
+        try {
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    permits.acquire();
+                    try {
+                        String url = attachmentStore.put(key, data);
+                        uploadedBytes.increment(data.length);
+                        return url;
+                    } finally {
+                        permits.release();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failures.increment();
+                    throw new IllegalStateException("Upload interrupted: " + key, e);
+                } catch (RuntimeException e) {
+                    if (attempt >= MAX_RETRIES || !isRetryable(e)) {
+                        failures.increment();
+                        throw e;
+                    }
+                    retries.increment();
+                    long backoff = RETRY_BACKOFF << attempt;
+                    long delay = backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+                    log.warn("Upload {} failed (attempt {}), retry in {}ms: {}", key, attempt + 1, delay, e.getMessage());
+                    sleep(delay);
+                }
+            }
+        } finally {
+            latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 4xx(限流 429 和超时 408 除外)属于请求本身的错误，不重试
+     */
+    private boolean isRetryable(RuntimeException e) {
+        if (e instanceof CosServiceException cse) {
+            int status = cse.getStatusCode();
+            return status >= 500 || status == 429 || status == 408 || status == 0;
+        }
+        return true;
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Upload retry interrupted", e);
+        }
+    }
+}
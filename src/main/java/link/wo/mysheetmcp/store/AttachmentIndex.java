@@ -0,0 +1,140 @@
+package link.wo.mysheetmcp.store;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.log.Log;
+import cn.hutool.log.LogFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * 附件内容摘要到存储 URL 的持久化索引。
+ * <p>
+ * 相同内容的附件只上传一次：同一工作簿内重复出现、并发转换中正在上传、以及之前转换已上传过的附件
+ * 都直接复用 URL。索引以追加方式写入 STORAGE_CACHE/attachments.idx(每行 "hash\turl")，启动时加载。
+ */
+@Component
+public class AttachmentIndex {
+    private static final Log log = LogFactory.get();
+
+    @Value("${storage.cache}")
+    private String STORAGE_CACHE;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, String> urls = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<String>> inflight = new ConcurrentHashMap<>();
+
+    private File indexFile;
+    private Counter uploads;
+    private Counter indexHits;
+    private Counter inflightHits;
+
+    @PostConstruct
+    public void init() {
+        uploads = Counter.builder("attachment.uploads").description("Attachments uploaded to storage").register(meterRegistry);
+        indexHits = Counter.builder("attachment.dedupe.hits").tag("source", "index")
+                .description("Attachments reused from the hash index").register(meterRegistry);
+        inflightHits = Counter.builder("attachment.dedupe.hits").tag("source", "inflight")
+                .description("Attachments joined to an upload already in progress").register(meterRegistry);
+
+        indexFile = new File(STORAGE_CACHE, "attachments.idx");
+        if (!indexFile.exists()) {
+            return;
+        }
+        try {
+            List<String> lines = Files.readAllLines(indexFile.toPath(), StandardCharsets.UTF_8);
+            for (String line : lines) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    urls.put(line.substring(0, tab), line.substring(tab + 1));
+                }
+            }
+            log.info("Attachment index loaded, entries:{}", urls.size());
+        } catch (IOException e) {
+            log.warn("Failed to load attachment index: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 返回内容摘要对应的 URL，不存在时在 executor 上执行 upload，同一摘要同时只会上传一次
+     */
+    public CompletableFuture<String> getOrUpload(String hash, Callable<String> upload, Executor executor) {
+        String url = urls.get(hash);
+        if (url != null) {
+            indexHits.increment();
+            return CompletableFuture.completedFuture(url);
+        }
+
+        CompletableFuture<String> created = new CompletableFuture<>();
+        CompletableFuture<String> existing = inflight.putIfAbsent(hash, created);
+        if (existing != null) {
+            inflightHits.increment();
+            return existing;
+        }
+        // 可能在 putIfAbsent 之前刚上传完成
+        url = urls.get(hash);
+        if (url != null) {
+            inflight.remove(hash, created);
+            indexHits.increment();
+            created.complete(url);
+            return created;
+        }
+
+        executor.execute(() -> {
+            try {
+                String uploaded = upload.call();
+                uploads.increment();
+                put(hash, uploaded);
+                created.complete(uploaded);
+            } catch (Throwable e) {
+                created.completeExceptionally(e);
+            } finally {
+                inflight.remove(hash, created);
+            }
+        });
+        return created;
+    }
+
+    /**
+     * 已上传的内容摘要对应的 URL，未上传过时返回 null
+     */
+    public String get(String hash) {
+        return urls.get(hash);
+    }
+
+    public int size() {
+        return urls.size();
+    }
+
+    private void put(String hash, String url) {
+        if (urls.putIfAbsent(hash, url) != null) {
+            return;
+        }
+        synchronized (this) {
+            try {
+                FileUtil.mkParentDirs(indexFile);
+                Files.writeString(indexFile.toPath(), hash + "\t" + url + "\n", StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                log.warn("Failed to append attachment index: {}", e.getMessage());
+            }
+        }
+    }
+}
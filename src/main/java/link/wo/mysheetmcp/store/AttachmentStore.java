@@ -0,0 +1,26 @@
+package link.wo.mysheetmcp.store;
+
+/**
+ * 附件存储 SPI，由 attachment.store 选择实现：
+ * <ul>
+ *     <li>cos(默认)：上传到腾讯云 COS</li>
+ *     <li>local：写入本地目录，由本服务的 WebFlux 端点提供下载</li>
+ *     <li>memory：保存在内存中，可注入固定延迟，用于压测和离线基准测试</li>
+ * </ul>
+ */
+public interface AttachmentStore {
+
+    /**
+     * 保存附件
+     *
+     * @param key  存储路径，如 attachment/{md5}.png
+     * @param data 文件内容
+     * @return 可访问的 URL
+     */
+    String put(String key, byte[] data);
+
+    /**
+     * key 对应的 URL，与 put 的返回值相同，上传完成前即可确定
+     */
+    String url(String key);
+}
@@ -0,0 +1,512 @@
+package link.wo.mysheetmcp.store;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 行存储的列式内存表示，用于需要扫描整列的操作(过滤、聚合)。
+ * <p>
+ * 每个 sheet 一张表(row-object 模式只有一张表)，每列按值的类型分别存放在稠密的基本类型数组中：
+ * 数字为 double[]，日期为 long[](epoch day)，文本、货币和附件按列做字典编码为 int[]，布尔值和空单元格用 BitSet 表示，
+ * 合并单元格的跨度只记录在少数带合并标记的单元格上。列中只有一种类型时不保存逐行的类型码。
+ * <p>
+ * 构建后只读，可被多个会话并发读取；行只在响应时通过 {@link #readRow(int)} 还原为与 {@link RowStore#readRow(int)} 相同的 JSON。
+ */
+public class ColumnarTable {
+
+    // 单元格值的存储方式
+    private static final byte KIND_NUMBER = 0;
+    private static final byte KIND_DATE = 1;
+    private static final byte KIND_TEXT = 2;
+    private static final byte KIND_BOOLEAN = 3;
+    private static final byte KIND_OTHER = 4;
+
+    private final boolean rowObject;
+    private final JSONObject header;
+    private final List<Table> tables;
+    private final int rowCount;
+    private final long bytes;
+
+    private ColumnarTable(boolean rowObject, JSONObject header, List<Table> tables) {
+        this.rowObject = rowObject;
+        this.header = header;
+        this.tables = Collections.unmodifiableList(tables);
+        int rows = 0;
+        long size = 64;
+        for (Table table : tables) {
+            rows += table.rowCount;
+            size += table.bytes();
+        }
+        this.rowCount = rows;
+        this.bytes = size;
+    }
+
+    /**
+     * 逐行解码行存储并按列写入，basic 模式每个 sheet 一张表
+     */
+    public static ColumnarTable build(RowStore store) {
+        List<Table> tables = new ArrayList<>();
+        if (store.isRowObject()) {
+            tables.add(buildTable(store, "", 0, store.getRowCount()));
+        } else {
+            for (RowStore.SheetEntry sheet : store.getSheets()) {
+                tables.add(buildTable(store, sheet.name(), sheet.firstRow(), sheet.rowCount()));
+            }
+        }
+        return new ColumnarTable(store.isRowObject(), store.readHeader(), tables);
+    }
+
+    private static Table buildTable(RowStore store, String name, int firstRow, int rowCount) {
+        boolean rowObject = store.isRowObject();
+        int[] rowIndexes = new int[rowCount];
+        Map<String, ColumnBuilder> builders = new HashMap<>();
+        for (int i = 0; i < rowCount; i++) {
+            JSONObject row = store.readRow(firstRow + i);
+            if (rowObject) {
+                rowIndexes[i] = row.getIntValue("index");
+                for (Map.Entry<String, Object> entry : row.entrySet()) {
+                    if (!"index".equals(entry.getKey())) {
+                        builders.computeIfAbsent(entry.getKey(), key -> new ColumnBuilder(key, rowCount))
+                                .add(i, (JSONObject) entry.getValue());
+                    }
+                }
+            } else {
+                rowIndexes[i] = row.getIntValue("rowIndex");
+                JSONArray columns = row.getJSONArray("columns");
+                for (int j = 0; columns != null && j < columns.size(); j++) {
+                    JSONObject cell = columns.getJSONObject(j);
+                    builders.computeIfAbsent(cell.getString("colIndex"), key -> new ColumnBuilder(key, rowCount)).add(i, cell);
+                }
+            }
+        }
+        List<Column> columns = new ArrayList<>(builders.size());
+        for (ColumnBuilder builder : builders.values()) {
+            columns.add(builder.build());
+        }
+        columns.sort((a, b) -> Integer.compare(a.colIndex, b.colIndex));
+        return new Table(name, firstRow, rowCount, rowIndexes, columns);
+    }
+
+    public boolean isRowObject() {
+        return rowObject;
+    }
+
+    /**
+     * row-object 模式的表头，basic 模式为 null
+     */
+    public JSONObject getHeader() {
+        return header;
+    }
+
+    public List<Table> getTables() {
+        return tables;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * 估算的堆内存占用(字节)
+     */
+    public long bytes() {
+        return bytes;
+    }
+
+    /**
+     * 按行存储中的全局行号还原一行，与 {@link RowStore#readRow(int)} 结果相同
+     */
+    public JSONObject readRow(int index) {
+        for (Table table : tables) {
+            if (index >= table.firstRow && index < table.firstRow + table.rowCount) {
+                return table.readRow(index - table.firstRow, rowObject);
+            }
+        }
+        throw new IndexOutOfBoundsException("Row " + index + " out of range, rowCount: " + rowCount);
+    }
+
+    /**
+     * 一个 sheet 的列式数据，行号从 0 开始
+     */
+    public static final class Table {
+        private final String name;
+        private final int firstRow;
+        private final int rowCount;
+        // 每行的 rowIndex(basic) 或 index(row-object)
+        private final int[] rowIndexes;
+        private final List<Column> columns;
+        private final Map<String, Column> byKey = new HashMap<>();
+
+        private Table(String name, int firstRow, int rowCount, int[] rowIndexes, List<Column> columns) {
+            this.name = name;
+            this.firstRow = firstRow;
+            this.rowCount = rowCount;
+            this.rowIndexes = rowIndexes;
+            this.columns = Collections.unmodifiableList(columns);
+            for (Column column : columns) {
+                byKey.put(column.key, column);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * 第一行在行存储中的全局行号
+         */
+        public int getFirstRow() {
+            return firstRow;
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        public int rowIndex(int row) {
+            return rowIndexes[row];
+        }
+
+        /**
+         * 按列序号排列的所有列
+         */
+        public List<Column> getColumns() {
+            return columns;
+        }
+
+        /**
+         * 按键(basic 为 A，row-object 为 A1)查找列，不存在时返回 null
+         */
+        public Column column(String key) {
+            return byKey.get(key);
+        }
+
+        private JSONObject readRow(int row, boolean rowObject) {
+            JSONObject json = new JSONObject();
+            json.put(rowObject ? "index" : "rowIndex", rowIndexes[row]);
+            JSONArray cells = rowObject ? null : new JSONArray();
+            for (Column column : columns) {
+                if (!column.isPresent(row)) {
+                    continue;
+                }
+                JSONObject cell = new JSONObject();
+                Object value = column.value(row);
+                if (rowObject) {
+                    cell.put("type", column.type(row));
+                    if (value != null) {
+                        cell.put("value", value);
+                    }
+                    json.put(column.key, cell);
+                } else {
+                    cell.put("colIndex", column.key);
+                    cell.put("type", column.type(row));
+                    if (value != null) {
+                        cell.put("value", value);
+                    }
+                    if (column.rowspan(row) > 1) {
+                        cell.put("rowspan", column.rowspan(row));
+                    }
+                    if (column.colspan(row) > 1) {
+                        cell.put("colspan", column.colspan(row));
+                    }
+                    cells.add(cell);
+                }
+            }
+            if (!rowObject) {
+                json.put("columns", cells);
+            }
+            return json;
+        }
+
+        private long bytes() {
+            long size = 64 + 4L * rowIndexes.length;
+            for (Column column : columns) {
+                size += column.bytes();
+            }
+            return size;
+        }
+    }
+
+    /**
+     * 一列的数据。类型码指向 (类型名, 存储方式) 列表，只有一种组合时不保存逐行的类型码
+     */
+    public static final class Column {
+        private final String key;
+        private final int colIndex;
+        private final String[] typeNames;
+        private final byte[] kinds;
+        // 逐行的类型码，null 表示所有单元格都是第 0 种
+        private final byte[] typeCodes;
+        private final BitSet present;
+        private final double[] numbers;
+        private final long[] days;
+        private final int[] textCodes;
+        private final String[] dictionary;
+        private final BitSet booleans;
+        private final Map<Integer, Object> others;
+        // 带合并跨度的单元格：行号 -> (rowspan << 32 | colspan)
+        private final Map<Integer, Long> spans;
+
+        private Column(ColumnBuilder b) {
+            this.key = b.key;
+            this.colIndex = columnIndex(b.key);
+            this.typeNames = b.typeNames.toArray(new String[0]);
+            this.kinds = Arrays.copyOf(b.kinds, b.typeNames.size());
+            this.typeCodes = b.typeNames.size() > 1 ? b.typeCodes : null;
+            this.present = b.present;
+            this.numbers = b.numbers;
+            this.days = b.days;
+            this.textCodes = b.textCodes;
+            this.dictionary = b.dictionary.toArray(new String[0]);
+            this.booleans = b.booleans;
+            this.others = b.others;
+            this.spans = b.spans;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * 从 0 开始的列序号
+         */
+        public int getColIndex() {
+            return colIndex;
+        }
+
+        public boolean isPresent(int row) {
+            return present.get(row);
+        }
+
+        /**
+         * 单元格类型(text / number / money / date / boolean / file)，不存在时为 null
+         */
+        public String type(int row) {
+            return present.get(row) ? typeNames[code(row)] : null;
+        }
+
+        /**
+         * 单元格值，与行存储中的值相同，不存在时为 null
+         */
+        public Object value(int row) {
+            if (!present.get(row)) {
+                return null;
+            }
+            return switch (kinds[code(row)]) {
+                case KIND_NUMBER -> numbers[row];
+                case KIND_DATE -> LocalDate.ofEpochDay(days[row]).toString();
+                case KIND_TEXT -> dictionary[textCodes[row]];
+                case KIND_BOOLEAN -> booleans.get(row);
+                default -> others.get(row);
+            };
+        }
+
+        /**
+         * 单元格是否为数值(number 类型)，为 true 时 {@link #number(int)} 返回其值
+         */
+        public boolean isNumber(int row) {
+            return present.get(row) && kinds[code(row)] == KIND_NUMBER;
+        }
+
+        public double number(int row) {
+            return numbers[row];
+        }
+
+        /**
+         * 单元格是否为可解析的日期，为 true 时 {@link #epochDay(int)} 返回其值
+         */
+        public boolean isDate(int row) {
+            return present.get(row) && kinds[code(row)] == KIND_DATE;
+        }
+
+        public long epochDay(int row) {
+            return days[row];
+        }
+
+        /**
+         * 文本类单元格的字典码，不是字典编码的单元格返回 -1，用于分组和去重时避免比较字符串
+         */
+        public int textCode(int row) {
+            return present.get(row) && kinds[code(row)] == KIND_TEXT ? textCodes[row] : -1;
+        }
+
+        public String dictionaryValue(int code) {
+            return dictionary[code];
+        }
+
+        public int dictionarySize() {
+            return dictionary.length;
+        }
+
+        public int rowspan(int row) {
+            Long span = spans.get(row);
+            return span != null ? (int) (span >>> 32) : 1;
+        }
+
+        public int colspan(int row) {
+            Long span = spans.get(row);
+            return span != null ? (int) (long) span : 1;
+        }
+
+        private int code(int row) {
+            return typeCodes != null ? typeCodes[row] : 0;
+        }
+
+        private long bytes() {
+            long size = 128 + present.size() / 8;
+            size += typeCodes != null ? typeCodes.length : 0;
+            size += numbers != null ? 8L * numbers.length : 0;
+            size += days != null ? 8L * days.length : 0;
+            size += textCodes != null ? 4L * textCodes.length : 0;
+            size += booleans != null ? booleans.size() / 8 : 0;
+            for (String text : dictionary) {
+                size += 48 + 2L * text.length();
+            }
+            size += 64L * (others.size() + spans.size());
+            return size;
+        }
+    }
+
+    /**
+     * 按行写入一列，用到某种存储方式时才分配对应的数组
+     */
+    private static final class ColumnBuilder {
+        private final String key;
+        private final int rowCount;
+        private final List<String> typeNames = new ArrayList<>(2);
+        private byte[] kinds = new byte[4];
+        private final byte[] typeCodes;
+        private final BitSet present = new BitSet();
+        private double[] numbers;
+        private long[] days;
+        private int[] textCodes;
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> dictionary = new ArrayList<>();
+        private BitSet booleans;
+        private final Map<Integer, Object> others = new HashMap<>(0);
+        private final Map<Integer, Long> spans = new HashMap<>(0);
+
+        private ColumnBuilder(String key, int rowCount) {
+            this.key = key;
+            this.rowCount = rowCount;
+            this.typeCodes = new byte[rowCount];
+        }
+
+        private void add(int row, JSONObject cell) {
+            String type = cell.getString("type");
+            Object value = cell.get("value");
+            byte kind = kindOf(type, value);
+            present.set(row);
+            typeCodes[row] = code(type, kind);
+            switch (kind) {
+                case KIND_NUMBER -> {
+                    if (numbers == null) {
+                        numbers = new double[rowCount];
+                    }
+                    numbers[row] = (Double) value;
+                }
+                case KIND_DATE -> {
+                    if (days == null) {
+                        days = new long[rowCount];
+                    }
+                    days[row] = LocalDate.parse((String) value).toEpochDay();
+                }
+                case KIND_TEXT -> {
+                    if (textCodes == null) {
+                        textCodes = new int[rowCount];
+                    }
+                    textCodes[row] = codes.computeIfAbsent((String) value, text -> {
+                        dictionary.add(text);
+                        return dictionary.size() - 1;
+                    });
+                }
+                case KIND_BOOLEAN -> {
+                    if (booleans == null) {
+                        booleans = new BitSet();
+                    }
+                    booleans.set(row, (Boolean) value);
+                }
+                default -> others.put(row, value);
+            }
+            int rowspan = cell.getIntValue("rowspan", 1);
+            int colspan = cell.getIntValue("colspan", 1);
+            if (rowspan > 1 || colspan > 1) {
+                spans.put(row, (long) rowspan << 32 | colspan);
+            }
+        }
+
+        /**
+         * 只有能原样还原的值才使用专门的存储方式，其余保存原对象
+         */
+        private static byte kindOf(String type, Object value) {
+            if (value instanceof Double) {
+                return KIND_NUMBER;
+            }
+            if (value instanceof Boolean) {
+                return KIND_BOOLEAN;
+            }
+            if (value instanceof String text) {
+                if ("date".equals(type) && isIsoDate(text)) {
+                    return KIND_DATE;
+                }
+                return KIND_TEXT;
+            }
+            return KIND_OTHER;
+        }
+
+        private static boolean isIsoDate(String text) {
+            if (text.length() != 10) {
+                return false;
+            }
+            try {
+                return LocalDate.parse(text).toString().equals(text);
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+
+        private byte code(String type, byte kind) {
+            for (int i = 0; i < typeNames.size(); i++) {
+                if (kinds[i] == kind && Objects.equals(typeNames.get(i), type)) {
+                    return (byte) i;
+                }
+            }
+            if (typeNames.size() == kinds.length) {
+                kinds = Arrays.copyOf(kinds, kinds.length * 2);
+            }
+            kinds[typeNames.size()] = kind;
+            typeNames.add(type);
+            return (byte) (typeNames.size() - 1);
+        }
+
+        private Column build() {
+            return new Column(this);
+        }
+    }
+
+    /**
+     * 键(A、AB1 等)中字母部分对应的从 0 开始的列序号
+     */
+    private static int columnIndex(String key) {
+        int col = 0;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                break;
+            }
+            col = col * 26 + (c - 'A' + 1);
+        }
+        return col - 1;
+    }
+}
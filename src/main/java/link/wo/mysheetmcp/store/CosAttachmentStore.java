@@ -0,0 +1,27 @@
+package link.wo.mysheetmcp.store;
+
+import link.wo.mysheetmcp.service.CosService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * 上传到腾讯云 COS
+ */
+@Component
+@ConditionalOnProperty(name = "attachment.store", havingValue = "cos", matchIfMissing = true)
+public class CosAttachmentStore implements AttachmentStore {
+
+    @Autowired
+    private CosService cosService;
+
+    @Override
+    public String put(String key, byte[] data) {
+        return cosService.uploadBytes(key, data);
+    }
+
+    @Override
+    public String url(String key) {
+        return cosService.getUrl(key);
+    }
+}
@@ -0,0 +1,172 @@
+package link.wo.mysheetmcp.store;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.log.Log;
+import cn.hutool.log.LogFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * lazy 附件模式下未上传附件的来源索引：内容摘要 -> 包含该附件的 excel 文件。
+ * <p>
+ * 转换时单元格只记录引用 attachment:{md5}，不上传；resolveAttachment 通过本索引找到来源文件，
+ * 按摘要取出附件内容后再上传，结果 URL 记录在 {@link AttachmentIndex} 中。
+ * 索引以追加方式写入 STORAGE_CACHE/attachments-deferred.idx(每行 "hash\tpath")，启动时加载。
+ * <p>
+ * 来源文件在最近一次登记或解析后的 attachment.deferred-pin 内不被磁盘缓存淘汰，之后与其他下载文件一样按 LRU 淘汰；
+ * 来源文件被删除后相应的条目随之移除并重写索引文件，索引不会无限增长。
+ */
+@Component
+public class DeferredAttachmentIndex {
+    private static final Log log = LogFactory.get();
+
+    public static final String REF_PREFIX = "attachment:";
+
+    @Value("${storage.cache}")
+    private String STORAGE_CACHE;
+    // 来源文件在最近一次使用后该时间(毫秒)内不淘汰
+    @Value("${attachment.deferred-pin:3600000}")
+    private long DEFERRED_PIN;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, String> sources = new ConcurrentHashMap<>();
+    // 来源文件(绝对路径) -> 最近一次登记或解析的时间
+    private final Map<String, Long> lastUsed = new ConcurrentHashMap<>();
+
+    private File indexFile;
+    private Counter deferred;
+
+    @PostConstruct
+    public void init() {
+        deferred = Counter.builder("attachment.deferred").description("Attachments recorded without uploading").register(meterRegistry);
+
+        indexFile = new File(STORAGE_CACHE, "attachments-deferred.idx");
+        if (!indexFile.exists()) {
+            return;
+        }
+        try {
+            List<String> lines = Files.readAllLines(indexFile.toPath(), StandardCharsets.UTF_8);
+            for (String line : lines) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    String path = line.substring(tab + 1);
+                    sources.put(line.substring(0, tab), path);
+                    // 重启前的使用时间未记录，以文件的访问时间(磁盘缓存命中时写入修改时间)代替
+                    lastUsed.putIfAbsent(path, new File(path).lastModified());
+                }
+            }
+            log.info("Deferred attachment index loaded, entries:{}", sources.size());
+        } catch (IOException e) {
+            log.warn("Failed to load deferred attachment index: {}", e.getMessage());
+        }
+        prune();
+    }
+
+    public static String ref(String hash) {
+        return REF_PREFIX + hash;
+    }
+
+    /**
+     * 从引用中取出内容摘要，格式不正确时返回 null
+     */
+    public static String hashOf(String ref) {
+        if (ref == null || !ref.startsWith(REF_PREFIX)) {
+            return null;
+        }
+        String hash = ref.substring(REF_PREFIX.length());
+        return hash.matches("[0-9a-f]{32}") ? hash : null;
+    }
+
+    /**
+     * 记录附件来源并返回单元格中使用的引用
+     */
+    public String register(String hash, File source) {
+        deferred.increment();
+        String path = source.getAbsolutePath();
+        lastUsed.put(path, System.currentTimeMillis());
+        if (!path.equals(sources.put(hash, path))) {
+            synchronized (this) {
+                try {
+                    FileUtil.mkParentDirs(indexFile);
+                    Files.writeString(indexFile.toPath(), hash + "\t" + path + "\n", StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                } catch (IOException e) {
+                    log.warn("Failed to append deferred attachment index: {}", e.getMessage());
+                }
+            }
+        }
+        return ref(hash);
+    }
+
+    /**
+     * 包含该附件的 excel 文件，未记录时返回 null
+     */
+    public File source(String hash) {
+        String path = sources.get(hash);
+        if (path == null) {
+            return null;
+        }
+        lastUsed.put(path, System.currentTimeMillis());
+        return new File(path);
+    }
+
+    /**
+     * attachment.deferred-pin 内使用过的来源文件(绝对路径)，磁盘缓存不淘汰这些文件
+     */
+    public Set<String> sourcePaths() {
+        long usedAfter = System.currentTimeMillis() - DEFERRED_PIN;
+        Set<String> paths = new HashSet<>();
+        lastUsed.forEach((path, time) -> {
+            if (time > usedAfter) {
+                paths.add(path);
+            }
+        });
+        return paths;
+    }
+
+    /**
+     * 移除来源文件已不存在的条目并重写索引文件，这些附件之后解析为找不到
+     */
+    public synchronized void prune() {
+        Set<String> missing = new HashSet<>();
+        for (String path : lastUsed.keySet()) {
+            if (!new File(path).exists()) {
+                missing.add(path);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        sources.values().removeIf(missing::contains);
+        missing.forEach(lastUsed::remove);
+        StringBuilder sb = new StringBuilder();
+        sources.forEach((hash, path) -> sb.append(hash).append('\t').append(path).append('\n'));
+        try {
+            FileUtil.mkParentDirs(indexFile);
+            File tmp = new File(indexFile.getPath() + ".tmp");
+            Files.writeString(tmp.toPath(), sb, StandardCharsets.UTF_8);
+            Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to rewrite deferred attachment index: {}", e.getMessage());
+        }
+        log.info("Deferred attachment index pruned, removed sources:{}, entries:{}", missing.size(), sources.size());
+    }
+}
@@ -0,0 +1,259 @@
+package link.wo.mysheetmcp.store;
+
+import cn.hutool.log.Log;
+import cn.hutool.log.LogFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 磁盘缓存管理：STORAGE_CACHE 下的行存储缓存和 STORAGE_FILE 下载的 excel 文件共用一个字节配额(storage.quota)。
+ * <p>
+ * 启动时扫描一次两个目录建立索引，之后由各服务在命中、新增文件时更新索引，请求路径上不再扫描目录。
+ * 占用超过配额时后台按最近访问时间(LRU)淘汰，直到降到配额的 90%；
+ * 会话(包括已写入磁盘的会话)引用的行存储、attachment.deferred-pin 内使用过的 lazy 附件来源文件
+ * 和最近 storage.evict-min-idle 内访问过的文件不会被淘汰。
+ * 访问时间同时写入文件的修改时间，重启后仍能按原来的顺序淘汰。
+ */
+@Component
+public class DiskCacheManager {
+    private static final Log log = LogFactory.get();
+
+    private static final String AREA_CACHE = "cache";
+    private static final String AREA_FILE = "file";
+
+    @Value("${storage.cache}")
+    private String STORAGE_CACHE;
+    @Value("${storage.file}")
+    private String STORAGE_FILE;
+    // 两个目录合计的字节配额
+    @Value("${storage.quota:10737418240}")
+    private long QUOTA;
+    // 后台检查间隔(毫秒)
+    @Value("${storage.evict-interval:60000}")
+    private long EVICT_INTERVAL;
+    // 最近访问过的文件在该时间(毫秒)内不淘汰，避免删除正在转换或读取的文件
+    @Value("${storage.evict-min-idle:60000}")
+    private long EVICT_MIN_IDLE;
+
+    @Autowired
+    private SessionStore sessionStore;
+    @Autowired
+    private DeferredAttachmentIndex deferredAttachmentIndex;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+
+    private File cacheDir;
+    private File fileDir;
+    private ScheduledExecutorService evictor;
+    private final Map<String, Counter> hits = new ConcurrentHashMap<>();
+    private final Map<String, Counter> misses = new ConcurrentHashMap<>();
+    private final Map<String, Counter> evictions = new ConcurrentHashMap<>();
+
+    private static class Entry {
+        private final File file;
+        private final String area;
+        private final long size;
+        private volatile long lastAccess;
+
+        private Entry(File file, String area, long size, long lastAccess) {
+            this.file = file;
+            this.area = area;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        cacheDir = new File(STORAGE_CACHE).getAbsoluteFile();
+        fileDir = new File(STORAGE_FILE).getAbsoluteFile();
+        for (String area : new String[]{AREA_CACHE, AREA_FILE}) {
+            hits.put(area, Counter.builder("disk.cache.hits").tag("area", area).description("Disk cache hits").register(meterRegistry));
+            misses.put(area, Counter.builder("disk.cache.misses").tag("area", area).description("Disk cache misses").register(meterRegistry));
+            evictions.put(area, Counter.builder("disk.cache.evictions").tag("area", area)
+                    .description("Files evicted from the disk cache").register(meterRegistry));
+        }
+        Gauge.builder("disk.cache.size", bytes, AtomicLong::get).baseUnit("bytes").description("Bytes held in the disk cache").register(meterRegistry);
+        Gauge.builder("disk.cache.files", entries, Map::size).description("Files held in the disk cache").register(meterRegistry);
+        Gauge.builder("disk.cache.quota", this, m -> m.QUOTA).baseUnit("bytes").description("Disk cache quota").register(meterRegistry);
+
+        scan(cacheDir, AREA_CACHE);
+        scan(fileDir, AREA_FILE);
+        log.info("Disk cache indexed, files:{}, bytes:{}, quota:{}", entries.size(), bytes.get(), QUOTA);
+
+        evictor = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().name("disk-cache-evict").factory());
+        evictor.scheduleWithFixedDelay(this::evict, 0, EVICT_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+    }
+
+    /**
+     * 缓存命中，刷新访问时间
+     */
+    public void hit(File file) {
+        Entry entry = entries.get(key(file));
+        if (entry == null) {
+            add(file);
+            entry = entries.get(key(file));
+        }
+        if (entry != null) {
+            touch(entry);
+            hits.get(entry.area).increment();
+        }
+    }
+
+    /**
+     * 缓存未命中，area 由将要生成的文件所在目录决定
+     */
+    public void miss(File file) {
+        String area = area(file);
+        if (area != null) {
+            misses.get(area).increment();
+        }
+    }
+
+    /**
+     * 登记新写入的文件，超出配额时触发后台淘汰
+     */
+    public void add(File file) {
+        String area = area(file);
+        if (area == null || !file.isFile()) {
+            return;
+        }
+        Entry entry = new Entry(file.getAbsoluteFile(), area, file.length(), System.currentTimeMillis());
+        Entry previous = entries.put(key(file), entry);
+        bytes.addAndGet(entry.size - (previous != null ? previous.size : 0));
+        if (bytes.get() > QUOTA && evictor != null) {
+            evictor.execute(this::evict);
+        }
+    }
+
+    /**
+     * 文件已被调用方删除
+     */
+    public void remove(File file) {
+        Entry entry = entries.remove(key(file));
+        if (entry != null) {
+            bytes.addAndGet(-entry.size);
+        }
+    }
+
+    public long size() {
+        return bytes.get();
+    }
+
+    /**
+     * 按最近访问时间淘汰，直到占用降到配额的 90%；同时只有一个淘汰过程，其余调用等待其结束后再检查
+     */
+    public synchronized void evict() {
+        if (bytes.get() <= QUOTA) {
+            return;
+        }
+        try {
+            long target = QUOTA / 10 * 9;
+            long idleBefore = System.currentTimeMillis() - EVICT_MIN_IDLE;
+            Set<String> pinned = new HashSet<>(sessionStore.storePaths());
+            pinned.addAll(deferredAttachmentIndex.sourcePaths());
+            List<Entry> candidates = new ArrayList<>(entries.values());
+            candidates.sort(Comparator.comparingLong(e -> e.lastAccess));
+            int evicted = 0;
+            for (Entry entry : candidates) {
+                if (bytes.get() <= target) {
+                    break;
+                }
+                if (entry.lastAccess > idleBefore || pinned.contains(entry.file.getAbsolutePath())) {
+                    continue;
+                }
+                if (entry.file.delete() || !entry.file.exists()) {
+                    if (entries.remove(key(entry.file), entry)) {
+                        bytes.addAndGet(-entry.size);
+                    }
+                    evictions.get(entry.area).increment();
+                    evicted++;
+                    log.debug("Evicted {} ({} bytes)", entry.file.getName(), entry.size);
+                } else {
+                    log.warn("Failed to evict {}", entry.file);
+                }
+            }
+            if (evicted > 0) {
+                // 被淘汰的 lazy 附件来源不再保留在索引中
+                deferredAttachmentIndex.prune();
+            }
+            log.info("Disk cache eviction done, evicted:{}, bytes:{}, quota:{}", evicted, bytes.get(), QUOTA);
+        } catch (Exception e) {
+            log.error("Disk cache eviction failed", e);
+        }
+    }
+
+    private void touch(Entry entry) {
+        long now = System.currentTimeMillis();
+        entry.lastAccess = now;
+        // 写入修改时间，重启后的扫描仍能得到访问顺序
+        entry.file.setLastModified(now);
+    }
+
+    private void scan(File dir, String area) {
+        File[] files = dir.listFiles(file -> file.isFile() && managed(file.getName(), area));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            Entry entry = new Entry(file.getAbsoluteFile(), area, file.length(), file.lastModified());
+            entries.put(key(file), entry);
+            bytes.addAndGet(entry.size);
+        }
+    }
+
+    /**
+     * 受管理的文件所属区域：STORAGE_CACHE 下的行存储(.bin 和旧版本 .json)、STORAGE_FILE 下载的文件。
+     * 索引文件、子目录、临时文件不在管理范围内
+     */
+    private String area(File file) {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (cacheDir.equals(parent)) {
+            return managed(file.getName(), AREA_CACHE) ? AREA_CACHE : null;
+        }
+        if (fileDir.equals(parent)) {
+            return managed(file.getName(), AREA_FILE) ? AREA_FILE : null;
+        }
+        return null;
+    }
+
+    private static boolean managed(String name, String area) {
+        if (name.endsWith(".tmp") || name.endsWith(".download")) {
+            return false;
+        }
+        return AREA_FILE.equals(area) || name.endsWith(".bin") || name.endsWith(".json");
+    }
+
+    private static String key(File file) {
+        return file.getAbsolutePath();
+    }
+}
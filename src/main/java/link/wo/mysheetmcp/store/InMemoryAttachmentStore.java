@@ -0,0 +1,49 @@
+package link.wo.mysheetmcp.store;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 保存在内存中并模拟网络延迟，用于压测和 CI 中离线测量附件提取吞吐
+ */
+@Component
+@ConditionalOnProperty(name = "attachment.store", havingValue = "memory")
+public class InMemoryAttachmentStore implements AttachmentStore {
+
+    // 每次上传注入的延迟(毫秒)
+    @Value("${attachment.memory.latency:0}")
+    private long LATENCY;
+
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+
+    @Override
+    public String put(String key, byte[] data) {
+        if (LATENCY > 0) {
+            try {
+                Thread.sleep(LATENCY);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Upload interrupted: " + key, e);
+            }
+        }
+        objects.put(key, data);
+        return url(key);
+    }
+
+    @Override
+    public String url(String key) {
+        return "memory://" + key;
+    }
+
+    public byte[] get(String key) {
+        return objects.get(key);
+    }
+
+    public int size() {
+        return objects.size();
+    }
+}
@@ -0,0 +1,60 @@
+package link.wo.mysheetmcp.store;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.IdUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 保存到本地目录，通过本服务的 /files/** 端点下载，适用于离线环境和边缘部署
+ */
+@Component
+@ConditionalOnProperty(name = "attachment.store", havingValue = "local")
+public class LocalAttachmentStore implements AttachmentStore {
+
+    @Value("${attachment.local.dir:storage/attachment}")
+    private String LOCAL_DIR;
+    // 返回给调用方的 URL 前缀，对应下面的 /files/** 路由
+    @Value("${attachment.local.base-url:http://localhost:${server.port:8080}/files/}")
+    private String BASE_URL;
+
+    @Override
+    public String put(String key, byte[] data) {
+        File target = new File(LOCAL_DIR, key);
+        // 内容寻址的 key 已存在时无需重复写入
+        if (!target.exists()) {
+            FileUtil.mkParentDirs(target);
+            File tmpFile = new File(target.getParentFile(), target.getName() + "." + IdUtil.fastSimpleUUID() + ".tmp");
+            try {
+                Files.write(tmpFile.toPath(), data);
+                Files.move(tmpFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                FileUtil.del(tmpFile);
+                throw new UncheckedIOException(e);
+            }
+        }
+        return url(key);
+    }
+
+    @Override
+    public String url(String key) {
+        return BASE_URL + key;
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> localAttachmentRoutes() {
+        return RouterFunctions.resources("/files/**", new FileSystemResource(new File(LOCAL_DIR).getAbsolutePath() + "/"));
+    }
+}
@@ -0,0 +1,71 @@
+package link.wo.mysheetmcp.store;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 磁盘缓存前的内存热点层：按 (md5, 解析模式, 附件模式) 保存 excel2Json 已序列化的 JSON 文本。
+ * <p>
+ * 结果按内容摘要确定，文本不可变，命中时直接返回，不打开行存储也不访问文件系统。
+ * 容量按字节权重计算(cache.hot.max-bytes)，由 Caffeine 的 W-TinyLFU 策略决定准入和淘汰：
+ * 只访问一次的大文件不会挤掉频繁访问的结果。max-bytes 为 0 时关闭。
+ */
+@Component
+public class ResultCache {
+
+    // 内存中保存的 JSON 文本总字节数上限
+    @Value("${cache.hot.max-bytes:67108864}")
+    private long MAX_BYTES;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Cache<String, String> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(MAX_BYTES)
+                .weigher(ResultCache::weigh)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "excel2json.hot");
+        Gauge.builder("excel2json.hot.bytes", this, ResultCache::bytes).baseUnit("bytes")
+                .description("Bytes of conversion results held in memory").register(meterRegistry);
+    }
+
+    public static String key(String md5, boolean rowObject, boolean lazy) {
+        return md5 + "_" + (rowObject ? "row-object" : "basic") + (lazy ? "_lazy" : "");
+    }
+
+    /**
+     * 命中时返回 JSON 文本，未命中返回 null
+     */
+    public String get(String key) {
+        return MAX_BYTES > 0 ? cache.getIfPresent(key) : null;
+    }
+
+    public void put(String key, String json) {
+        if (MAX_BYTES > 0) {
+            cache.put(key, json);
+        }
+    }
+
+    public long bytes() {
+        return cache.policy().eviction().map(e -> e.weightedSize().orElse(0)).orElse(0L);
+    }
+
+    /**
+     * String 内部按 Latin-1 或 UTF-16 存储，按较大的 UTF-16 估算占用
+     */
+    private static int weigh(String key, String json) {
+        return (int) Math.min(Integer.MAX_VALUE, 2L * json.length());
+    }
+}
@@ -0,0 +1,615 @@
+package link.wo.mysheetmcp.store;
+
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.log.Log;
+import cn.hutool.log.LogFactory;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONB;
+import com.alibaba.fastjson2.JSONObject;
+import com.alibaba.fastjson2.JSONReader;
+import com.alibaba.fastjson2.JSONWriter;
+import link.wo.mysheetmcp.util.ExcelJsonSink;
+import link.wo.mysheetmcp.util.JsonStreamSink;
+import link.wo.mysheetmcp.util.RowBuffer;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 转换结果的二进制缓存，同时作为会话的行存储。
+ * <p>
+ * 文件以定长头部开始，之后是逐行写入的 JSONB 行（与 excel2Json 返回的行结构相同）、
+ * 行偏移表、sheet 目录和 JSONB 元数据：
+ * <pre>
+ * [header 64B][row 0][row 1]...[row n-1][offset 0..n (long)][sheet directory][meta]
+ * header    = magic(int) version(int) flags(int) rowCount(int) sheetCount(int) metaLen(int)
+ *             offsetsPos(long) dirPos(long) metaPos(long)
+ * directory = (firstRow(int) rowCount(int) nameLen(int) name(UTF-8)) * sheetCount
+ * meta      = {header, filename, md5, merges}
+ * </pre>
+ * 读取时整个文件以只读方式 mmap，通过偏移表直接定位任意行区间，只解码需要的行，不经过 String。
+ * merges 按 sheet 顺序保存解析时报告的合并区域(每个区域 4 个整数)，回放时在 startSheet 之后重新报告。
+ * 单个映射不能超过 2GB，文件按 1GB 分段映射，位置都按 long 计算，跨段的行分段复制。
+ */
+public class RowStore {
+    private static final Log log = LogFactory.get();
+
+    private static final int MAGIC = 0x4D534A43; // "MSJC"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int FLAG_ROW_OBJECT = 1;
+    private static final int SEGMENT_SIZE = 1 << 30;
+
+    /**
+     * sheet 目录项，row-object 模式下没有目录
+     */
+    public record SheetEntry(String name, int firstRow, int rowCount) {
+    }
+
+    private final File file;
+    private final Segments buffer;
+    private final boolean rowObject;
+    private final int rowCount;
+    private final long offsetsPos;
+    private final List<SheetEntry> sheets;
+    private final JSONObject meta;
+
+    private RowStore(File file, Segments buffer, boolean rowObject, int rowCount, long offsetsPos,
+                     List<SheetEntry> sheets, JSONObject meta) {
+        this.file = file;
+        this.buffer = buffer;
+        this.rowObject = rowObject;
+        this.rowCount = rowCount;
+        this.offsetsPos = offsetsPos;
+        this.sheets = sheets;
+        this.meta = meta;
+    }
+
+    public static RowStore open(File file) throws IOException {
+        return open(file, SEGMENT_SIZE);
+    }
+
+    /**
+     * 按指定的分段大小映射，测试中用很小的分段覆盖跨段读取
+     */
+    static RowStore open(File file, int segmentSize) throws IOException {
+        Segments buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Invalid row store: " + file.getName());
+            }
+            buffer = Segments.map(channel, size, segmentSize);
+        }
+        int magic = buffer.getInt(0);
+        int version = buffer.getInt(4);
+        if (magic != MAGIC || version != VERSION) {
+            throw new IOException("Invalid row store: " + file.getName());
+        }
+        int flags = buffer.getInt(8);
+        int rowCount = buffer.getInt(12);
+        int sheetCount = buffer.getInt(16);
+        int metaLen = buffer.getInt(20);
+        long offsetsPos = buffer.getLong(24);
+        long dirPos = buffer.getLong(32);
+        long metaPos = buffer.getLong(40);
+        if (metaPos + metaLen != buffer.capacity()) {
+            throw new IOException("Truncated row store: " + file.getName());
+        }
+
+        List<SheetEntry> sheets = new ArrayList<>(sheetCount);
+        long pos = dirPos;
+        for (int i = 0; i < sheetCount; i++) {
+            int firstRow = buffer.getInt(pos);
+            int count = buffer.getInt(pos + 4);
+            int nameLen = buffer.getInt(pos + 8);
+            byte[] name = new byte[nameLen];
+            buffer.get(pos + 12, name, 0, nameLen);
+            sheets.add(new SheetEntry(new String(name, StandardCharsets.UTF_8), firstRow, count));
+            pos += 12 + nameLen;
+        }
+        byte[] metaBytes = new byte[metaLen];
+        buffer.get(metaPos, metaBytes, 0, metaLen);
+        JSONObject meta = JSONB.parseObject(metaBytes);
+
+        return new RowStore(file, buffer, (flags & FLAG_ROW_OBJECT) != 0, rowCount, offsetsPos,
+                Collections.unmodifiableList(sheets), meta);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public boolean isRowObject() {
+        return rowObject;
+    }
+
+    public List<SheetEntry> getSheets() {
+        return sheets;
+    }
+
+    /**
+     * row-object 模式的表头，basic 模式返回 null
+     */
+    public JSONObject readHeader() {
+        return meta.getJSONObject("header");
+    }
+
+    public String getFilename() {
+        return meta.getString("filename");
+    }
+
+    public String getMd5() {
+        return meta.getString("md5");
+    }
+
+    /**
+     * 读取并解码单行
+     */
+    public JSONObject readRow(int index) {
+        if (index < 0 || index >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + index + " out of range, rowCount: " + rowCount);
+        }
+        long start = offset(index);
+        byte[] bytes = new byte[(int) (offset(index + 1) - start)];
+        buffer.get(start, bytes, 0, bytes.length);
+        return JSONB.parseObject(bytes);
+    }
+
+    /**
+     * 批量读取连续的行：只复制并解码区间内的行数据。
+     * 受 maxBytes（按 JSONB 编码长度计算）限制，至少返回一行。
+     */
+    public JSONArray readRows(int from, int count, long maxBytes) {
+        JSONArray rows = new JSONArray();
+        if (from < 0 || from >= rowCount || count <= 0) {
+            return rows;
+        }
+        int n = Math.min(count, rowCount - from);
+        long first = offset(from);
+        int end = 1;
+        while (end < n && offset(from + end + 1) - first <= maxBytes) {
+            end++;
+        }
+        decodeRows(from, end, rows);
+        return rows;
+    }
+
+    /**
+     * 还原 excel2Json 的完整返回结构：basic 为按 sheet 分组的 data，row-object 为 header + data
+     */
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        if (rowObject) {
+            json.put("header", readHeader());
+            JSONArray data = new JSONArray(rowCount);
+            decodeRows(0, rowCount, data);
+            json.put("data", data);
+        } else {
+            JSONArray data = new JSONArray(sheets.size());
+            for (SheetEntry sheet : sheets) {
+                JSONObject sheetObj = new JSONObject();
+                sheetObj.put("sheet", sheet.name());
+                JSONArray rows = new JSONArray(sheet.rowCount());
+                decodeRows(sheet.firstRow(), sheet.rowCount(), rows);
+                sheetObj.put("rows", rows);
+                data.add(sheetObj);
+            }
+            json.put("data", data);
+        }
+        json.put("filename", getFilename());
+        json.put("md5", getMd5());
+        return json;
+    }
+
+    /**
+     * 以 JSON 文本流式写出完整结果，与 toJson().toJSONString() 相同，
+     * 每次只解码一行，不构建整个文档的对象树
+     */
+    public long writeJson(JsonStreamSink sink) {
+        JSONObject header = readHeader();
+        if (header != null) {
+            header.forEach((key, value) -> sink.header(key, (String) value));
+        }
+        byte[] scratch = new byte[4096];
+        if (rowObject) {
+            for (int i = 0; i < rowCount; i++) {
+                scratch = writeRow(sink, i, scratch);
+            }
+        } else {
+            for (SheetEntry sheet : sheets) {
+                sink.startSheet(sheet.name());
+                for (int i = sheet.firstRow(); i < sheet.firstRow() + sheet.rowCount(); i++) {
+                    scratch = writeRow(sink, i, scratch);
+                }
+                sink.endSheet();
+            }
+        }
+        return sink.finish(getFilename(), getMd5());
+    }
+
+    /**
+     * 按解析时的事件顺序把全部行回放到 sink(表头、sheet、行、单元格)。
+     * 单元格字段直接从 JSONB 读出，不为行和单元格构建 JSONObject
+     */
+    public void replay(ExcelJsonSink sink) {
+        JSONObject header = readHeader();
+        if (header != null) {
+            header.forEach((key, value) -> sink.header(key, (String) value));
+        }
+        byte[] scratch = new byte[4096];
+        if (rowObject) {
+            for (int i = 0; i < rowCount; i++) {
+                scratch = replayRow(sink, i, scratch);
+            }
+        } else {
+            JSONArray merges = meta.getJSONArray("merges");
+            for (int n = 0; n < sheets.size(); n++) {
+                SheetEntry sheet = sheets.get(n);
+                sink.startSheet(sheet.name());
+                JSONArray regions = merges != null ? merges.getJSONArray(n) : null;
+                for (int m = 0; regions != null && m + 3 < regions.size(); m += 4) {
+                    sink.mergedRegion(regions.getIntValue(m), regions.getIntValue(m + 1),
+                            regions.getIntValue(m + 2), regions.getIntValue(m + 3));
+                }
+                for (int i = sheet.firstRow(); i < sheet.firstRow() + sheet.rowCount(); i++) {
+                    scratch = replayRow(sink, i, scratch);
+                }
+                sink.endSheet();
+            }
+        }
+    }
+
+    private byte[] replayRow(ExcelJsonSink sink, int index, byte[] scratch) {
+        long start = offset(index);
+        int len = (int) (offset(index + 1) - start);
+        if (len > scratch.length) {
+            scratch = new byte[Math.max(len, scratch.length * 2)];
+        }
+        buffer.get(start, scratch, 0, len);
+        try (JSONReader reader = JSONReader.ofJSONB(scratch, 0, len)) {
+            reader.nextIfObjectStart();
+            while (!reader.nextIfObjectEnd()) {
+                String name = reader.readFieldName();
+                if ("rowIndex".equals(name) || "index".equals(name)) {
+                    // 行号总是第一个字段
+                    sink.startRow(reader.readInt32Value());
+                } else if ("columns".equals(name)) {
+                    int cells = reader.startArray();
+                    for (int i = 0; i < cells; i++) {
+                        replayCell(reader, sink, null);
+                    }
+                } else {
+                    replayCell(reader, sink, name);
+                }
+            }
+        }
+        sink.endRow();
+        return scratch;
+    }
+
+    /**
+     * 读取一个单元格对象，key 为 null 时从 colIndex 字段读取(basic 模式)
+     */
+    private static void replayCell(JSONReader reader, ExcelJsonSink sink, String key) {
+        String type = null;
+        Object value = null;
+        int rowspan = 1;
+        int colspan = 1;
+        reader.nextIfObjectStart();
+        while (!reader.nextIfObjectEnd()) {
+            switch (reader.readFieldName()) {
+                case "colIndex" -> key = reader.readString();
+                case "type" -> type = reader.readString();
+                case "value" -> value = reader.readAny();
+                case "rowspan" -> rowspan = reader.readInt32Value();
+                case "colspan" -> colspan = reader.readInt32Value();
+                default -> reader.skipValue();
+            }
+        }
+        sink.cell(key, type, value, rowspan, colspan);
+    }
+
+    private byte[] writeRow(JsonStreamSink sink, int index, byte[] scratch) {
+        long start = offset(index);
+        int len = (int) (offset(index + 1) - start);
+        if (len > scratch.length) {
+            scratch = new byte[Math.max(len, scratch.length * 2)];
+        }
+        buffer.get(start, scratch, 0, len);
+        sink.row(JSONB.parseObject(scratch, 0, len, JSONObject.class));
+        return scratch;
+    }
+
+    private void decodeRows(int from, int count, JSONArray target) {
+        if (count <= 0) {
+            return;
+        }
+        long base = offset(from);
+        long size = offset(from + count) - base;
+        if (size > SEGMENT_SIZE) {
+            // 区间超过一个分段时逐行复制，不分配过大的数组
+            byte[] scratch = new byte[4096];
+            for (int i = 0; i < count; i++) {
+                long start = offset(from + i);
+                int len = (int) (offset(from + i + 1) - start);
+                if (len > scratch.length) {
+                    scratch = new byte[Math.max(len, scratch.length * 2)];
+                }
+                buffer.get(start, scratch, 0, len);
+                target.add(JSONB.parseObject(scratch, 0, len, JSONObject.class));
+            }
+            return;
+        }
+        byte[] bytes = new byte[(int) size];
+        buffer.get(base, bytes, 0, bytes.length);
+        long start = base;
+        for (int i = 0; i < count; i++) {
+            long end = offset(from + i + 1);
+            target.add(JSONB.parseObject(bytes, (int) (start - base), (int) (end - start), JSONObject.class));
+            start = end;
+        }
+    }
+
+    private long offset(int index) {
+        return buffer.getLong(offsetsPos + (long) index * Long.BYTES);
+    }
+
+    /**
+     * 按固定大小分段映射的只读文件，以 long 位置读取，跨段的读取分段复制
+     */
+    private static final class Segments {
+        private final MappedByteBuffer[] segments;
+        private final int segmentSize;
+        private final long capacity;
+
+        private Segments(MappedByteBuffer[] segments, int segmentSize, long capacity) {
+            this.segments = segments;
+            this.segmentSize = segmentSize;
+            this.capacity = capacity;
+        }
+
+        private static Segments map(FileChannel channel, long size, int segmentSize) throws IOException {
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + segmentSize - 1) / segmentSize)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i * segmentSize;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, size - start));
+            }
+            return new Segments(segments, segmentSize, size);
+        }
+
+        private long capacity() {
+            return capacity;
+        }
+
+        private int getInt(long pos) {
+            MappedByteBuffer segment = segments[(int) (pos / segmentSize)];
+            int at = (int) (pos % segmentSize);
+            if (at + Integer.BYTES <= segment.capacity()) {
+                return segment.getInt(at);
+            }
+            byte[] bytes = new byte[Integer.BYTES];
+            get(pos, bytes, 0, bytes.length);
+            return ByteBuffer.wrap(bytes).getInt();
+        }
+
+        private long getLong(long pos) {
+            MappedByteBuffer segment = segments[(int) (pos / segmentSize)];
+            int at = (int) (pos % segmentSize);
+            if (at + Long.BYTES <= segment.capacity()) {
+                return segment.getLong(at);
+            }
+            byte[] bytes = new byte[Long.BYTES];
+            get(pos, bytes, 0, bytes.length);
+            return ByteBuffer.wrap(bytes).getLong();
+        }
+
+        private void get(long pos, byte[] target, int offset, int length) {
+            while (length > 0) {
+                MappedByteBuffer segment = segments[(int) (pos / segmentSize)];
+                int at = (int) (pos % segmentSize);
+                int n = Math.min(length, segment.capacity() - at);
+                segment.get(at, target, offset, n);
+                pos += n;
+                offset += n;
+                length -= n;
+            }
+        }
+    }
+
+    public static Writer create(File target, boolean rowObject) throws IOException {
+        return new Writer(target, rowObject);
+    }
+
+    /**
+     * 作为解析 sink 逐行写入，先写临时文件，commit 时回填头部并原子替换目标文件
+     */
+    public static class Writer implements ExcelJsonSink, Closeable {
+        private final File target;
+        private final File tmpFile;
+        private final boolean rowObject;
+        private final DataOutputStream out;
+        private final RowBuffer row;
+        private final JSONWriter rowWriter = JSONWriter.ofJSONB();
+        private final JSONObject header = new JSONObject();
+        private final List<SheetEntry> sheets = new ArrayList<>();
+        // 每个 sheet 的合并区域，与 sheets 对齐
+        private final JSONArray merges = new JSONArray();
+        private JSONArray sheetMerges = new JSONArray();
+
+        private long[] offsets = new long[1024];
+        private int rowCount;
+        private long position = HEADER_SIZE;
+        private String sheetName;
+        private int sheetFirstRow;
+        private String filename;
+        private String md5;
+        private boolean committed;
+
+        private Writer(File target, boolean rowObject) throws IOException {
+            this.target = target;
+            this.rowObject = rowObject;
+            this.row = new RowBuffer(rowObject);
+            File dir = target.getParentFile();
+            if (dir != null && !dir.exists()) {
+                dir.mkdirs();
+            }
+            this.tmpFile = new File(dir, target.getName() + "." + IdUtil.fastSimpleUUID() + ".tmp");
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 64 * 1024));
+            // 头部先占位，commit 时回填
+            out.write(new byte[HEADER_SIZE]);
+        }
+
+        /**
+         * 写入 excel2Json 返回的元数据
+         */
+        public void setMeta(String filename, String md5) {
+            this.filename = filename;
+            this.md5 = md5;
+        }
+
+        @Override
+        public void header(String key, String value) {
+            header.put(key, value);
+        }
+
+        @Override
+        public void startSheet(String sheetName) {
+            this.sheetName = sheetName;
+            this.sheetFirstRow = rowCount;
+            this.sheetMerges = new JSONArray();
+        }
+
+        @Override
+        public void mergedRegion(int firstRow, int firstCol, int lastRow, int lastCol) {
+            sheetMerges.add(firstRow);
+            sheetMerges.add(firstCol);
+            sheetMerges.add(lastRow);
+            sheetMerges.add(lastCol);
+        }
+
+        @Override
+        public void startRow(int index) {
+            row.start(index);
+        }
+
+        @Override
+        public void cell(String key, String type, Object value, int rowspan, int colspan) {
+            row.add(key, type, value, rowspan, colspan);
+        }
+
+        @Override
+        public void endRow() {
+            row.writeJsonb(rowWriter);
+            if (rowCount == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[rowCount++] = position;
+            try {
+                position += rowWriter.flushTo(out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void endSheet() {
+            if (sheetName != null) {
+                sheets.add(new SheetEntry(sheetName, sheetFirstRow, rowCount - sheetFirstRow));
+                merges.add(sheetMerges);
+                sheetName = null;
+            }
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * 写入偏移表、sheet 目录和元数据，回填头部并原子替换目标文件
+         */
+        public RowStore commit() throws IOException {
+            long offsetsPos = position;
+            for (int i = 0; i < rowCount; i++) {
+                out.writeLong(offsets[i]);
+            }
+            out.writeLong(position);
+            long dirPos = offsetsPos + (long) (rowCount + 1) * Long.BYTES;
+            long dirLen = 0;
+            for (SheetEntry sheet : sheets) {
+                byte[] name = sheet.name().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(sheet.firstRow());
+                out.writeInt(sheet.rowCount());
+                out.writeInt(name.length);
+                out.write(name);
+                dirLen += 12 + name.length;
+            }
+            long metaPos = dirPos + dirLen;
+            JSONObject meta = new JSONObject();
+            if (rowObject) {
+                meta.put("header", header);
+            }
+            meta.put("filename", filename);
+            meta.put("md5", md5);
+            if (merges.stream().anyMatch(regions -> !((JSONArray) regions).isEmpty())) {
+                meta.put("merges", merges);
+            }
+            byte[] metaBytes = JSONB.toBytes(meta);
+            out.write(metaBytes);
+            out.close();
+            rowWriter.close();
+
+            ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE);
+            head.putInt(MAGIC).putInt(VERSION).putInt(rowObject ? FLAG_ROW_OBJECT : 0).putInt(rowCount)
+                    .putInt(sheets.size()).putInt(metaBytes.length)
+                    .putLong(offsetsPos).putLong(dirPos).putLong(metaPos);
+            head.rewind();
+            try (FileChannel channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.WRITE)) {
+                while (head.hasRemaining()) {
+                    channel.write(head, head.position());
+                }
+            }
+
+            Files.move(tmpFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+            log.debug("Row store written: {}, rows:{}, sheets:{}, size:{}", target.getName(), rowCount, sheets.size(), target.length());
+            return RowStore.open(target);
+        }
+
+        @Override
+        public void close() {
+            if (committed) {
+                return;
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.warn("Failed to close row store writer: {}", e.getMessage());
+            }
+            rowWriter.close();
+            if (tmpFile.exists() && !tmpFile.delete()) {
+                log.warn("Failed to delete temp row store: {}", tmpFile);
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package link.wo.mysheetmcp.store;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 打开的行存储共享表：同一缓存文件(即同一 md5 + 解析模式 + 附件模式)只映射一次，按引用计数共享。
+ * <p>
+ * RowStore 打开后只读，多个会话共用同一个实例，各自只保存读取指针；
+ * 最后一个引用释放时从表中移除，映射随后由 GC 回收。内存占用因此只随不同文件的数量增长，与会话数无关。
+ * 需要扫描整列时按需构建的 {@link ColumnarTable} 也随行存储一起共享和释放。
+ */
+@Component
+public class RowStoreRegistry {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, Entry> stores = new HashMap<>();
+    private long bytes;
+    private long tableBytes;
+
+    private Counter shared;
+    private Counter tablesBuilt;
+
+    private static class Entry {
+        private final RowStore store;
+        private final long size;
+        private ColumnarTable table;
+        private int refs;
+
+        private Entry(RowStore store) {
+            this.store = store;
+            this.size = store.getFile().length();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        shared = Counter.builder("rowstore.shared").description("Row store acquisitions served by an already open store").register(meterRegistry);
+        Gauge.builder("rowstore.open", this, RowStoreRegistry::size).description("Distinct row stores held open").register(meterRegistry);
+        Gauge.builder("rowstore.bytes", this, RowStoreRegistry::bytes).baseUnit("bytes")
+                .description("Bytes of distinct row stores held open, including their columnar tables").register(meterRegistry);
+        tablesBuilt = Counter.builder("rowstore.table.builds").description("Columnar tables built from row stores").register(meterRegistry);
+        Gauge.builder("rowstore.table.bytes", this, RowStoreRegistry::tableBytes).baseUnit("bytes")
+                .description("Estimated heap bytes of columnar tables held open").register(meterRegistry);
+    }
+
+    /**
+     * 获取文件对应的共享行存储，未打开时打开并映射
+     */
+    public synchronized RowStore acquire(File file) throws IOException {
+        Entry entry = stores.get(key(file));
+        if (entry == null) {
+            return register(RowStore.open(file));
+        }
+        shared.increment();
+        entry.refs++;
+        return entry.store;
+    }
+
+    /**
+     * 登记一个已打开的行存储；同一文件已有共享实例时返回该实例，传入的实例不再使用
+     */
+    public synchronized RowStore share(RowStore store) {
+        Entry entry = stores.get(key(store.getFile()));
+        if (entry == null) {
+            return register(store);
+        }
+        shared.increment();
+        entry.refs++;
+        return entry.store;
+    }
+
+    /**
+     * 已登记行存储的列式表，第一次使用时构建(不持有锁)并与行存储一起共享，占用计入 {@link #bytes()}。
+     * 行存储未登记时构建的表不缓存
+     */
+    public ColumnarTable table(RowStore store) {
+        synchronized (this) {
+            Entry entry = stores.get(key(store.getFile()));
+            if (entry != null && entry.store == store && entry.table != null) {
+                return entry.table;
+            }
+        }
+        ColumnarTable table = ColumnarTable.build(store);
+        tablesBuilt.increment();
+        synchronized (this) {
+            Entry entry = stores.get(key(store.getFile()));
+            if (entry == null || entry.store != store) {
+                return table;
+            }
+            if (entry.table == null) {
+                entry.table = table;
+                bytes += table.bytes();
+                tableBytes += table.bytes();
+            }
+            return entry.table;
+        }
+    }
+
+    /**
+     * 释放一个引用，最后一个引用释放时移除
+     */
+    public synchronized void release(RowStore store) {
+        String key = key(store.getFile());
+        Entry entry = stores.get(key);
+        if (entry == null || entry.store != store) {
+            return;
+        }
+        if (--entry.refs <= 0) {
+            stores.remove(key);
+            bytes -= entry.size;
+            if (entry.table != null) {
+                bytes -= entry.table.bytes();
+                tableBytes -= entry.table.bytes();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return stores.size();
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized long tableBytes() {
+        return tableBytes;
+    }
+
+    private RowStore register(RowStore store) {
+        Entry entry = new Entry(store);
+        entry.refs = 1;
+        stores.put(key(store.getFile()), entry);
+        bytes += entry.size;
+        return store;
+    }
+
+    private static String key(File file) {
+        return file.getAbsolutePath();
+    }
+}
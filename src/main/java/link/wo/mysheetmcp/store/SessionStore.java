@@ -0,0 +1,359 @@
+package link.wo.mysheetmcp.store;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.log.Log;
+import cn.hutool.log.LogFactory;
+import com.alibaba.fastjson2.JSON;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话存储：会话只保存读取指针和行存储位置，行数据在磁盘上的 {@link RowStore} 中。
+ * <p>
+ * 内存占用主要是会话打开(mmap)的行存储，同一文件的会话通过 {@link RowStoreRegistry} 共享一个实例，
+ * 不同文件的行存储按文件大小(加上已构建的列式表的估算大小)计入 session.memory-budget。超出预算时按 LRU 顺序释放冷会话对行存储的引用，
+ * 下次读取时重新获取；
+ * 内存中的会话数超过 session.max-in-memory 时，最冷的会话写入 STORAGE_CACHE/sessions/{id}.json 并移出内存，
+ * 下次访问时透明加载。超过 session.ttl 未访问的会话被删除。
+ */
+@Component
+public class SessionStore {
+    private static final Log log = LogFactory.get();
+
+    // 已打开行存储的总字节数上限
+    @Value("${session.memory-budget:268435456}")
+    private long MEMORY_BUDGET;
+    // 内存中保留的会话数上限，超出的写入磁盘
+    @Value("${session.max-in-memory:10000}")
+    private int MAX_IN_MEMORY;
+    // 会话空闲过期时间(毫秒)
+    @Value("${session.ttl:86400000}")
+    private long TTL;
+    @Value("${storage.cache}")
+    private String STORAGE_CACHE;
+
+    @Autowired
+    private RowStoreRegistry rowStoreRegistry;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 按访问顺序排列，头部为最久未访问的会话
+    private final LinkedHashMap<String, Session> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    // 已写入磁盘的会话 -> 行存储文件(绝对路径)，这些文件同样不能被磁盘缓存淘汰
+    private final Map<String, String> spilledStores = new ConcurrentHashMap<>();
+
+    private File spillDir;
+    private ScheduledExecutorService pruner;
+    private Counter released;
+    private Counter spilled;
+    private Counter reloaded;
+    private Counter expired;
+
+    /**
+     * 会话状态，store 为当前引用的共享行存储，释放后为 null
+     */
+    public static class Session {
+        private String sessionId;
+        private String storePath;
+        private int rowCount;
+        private int currentIndex;
+        private long lastAccess;
+        private transient RowStore store;
+
+        public String getSessionId() { return sessionId; }
+        public void setSessionId(String sessionId) { this.sessionId = sessionId; }
+        public String getStorePath() { return storePath; }
+        public void setStorePath(String storePath) { this.storePath = storePath; }
+        public int getRowCount() { return rowCount; }
+        public void setRowCount(int rowCount) { this.rowCount = rowCount; }
+        public int getCurrentIndex() { return currentIndex; }
+        public void setCurrentIndex(int currentIndex) { this.currentIndex = currentIndex; }
+        public long getLastAccess() { return lastAccess; }
+        public void setLastAccess(long lastAccess) { this.lastAccess = lastAccess; }
+    }
+
+    @PostConstruct
+    public void init() {
+        spillDir = new File(STORAGE_CACHE, "sessions");
+        released = Counter.builder("session.evictions").tag("type", "release")
+                .description("Row stores released from cold sessions to stay within the memory budget").register(meterRegistry);
+        spilled = Counter.builder("session.evictions").tag("type", "spill")
+                .description("Cold sessions written to disk").register(meterRegistry);
+        expired = Counter.builder("session.evictions").tag("type", "expire")
+                .description("Sessions removed after the idle TTL").register(meterRegistry);
+        reloaded = Counter.builder("session.reloads").description("Spilled sessions loaded back from disk").register(meterRegistry);
+        Gauge.builder("session.count", this, SessionStore::size).description("Sessions held in memory").register(meterRegistry);
+        loadSpilledStores();
+
+        pruner = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().name("session-prune").factory());
+        long period = Math.max(60_000, Math.min(TTL, 60 * 60 * 1000));
+        pruner.scheduleWithFixedDelay(this::prune, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (pruner != null) {
+            pruner.shutdownNow();
+        }
+    }
+
+    /**
+     * 为已打开的行存储创建会话，同一文件已有会话时共享已打开的行存储
+     */
+    public Session create(RowStore store, int offset) {
+        Session session = new Session();
+        session.setSessionId(IdUtil.fastSimpleUUID());
+        session.setStorePath(store.getFile().getPath());
+        session.setRowCount(store.getRowCount());
+        session.setCurrentIndex(offset);
+        session.setLastAccess(System.currentTimeMillis());
+        synchronized (this) {
+            sessions.put(session.getSessionId(), session);
+            attach(session, rowStoreRegistry.share(store));
+            spillColdSessions();
+        }
+        return session;
+    }
+
+    /**
+     * 获取会话并刷新过期时间，已写入磁盘的会话重新加载到内存，不存在或已过期时返回 null
+     */
+    public Session get(String sessionId) {
+        if (sessionId == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Session session = sessions.get(sessionId);
+            if (session == null) {
+                session = reload(sessionId);
+                if (session == null) {
+                    return null;
+                }
+                sessions.put(sessionId, session);
+                spillColdSessions();
+            }
+            if (now - session.getLastAccess() >= TTL) {
+                remove(session);
+                expired.increment();
+                return null;
+            }
+            session.setLastAccess(now);
+            return session;
+        }
+    }
+
+    /**
+     * 会话的行存储，已被释放时重新获取(其他会话仍在使用时直接共享)
+     */
+    public synchronized RowStore open(Session session) throws IOException {
+        if (session.store != null) {
+            return session.store;
+        }
+        RowStore store = rowStoreRegistry.acquire(new File(session.getStorePath()));
+        if (sessions.get(session.getSessionId()) == session) {
+            attach(session, store);
+        } else {
+            // 会话已被移出内存，只用于本次读取
+            rowStoreRegistry.release(store);
+        }
+        return store;
+    }
+
+    /**
+     * 会话数据的列式表，第一次使用时由行存储构建，与同一文件的其他会话共享；构建后按新的占用检查内存预算
+     */
+    public ColumnarTable table(Session session) throws IOException {
+        RowStore store = open(session);
+        ColumnarTable table = rowStoreRegistry.table(store);
+        synchronized (this) {
+            if (session.store == store) {
+                releaseColdStores(session);
+            }
+        }
+        return table;
+    }
+
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    /**
+     * 内存中和已写入磁盘的会话引用的行存储文件(绝对路径)，这些文件不能被磁盘缓存淘汰
+     */
+    public synchronized Set<String> storePaths() {
+        Set<String> paths = new HashSet<>(spilledStores.values());
+        for (Session session : sessions.values()) {
+            paths.add(new File(session.getStorePath()).getAbsolutePath());
+        }
+        return paths;
+    }
+
+    /**
+     * 删除过期会话，包括已写入磁盘的会话
+     */
+    public void prune() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Iterator<Session> it = sessions.values().iterator();
+            while (it.hasNext()) {
+                Session session = it.next();
+                if (now - session.getLastAccess() >= TTL) {
+                    it.remove();
+                    detach(session);
+                    expired.increment();
+                }
+            }
+        }
+        File[] files = spillDir.listFiles((dir, name) -> name.endsWith(".json"));
+        if (files != null) {
+            for (File file : files) {
+                if (now - file.lastModified() >= TTL && file.delete()) {
+                    spilledStores.remove(file.getName().substring(0, file.getName().length() - ".json".length()));
+                    expired.increment();
+                }
+            }
+        }
+    }
+
+    private void attach(Session session, RowStore store) {
+        session.store = store;
+        releaseColdStores(session);
+    }
+
+    private void detach(Session session) {
+        if (session.store != null) {
+            rowStoreRegistry.release(session.store);
+            session.store = null;
+        }
+    }
+
+    private void remove(Session session) {
+        sessions.remove(session.getSessionId());
+        detach(session);
+    }
+
+    /**
+     * 超出内存预算时从最久未访问的会话开始释放行存储，current 为正在使用的会话，不释放
+     */
+    private void releaseColdStores(Session current) {
+        if (rowStoreRegistry.bytes() <= MEMORY_BUDGET) {
+            return;
+        }
+        for (Session session : sessions.values()) {
+            if (rowStoreRegistry.bytes() <= MEMORY_BUDGET) {
+                break;
+            }
+            // 与当前会话共享同一行存储的会话释放后也不会减少占用
+            if (session != current && session.store != null && session.store != current.store) {
+                detach(session);
+                released.increment();
+            }
+        }
+    }
+
+    /**
+     * 内存中的会话数超过上限时，将最久未访问的会话写入磁盘
+     */
+    private void spillColdSessions() {
+        if (sessions.size() <= MAX_IN_MEMORY) {
+            return;
+        }
+        List<Session> cold = new ArrayList<>();
+        Iterator<Map.Entry<String, Session>> it = sessions.entrySet().iterator();
+        while (sessions.size() - cold.size() > MAX_IN_MEMORY && it.hasNext()) {
+            cold.add(it.next().getValue());
+        }
+        for (Session session : cold) {
+            if (spill(session)) {
+                remove(session);
+                spilled.increment();
+            }
+        }
+    }
+
+    private boolean spill(Session session) {
+        File file = spillFile(session.getSessionId());
+        File tmpFile = new File(spillDir, file.getName() + "." + IdUtil.fastSimpleUUID() + ".tmp");
+        try {
+            FileUtil.writeUtf8String(JSON.toJSONString(session), tmpFile);
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            spilledStores.put(session.getSessionId(), new File(session.getStorePath()).getAbsolutePath());
+            return true;
+        } catch (Exception e) {
+            FileUtil.del(tmpFile);
+            log.warn("Failed to spill session {}: {}", session.getSessionId(), e.getMessage());
+            return false;
+        }
+    }
+
+    private Session reload(String sessionId) {
+        // sessionId 由 fastSimpleUUID 生成，其余输入不作为文件名使用
+        if (!sessionId.matches("[0-9a-f]{32}")) {
+            return null;
+        }
+        File file = spillFile(sessionId);
+        spilledStores.remove(sessionId);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            Session session = JSON.parseObject(FileUtil.readUtf8String(file), Session.class);
+            FileUtil.del(file);
+            reloaded.increment();
+            return session;
+        } catch (Exception e) {
+            log.warn("Invalid spilled session {}: {}", sessionId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 启动时读取已写入磁盘的会话，记录它们引用的行存储
+     */
+    private void loadSpilledStores() {
+        File[] files = spillDir.listFiles((dir, name) -> name.endsWith(".json"));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            try {
+                Session session = JSON.parseObject(FileUtil.readUtf8String(file), Session.class);
+                spilledStores.put(session.getSessionId(), new File(session.getStorePath()).getAbsolutePath());
+            } catch (Exception e) {
+                log.warn("Invalid spilled session {}: {}", file.getName(), e.getMessage());
+            }
+        }
+        log.info("Spilled sessions indexed, sessions:{}", spilledStores.size());
+    }
+
+    private File spillFile(String sessionId) {
+        if (!spillDir.exists()) {
+            spillDir.mkdirs();
+        }
+        return new File(spillDir, sessionId + ".json");
+    }
+}
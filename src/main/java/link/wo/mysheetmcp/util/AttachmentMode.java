@@ -0,0 +1,26 @@
+package link.wo.mysheetmcp.util;
+
+/**
+ * 转换时嵌入附件的处理方式
+ */
+public enum AttachmentMode {
+    /**
+     * 先等待所有附件上传结束，只替换上传成功的单元格
+     */
+    UPLOAD,
+    /**
+     * 附件上传与单元格解析同时进行，单元格直接使用由内容摘要确定的 URL
+     */
+    PIPELINED,
+    /**
+     * 不上传，单元格记录附件引用(attachment:{md5})，由 resolveAttachment 按需上传
+     */
+    LAZY;
+
+    /**
+     * 工具参数 attachments：lazy 为延迟上传，其余(默认 eager)为立即上传
+     */
+    public static boolean isLazy(String attachments) {
+        return "lazy".equalsIgnoreCase(attachments);
+    }
+}
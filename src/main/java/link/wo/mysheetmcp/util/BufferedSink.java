@@ -0,0 +1,137 @@
+package link.wo.mysheetmcp.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 记录一段解析输出(一个 sheet)，之后按原顺序回放到真正的 sink。
+ * <p>
+ * 并行解析时每个任务写入自己的 BufferedSink，由调用线程按 sheet 顺序回放，
+ * 输出与单线程解析完全一致。事件按类型码、整数参数、对象参数分三个数组保存，不为每个单元格创建对象。
+ */
+public class BufferedSink implements ExcelJsonSink {
+    private static final byte HEADER = 0;
+    private static final byte START_SHEET = 1;
+    private static final byte START_ROW = 2;
+    private static final byte CELL = 3;
+    private static final byte END_ROW = 4;
+    private static final byte END_SHEET = 5;
+    private static final byte MERGED_REGION = 6;
+
+    private byte[] ops = new byte[256];
+    private int opCount;
+    private int[] ints = new int[256];
+    private int intCount;
+    private final List<Object> values = new ArrayList<>();
+    // 已缓冲内容的估算字节数
+    private long bytes;
+
+    @Override
+    public void header(String key, String value) {
+        op(HEADER);
+        values.add(key);
+        values.add(value);
+        bytes += 1 + sizeOf(key) + sizeOf(value);
+    }
+
+    @Override
+    public void startSheet(String sheetName) {
+        op(START_SHEET);
+        values.add(sheetName);
+        bytes += 1 + sizeOf(sheetName);
+    }
+
+    @Override
+    public void mergedRegion(int firstRow, int firstCol, int lastRow, int lastCol) {
+        op(MERGED_REGION);
+        addInt(firstRow);
+        addInt(firstCol);
+        addInt(lastRow);
+        addInt(lastCol);
+        bytes += 17;
+    }
+
+    @Override
+    public void startRow(int index) {
+        op(START_ROW);
+        addInt(index);
+        bytes += 5;
+    }
+
+    @Override
+    public void cell(String key, String type, Object value, int rowspan, int colspan) {
+        op(CELL);
+        values.add(key);
+        values.add(type);
+        values.add(value);
+        addInt(rowspan);
+        addInt(colspan);
+        // 列名和类型是共享的常量，只计引用
+        bytes += 1 + 8 + 16 + sizeOf(value);
+    }
+
+    @Override
+    public void endRow() {
+        op(END_ROW);
+        bytes++;
+    }
+
+    @Override
+    public void endSheet() {
+        op(END_SHEET);
+        bytes++;
+    }
+
+    /**
+     * 已缓冲内容占用的估算字节数(按对象头、引用和 UTF-16 字符估算)
+     */
+    public long bytes() {
+        return bytes;
+    }
+
+    /**
+     * 按记录顺序输出到 sink
+     */
+    public void replay(ExcelJsonSink sink) {
+        int v = 0;
+        int n = 0;
+        for (int i = 0; i < opCount; i++) {
+            switch (ops[i]) {
+                case HEADER -> sink.header((String) values.get(v++), (String) values.get(v++));
+                case START_SHEET -> sink.startSheet((String) values.get(v++));
+                case MERGED_REGION -> {
+                    sink.mergedRegion(ints[n], ints[n + 1], ints[n + 2], ints[n + 3]);
+                    n += 4;
+                }
+                case START_ROW -> sink.startRow(ints[n++]);
+                case CELL -> {
+                    sink.cell((String) values.get(v), (String) values.get(v + 1), values.get(v + 2), ints[n], ints[n + 1]);
+                    v += 3;
+                    n += 2;
+                }
+                case END_ROW -> sink.endRow();
+                case END_SHEET -> sink.endSheet();
+                default -> throw new IllegalStateException("Unknown op " + ops[i]);
+            }
+        }
+    }
+
+    private static long sizeOf(Object value) {
+        return value instanceof String text ? 48 + 2L * text.length() : 24;
+    }
+
+    private void op(byte op) {
+        if (opCount == ops.length) {
+            ops = Arrays.copyOf(ops, ops.length * 2);
+        }
+        ops[opCount++] = op;
+    }
+
+    private void addInt(int value) {
+        if (intCount == ints.length) {
+            ints = Arrays.copyOf(ints, ints.length * 2);
+        }
+        ints[intCount++] = value;
+    }
+}
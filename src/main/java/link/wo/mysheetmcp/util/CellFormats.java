@@ -0,0 +1,80 @@
+package link.wo.mysheetmcp.util;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+/**
+ * 数字单元格的格式判断和格式化，每个 sheet 一个实例，只在解析它的线程中使用。
+ * <p>
+ * 日期、货币的判断只取决于样式的数字格式，按样式序号缓存分类，同一样式的单元格不再重复扫描格式串；
+ * 货币使用复用的 DataFormatter 格式化，日期使用 java.time 格式化。
+ */
+final class CellFormats {
+    // 分类标志：日期格式、包含货币符号
+    static final int DATE = 1;
+    static final int CURRENCY = 2;
+    // 已分类，区分未缓存的样式
+    private static final int KNOWN = 4;
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    // 样式序号 -> 分类标志，0 表示尚未分类
+    private byte[] styleKinds = new byte[32];
+    private DataFormatter dataFormatter;
+
+    /**
+     * 样式的分类标志(DATE / CURRENCY 的组合)，没有样式时为 0
+     */
+    int kind(CellStyle style) {
+        if (style == null) {
+            return 0;
+        }
+        int index = style.getIndex() & 0xFFFF;
+        if (index >= styleKinds.length) {
+            styleKinds = Arrays.copyOf(styleKinds, Math.max(index + 1, styleKinds.length * 2));
+        }
+        int kind = styleKinds[index];
+        if (kind == 0) {
+            kind = classify(style.getDataFormat(), style.getDataFormatString()) | KNOWN;
+            styleKinds[index] = (byte) kind;
+        }
+        return kind & (DATE | CURRENCY);
+    }
+
+    /**
+     * 货币单元格的显示文本，与 new DataFormatter().formatCellValue(cell) 一致
+     */
+    String money(Cell cell) {
+        if (dataFormatter == null) {
+            dataFormatter = new DataFormatter();
+        }
+        return dataFormatter.formatCellValue(cell);
+    }
+
+    /**
+     * 数字格式的分类标志，与 DateUtil.isADateFormat 和货币符号检查一致
+     */
+    static int classify(int formatIndex, String format) {
+        int kind = 0;
+        if (DateUtil.isADateFormat(formatIndex, format)) {
+            kind |= DATE;
+        }
+        if (format != null && (format.contains("￥") || format.contains("$") || format.contains("€") || format.contains("£"))) {
+            kind |= CURRENCY;
+        }
+        return kind;
+    }
+
+    /**
+     * 日期输出为 yyyy-MM-dd
+     */
+    static String formatDate(LocalDateTime date) {
+        return date != null ? DATE_FORMATTER.format(date) : "";
+    }
+}
@@ -0,0 +1,496 @@
+package link.wo.mysheetmcp.util;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.alibaba.fastjson2.JSONWriter;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 以紧凑格式写出转换结果：每个 sheet 只写一次列定义，行以按列位置排列的值数组写出，
+ * 省去每个单元格重复的 colIndex / type / value 键。
+ * <pre>
+ * {"format":"compact","data":[{"sheet":"Sheet1",
+ *   "columns":[{"key":"A","type":"text"},{"key":"B","type":"number","types":{"text":"1"}}],
+ *   "merges":["A3:A5"],
+ *   "rows":[[1,"名称","数量"],[2,"项目1",1.5]]}],"filename":"...","md5":"..."}
+ * </pre>
+ * <ul>
+ *     <li>columns：basic 模式为从 A 到最后一个有数据的列，第 i 个即第 i 列；row-object 模式为表头中的列，name 为表头文本。
+ *     type 为该列最多的类型，其余类型在 types 中按行号范围列出，如 "1,5-7"；没有数据的列没有 type</li>
+ *     <li>merges：合并区域(A1 引用)，区域内有值的单元格都属于该合并区域，没有时省略。
+ *     按解析时报告的区域写出完整范围，选中的行列从区域中间开始时也不会偏移</li>
+ *     <li>rows：第一个元素为 rowIndex(row-object 模式为 index)，之后按 columns 的顺序排列单元格值，空单元格为 null，行尾的空单元格省略</li>
+ *     <li>row-object 模式没有 sheet 层级，columns 和 rows 直接位于顶层</li>
+ * </ul>
+ * chunkRows 大于 0 时输出 NDJSON：第一行为 {"format":"compact"}，每个 sheet 先输出一行列定义(含 rowCount)，
+ * 之后每行最多包含 chunkRows 行数据，最后一行为 filename / md5，调用方可以逐行解析，不必等待整个文档。
+ * <p>
+ * 列定义要在所有行之后才能确定，因此当前 sheet 的行数组先写入缓冲区，sheet 结束时先写列定义再写出缓冲的行。
+ * 所有行写完后需调用 {@link #finish(String, String)}。
+ */
+public class CompactJsonSink implements ExcelJsonSink {
+    public static final String FORMAT = "compact";
+
+    private final OutputStream out;
+    private final boolean rowObject;
+    private final int chunkRows;
+    private final JSONWriter writer = JSONWriter.ofUTF8();
+    private final JSONObject header = new JSONObject();
+
+    private boolean started;
+    private boolean firstSheet = true;
+    private long bytes;
+
+    // 当前 sheet 的状态
+    private String sheetName;
+    private SheetLayout layout;
+    private final ByteArrayOutputStream buffered = new ByteArrayOutputStream();
+    private final JSONWriter rows = JSONWriter.ofUTF8();
+    private int sheetRows;
+    private int rowIndex;
+
+    /**
+     * @param chunkRows 大于 0 时按 NDJSON 分块输出，否则输出单个 JSON 文档
+     */
+    public CompactJsonSink(OutputStream out, boolean rowObject, int chunkRows) {
+        this.out = out;
+        this.rowObject = rowObject;
+        this.chunkRows = chunkRows;
+    }
+
+    @Override
+    public void header(String key, String value) {
+        header.put(key, value);
+    }
+
+    @Override
+    public void startSheet(String sheetName) {
+        start();
+        this.sheetName = sheetName;
+        this.layout = new SheetLayout(null);
+        this.sheetRows = 0;
+    }
+
+    @Override
+    public void mergedRegion(int firstRow, int firstCol, int lastRow, int lastCol) {
+        layout.report(new CellRangeAddress(firstRow, lastRow, firstCol, lastCol));
+    }
+
+    @Override
+    public void startRow(int index) {
+        if (layout == null) {
+            // row-object 模式没有 sheet，表头在第一行之前已经输出
+            start();
+            layout = new SheetLayout(header);
+        }
+        rowIndex = index;
+        if (chunkRows > 0 && sheetRows % chunkRows == 0) {
+            if (sheetRows > 0) {
+                rows.writeRaw("]}\n");
+            }
+            rows.writeRaw('{');
+            if (sheetName != null) {
+                rows.writeRaw("\"sheet\":");
+                rows.writeString(sheetName);
+                rows.writeRaw(',');
+            }
+            rows.writeRaw("\"rows\":[");
+        } else if (sheetRows > 0) {
+            rows.writeRaw(',');
+        }
+    }
+
+    @Override
+    public void cell(String key, String type, Object value, int rowspan, int colspan) {
+        layout.add(rowIndex, key, type, value, rowspan, colspan);
+    }
+
+    @Override
+    public void endRow() {
+        layout.writeRow(rowIndex, rows);
+        sheetRows++;
+        try {
+            rows.flushTo(buffered);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void endSheet() {
+        if (layout == null) {
+            return;
+        }
+        if (chunkRows <= 0 && !firstSheet) {
+            writer.writeRaw(',');
+        }
+        firstSheet = false;
+        writeSheet();
+    }
+
+    /**
+     * 写出剩余的数据和 filename / md5 并闭合文档，返回写出的总字节数
+     */
+    public long finish(String filename, String md5) {
+        if (rowObject) {
+            if (layout == null) {
+                start();
+                layout = new SheetLayout(header);
+            }
+            writeSheet();
+        } else {
+            start();
+        }
+        if (chunkRows > 0) {
+            writer.writeRaw('{');
+            writeMeta(filename, md5, false);
+            writer.writeRaw("}\n");
+        } else {
+            if (!rowObject) {
+                writer.writeRaw(']');
+            }
+            writeMeta(filename, md5, true);
+            writer.writeRaw('}');
+        }
+        flush();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        writer.close();
+        rows.close();
+        return bytes;
+    }
+
+    private void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        if (chunkRows > 0) {
+            writer.writeRaw("{\"format\":\"" + FORMAT + "\"}\n");
+        } else {
+            writer.writeRaw("{\"format\":\"" + FORMAT + "\",");
+            if (!rowObject) {
+                writer.writeRaw("\"data\":[");
+            }
+        }
+        flush();
+    }
+
+    /**
+     * 写出当前 sheet 的列定义和缓冲的行
+     */
+    private void writeSheet() {
+        try {
+            if (chunkRows > 0 && sheetRows > 0) {
+                rows.writeRaw("]}\n");
+            }
+            rows.flushTo(buffered);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        JSONObject schema = layout.schema(sheetName);
+        if (chunkRows > 0) {
+            schema.put("rowCount", sheetRows);
+        }
+        if (chunkRows > 0 || !rowObject) {
+            writer.writeRaw('{');
+        }
+        writeFields(schema);
+        writer.writeRaw(chunkRows > 0 ? "}\n" : ",\"rows\":[");
+        flush();
+        try {
+            buffered.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        bytes += buffered.size();
+        buffered.reset();
+        if (chunkRows <= 0) {
+            writer.writeRaw(rowObject ? "]" : "]}");
+            flush();
+        }
+        layout = null;
+        sheetName = null;
+    }
+
+    private void writeFields(JSONObject fields) {
+        boolean first = true;
+        for (Map.Entry<String, Object> entry : fields.entrySet()) {
+            if (!first) {
+                writer.writeRaw(',');
+            }
+            first = false;
+            writer.writeString(entry.getKey());
+            writer.writeRaw(':');
+            writer.writeAny(entry.getValue());
+        }
+    }
+
+    private void writeMeta(String filename, String md5, boolean leadingComma) {
+        boolean comma = leadingComma;
+        if (filename != null) {
+            writer.writeRaw(comma ? ",\"filename\":" : "\"filename\":");
+            writer.writeString(filename);
+            comma = true;
+        }
+        if (md5 != null) {
+            writer.writeRaw(comma ? ",\"md5\":" : "\"md5\":");
+            writer.writeString(md5);
+        }
+    }
+
+    private void flush() {
+        try {
+            bytes += writer.flushTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 一个 sheet 的列位置、各列的类型分布和合并区域，逐行累积
+     */
+    private static final class SheetLayout {
+        private final JSONObject header;
+        // row-object 模式的列键 -> 位置：按表头中的列顺序，表头中没有的键追加在后面；basic 模式的位置即列序号
+        private final Map<String, Integer> positions = new HashMap<>();
+        private final List<String> keys = new ArrayList<>();
+        private final List<ColumnTypes> types = new ArrayList<>();
+        private final List<int[]> merges = new ArrayList<>();
+        // 解析时报告的合并区域，第一个带跨度的单元格到达时建立索引
+        private final List<CellRangeAddress> reported = new ArrayList<>();
+        private MergedRegionIndex regions;
+        // 列序号 -> 已记录的合并区域在该列覆盖到的最后一行，-1 表示没有
+        private int[] coveredTo = new int[0];
+        private Object[] values = new Object[16];
+        private int last = -1;
+
+        private SheetLayout(JSONObject header) {
+            this.header = header;
+            if (header != null) {
+                List<String> headerKeys = new ArrayList<>(header.keySet());
+                headerKeys.sort((a, b) -> Integer.compare(columnIndex(a), columnIndex(b)));
+                headerKeys.forEach(this::position);
+            }
+        }
+
+        /**
+         * 记录单元格的值、类型和合并区域
+         */
+        private void add(int rowIndex, String key, String type, Object value, int rowspan, int colspan) {
+            int position = position(key);
+            if (position >= values.length) {
+                values = Arrays.copyOf(values, Math.max(position + 1, values.length * 2));
+            }
+            values[position] = value;
+            last = Math.max(last, position);
+            types.get(position).add(type, rowIndex);
+
+            if (rowspan > 1 || colspan > 1) {
+                int col = columnIndex(key);
+                if (!covered(rowIndex, col)) {
+                    if (regions == null) {
+                        regions = MergedRegionIndex.build(null, reported);
+                    }
+                    // 没有报告区域时(如旧的行存储)以最先出现的单元格为起点
+                    CellRangeAddress region = regions.find(rowIndex - 1, col);
+                    int[] merge = region != null
+                            ? new int[]{region.getFirstRow() + 1, region.getFirstColumn(), region.getLastRow() + 1, region.getLastColumn()}
+                            : new int[]{rowIndex, col, rowIndex + rowspan - 1, col + colspan - 1};
+                    merges.add(merge);
+                    cover(merge[2], merge[1], merge[3]);
+                }
+            }
+        }
+
+        private void report(CellRangeAddress region) {
+            reported.add(region);
+        }
+
+        private void writeRow(int rowIndex, JSONWriter rows) {
+            rows.writeRaw('[');
+            rows.writeInt32(rowIndex);
+            while (last >= 0 && values[last] == null) {
+                last--;
+            }
+            for (int i = 0; i <= last; i++) {
+                rows.writeRaw(',');
+                Object value = values[i];
+                if (value == null) {
+                    rows.writeNull();
+                } else if (value instanceof String text) {
+                    rows.writeString(text);
+                } else if (value instanceof Double number) {
+                    rows.writeDouble(number);
+                } else if (value instanceof Boolean bool) {
+                    rows.writeBool(bool);
+                } else {
+                    rows.writeAny(value);
+                }
+                values[i] = null;
+            }
+            rows.writeRaw(']');
+            last = -1;
+        }
+
+        /**
+         * 合并区域内的每个单元格都带有整个区域的跨度，只在最先出现的单元格处记录一次。
+         * 行按顺序到达且合并区域互不重叠，某列覆盖到的行不小于当前行即在已记录的区域内
+         */
+        private boolean covered(int row, int col) {
+            return col < coveredTo.length && coveredTo[col] >= row;
+        }
+
+        private void cover(int lastRow, int firstCol, int lastCol) {
+            if (lastCol >= coveredTo.length) {
+                int length = coveredTo.length;
+                coveredTo = Arrays.copyOf(coveredTo, Math.max(lastCol + 1, length * 2));
+                Arrays.fill(coveredTo, length, coveredTo.length, -1);
+            }
+            Arrays.fill(coveredTo, firstCol, lastCol + 1, lastRow);
+        }
+
+        private int position(String key) {
+            if (header == null) {
+                int col = columnIndex(key);
+                // basic 模式补齐中间没有数据的列，使位置与列字母一致
+                while (keys.size() <= col) {
+                    keys.add(Excel2JsonUtil.getExcelColumnName(keys.size()));
+                    types.add(new ColumnTypes());
+                }
+                return col;
+            }
+            Integer position = positions.get(key);
+            if (position == null) {
+                position = keys.size();
+                positions.put(key, position);
+                keys.add(key);
+                types.add(new ColumnTypes());
+            }
+            return position;
+        }
+
+        private JSONObject schema(String sheetName) {
+            JSONObject schema = new JSONObject();
+            if (sheetName != null) {
+                schema.put("sheet", sheetName);
+            }
+            JSONArray columns = new JSONArray(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                JSONObject column = new JSONObject();
+                column.put("key", keys.get(i));
+                if (header != null && header.get(keys.get(i)) != null) {
+                    column.put("name", header.get(keys.get(i)));
+                }
+                types.get(i).describe(column);
+                columns.add(column);
+            }
+            schema.put("columns", columns);
+            if (!merges.isEmpty()) {
+                JSONArray ranges = new JSONArray(merges.size());
+                for (int[] merge : merges) {
+                    ranges.add(Excel2JsonUtil.getExcelColumnName(merge[1]) + merge[0] + ":"
+                            + Excel2JsonUtil.getExcelColumnName(merge[3]) + merge[2]);
+                }
+                schema.put("merges", ranges);
+            }
+            return schema;
+        }
+    }
+
+    /**
+     * 一列中每种类型的单元格数和所在的行号范围，行号连续的同类型单元格合并为一个范围
+     */
+    private static final class ColumnTypes {
+        private final Map<String, Integer> counts = new LinkedHashMap<>(4);
+        private final Map<String, StringBuilder> ranges = new HashMap<>(4);
+        private String runType;
+        private int runStart;
+        private int runEnd;
+
+        private void add(String type, int rowIndex) {
+            if (type == null) {
+                return;
+            }
+            if (runType != null && (!runType.equals(type) || rowIndex != runEnd + 1)) {
+                closeRun();
+            }
+            if (runType == null) {
+                runType = type;
+                runStart = rowIndex;
+            }
+            runEnd = rowIndex;
+        }
+
+        private void closeRun() {
+            counts.merge(runType, runEnd - runStart + 1, Integer::sum);
+            StringBuilder sb = ranges.computeIfAbsent(runType, t -> new StringBuilder());
+            if (!sb.isEmpty()) {
+                sb.append(',');
+            }
+            sb.append(runStart);
+            if (runEnd > runStart) {
+                sb.append('-').append(runEnd);
+            }
+            runType = null;
+        }
+
+        /**
+         * 写入 type(最多的类型)和 types(其余类型的行号范围)
+         */
+        private void describe(JSONObject column) {
+            if (runType != null) {
+                closeRun();
+            }
+            if (counts.isEmpty()) {
+                return;
+            }
+            String main = null;
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                if (main == null || entry.getValue() > counts.get(main)) {
+                    main = entry.getKey();
+                }
+            }
+            column.put("type", main);
+            if (counts.size() > 1) {
+                JSONObject others = new JSONObject();
+                for (String type : counts.keySet()) {
+                    if (!type.equals(main)) {
+                        others.put(type, ranges.get(type).toString());
+                    }
+                }
+                column.put("types", others);
+            }
+        }
+    }
+
+    /**
+     * 键(A、AB1 等)中字母部分对应的从 0 开始的列序号
+     */
+    private static int columnIndex(String key) {
+        int col = 0;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                break;
+            }
+            col = col * 26 + (c - 'A' + 1);
+        }
+        return col - 1;
+    }
+}
@@ -1,20 +1,29 @@
 package link.wo.mysheetmcp.util;
 
+import cn.hutool.crypto.digest.DigestUtil;
 import cn.hutool.log.Log;
 import cn.hutool.log.LogFactory;
-import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
-import link.wo.mysheetmcp.service.CosService;
+import link.wo.mysheetmcp.service.UploadScheduler;
+import link.wo.mysheetmcp.store.AttachmentIndex;
+import link.wo.mysheetmcp.store.DeferredAttachmentIndex;
+import link.wo.mysheetmcp.util.XlsxStreamingReader.AttachmentConsumer;
 import org.apache.poi.hssf.usermodel.*;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.openxml4j.opc.PackagePart;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
 import org.apache.poi.xssf.usermodel.*;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -22,163 +31,623 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.concurrent.*;
+import java.util.regex.Pattern;
 
 @Component
 public class Excel2JsonUtil {
     private static final Log log = LogFactory.get();
-    private final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmssSSS");
+    // Excel 最多 16384 列(A ~ XFD)，列名按需生成后缓存；并发写入时最多重复生成，String 不可变可直接共享
+    private static final String[] COLUMN_NAMES = new String[16384];
+    // 附件锚点坐标，如 B3
+    private static final Pattern CELL_COORD = Pattern.compile("[A-Z]+[0-9]+");
     @Value("${storage.file}")
     private String STORAGE_FILE_DIR;
+    // xlsx 文件大小超过该阈值(字节)时使用流式解析引擎
+    @Value("${excel.streaming-threshold:10485760}")
+    private long STREAMING_THRESHOLD;
 
+    // 并行解析线程池的线程数，0 表示 CPU 核数
+    @Value("${excel.parallel.threads:0}")
+    private int PARALLEL_THREADS;
+    // 单个请求同时解析的 sheet 数上限(流式引擎)，1 表示逐个解析
+    @Value("${excel.parallel.max-per-request:4}")
+    private int MAX_PARALLEL_PER_REQUEST;
+    // 单个请求并行解析时缓冲输出的估算字节数上限，超出后剩余 sheet 逐个直接写出
+    @Value("${excel.parallel.buffer-bytes:67108864}")
+    private long PARALLEL_BUFFER_BYTES;
+
+    @Autowired
+    private UploadScheduler uploadScheduler;
     @Autowired
-    private CosService cosService;
+    private AttachmentIndex attachmentIndex;
+    @Autowired
+    private DeferredAttachmentIndex deferredAttachmentIndex;
+
+    // 所有请求共享的解析线程池，各请求占用的线程数由 MAX_PARALLEL_PER_REQUEST 限制
+    private ForkJoinPool convertPool;
+
+    @PostConstruct
+    public void init() {
+        int threads = PARALLEL_THREADS > 0 ? PARALLEL_THREADS : Runtime.getRuntime().availableProcessors();
+        convertPool = new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("excel-convert-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        log.info("Excel convert pool started, threads:{}, max per request:{}", threads, MAX_PARALLEL_PER_REQUEST);
+    }
+
+    /**
+     * 共享的解析线程池，会话查询的并行扫描也在其中执行；初始化前为 null
+     */
+    public Executor getConvertPool() {
+        return convertPool;
+    }
+
+    public int getMaxParallelPerRequest() {
+        return MAX_PARALLEL_PER_REQUEST;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (convertPool != null) {
+            convertPool.shutdownNow();
+        }
+    }
 
     public JSONObject toJson(File excelFile, String type) throws IOException {
-        log.debug("调用 Excel2JsonUtil toJson()方法, type:{}", type);
-        
-        try (Workbook workbook = getWorkbook(excelFile)) {
-            Map<String, String> fileMap = extractFilesFromExcel(workbook, excelFile.getName());
+        JsonTreeSink sink = new JsonTreeSink(isRowObject(type));
+        if (!convert(excelFile, type, sink, AttachmentMode.PIPELINED)) {
+            sink = new JsonTreeSink(isRowObject(type));
+            convert(excelFile, type, sink, AttachmentMode.UPLOAD);
+        }
+        return sink.getJson();
+    }
+
+    public JSONObject toJson(File excelFile) throws IOException {
+        return toJson(excelFile, "basic");
+    }
+
+    /**
+     * 解析 Excel 并将结果推送到 sink，调用方决定输出形式（JSON 树、行存储等）
+     */
+    public void convert(File excelFile, String type, ExcelJsonSink sink) throws IOException {
+        convert(excelFile, type, sink, AttachmentMode.UPLOAD);
+    }
+
+    /**
+     * 解析 Excel 并将结果推送到 sink。
+     * <p>
+     * PIPELINED 模式下附件上传与单元格解析同时进行：附件单元格直接使用由内容摘要确定的 URL，
+     * 解析结束后再等待上传完成，总耗时接近 max(上传, 解析)。若有附件上传失败，输出中会包含不可用的 URL，
+     * 此时返回 false，调用方应丢弃本次输出并以 UPLOAD 模式重新转换(先等待上传，只替换上传成功的单元格)。
+     * LAZY 模式不上传，附件单元格的值为引用 attachment:{md5}。
+     *
+     * @return 输出中的附件 URL 是否全部可用
+     */
+    public boolean convert(File excelFile, String type, ExcelJsonSink sink, AttachmentMode mode) throws IOException {
+        return convert(excelFile, type, sink, mode, Selection.ALL);
+    }
+
+    /**
+     * 只转换 selection 选中的 sheet、列和行，未选中的单元格不解码；附件只提取可能出现在输出中的
+     */
+    public boolean convert(File excelFile, String type, ExcelJsonSink sink, AttachmentMode mode, Selection selection) throws IOException {
+        log.debug("调用 Excel2JsonUtil convert()方法, type:{}, attachments:{}", type, mode);
+
+        if (useStreaming(excelFile, type)) {
+            return convertStreaming(excelFile, type, sink, mode, selection);
+        }
+        try (Workbook workbook = getWorkbook(excelFile);
+             UploadScheduler.Batch batch = uploadScheduler.newBatch()) {
+            Map<String, String> fileMap = new HashMap<>();
+            extractFilesFromExcel(workbook, selection, isRowObject(type), attachmentConsumer(excelFile, mode, fileMap, batch));
+            if (mode != AttachmentMode.LAZY) {
+                fileMap = mode == AttachmentMode.PIPELINED ? batch.pending() : batch.await();
+            }
             log.info("fileMap:{}", fileMap);
 
-            if ("row-object".equalsIgnoreCase(type)) {
-                return toJsonRowObject(workbook, fileMap);
+            if (isRowObject(type)) {
+                toJsonRowObject(workbook, fileMap, sink, selection);
+            } else {
+                toJsonBasic(excelFile, workbook, fileMap, sink, selection);
             }
-            return toJsonBasic(workbook, fileMap);
+            return awaitUploads(batch, excelFile.getName(), mode);
         }
     }
 
-    public JSONObject toJson(File excelFile) throws IOException {
-        return toJson(excelFile, "basic");
+    public static boolean isRowObject(String type) {
+        return "row-object".equalsIgnoreCase(type);
     }
 
-    private JSONObject toJsonBasic(Workbook workbook, Map<String, String> fileMap) {
-        JSONObject json = new JSONObject();
-        JSONArray data = new JSONArray();
-        
-        for (int sheetIndex = 0; sheetIndex < workbook.getNumberOfSheets(); sheetIndex++) {
-            Sheet sheet = workbook.getSheetAt(sheetIndex);
-            JSONObject sheetObj = new JSONObject();
-            sheetObj.put("sheet", sheet.getSheetName());
-            JSONArray rows = new JSONArray();
-            for (Row row : sheet) {
-                JSONObject rowObj = new JSONObject();
-                int rowNum = row.getRowNum()+1;
-                rowObj.put("rowIndex", rowNum);
-                JSONArray columns = new JSONArray();
-                for (Cell cell : row) {
-                    JSONObject colObj = new JSONObject();
-                    String colName = getExcelColumnName(cell.getColumnIndex());
-
-                    colObj.put("colIndex", colName);
-                    if(!fileMap.isEmpty() && fileMap.containsKey(colName+rowNum)){
-                        // Use the COS URL directly
-                        colObj.put("type", "file");
-                        colObj.put("value", fileMap.get(colName+rowNum));
-                        log.info("cell:{}  replaced ->  url:{}" , colName+rowNum, fileMap.get(colName+rowNum));
-                    }else{
-                        setCellValue(colObj, cell);
-                    }
+    /**
+     * 大文件使用流式引擎；basic 模式可以按 sheet 并行时 xlsx 不论大小都使用流式引擎，各 sheet 独立读取
+     */
+    private boolean useStreaming(File excelFile, String type) {
+        if (!excelFile.getName().endsWith(".xlsx")) {
+            return false;
+        }
+        return excelFile.length() >= STREAMING_THRESHOLD || !isRowObject(type) && parallel();
+    }
 
-                    if (sheet.getMergedRegions() != null) {
-                        for (CellRangeAddress region : sheet.getMergedRegions()) {
-                            if (region.isInRange(cell.getRowIndex(), cell.getColumnIndex())) {
-                                if (region.getLastRow() - region.getFirstRow() + 1 > 1) {
-                                    colObj.put("rowspan", region.getLastRow() - region.getFirstRow() + 1);
-                                }
-                                if (region.getLastColumn() - region.getFirstColumn() + 1 > 1) {
-                                    colObj.put("colspan", region.getLastColumn() - region.getFirstColumn() + 1);
-                                }
-                                break;
-                            }
+    private boolean parallel() {
+        return convertPool != null && MAX_PARALLEL_PER_REQUEST > 1;
+    }
+
+    /**
+     * 大文件使用流式引擎，不构建完整的 XSSFWorkbook
+     */
+    private boolean convertStreaming(File excelFile, String type, ExcelJsonSink sink, AttachmentMode mode, Selection selection) throws IOException {
+        log.debug("使用流式引擎解析, file:{}, size:{}", excelFile.getName(), excelFile.length());
+        try (XlsxStreamingReader reader = new XlsxStreamingReader(excelFile);
+             UploadScheduler.Batch batch = uploadScheduler.newBatch()) {
+            Map<String, String> fileMap = new HashMap<>();
+            reader.forEachAttachment(attachmentConsumer(excelFile, mode, fileMap, batch), selection, isRowObject(type));
+            if (mode != AttachmentMode.LAZY) {
+                fileMap = mode == AttachmentMode.PIPELINED ? batch.pending() : batch.await();
+            }
+            log.info("fileMap:{}", fileMap);
+
+            if (isRowObject(type)) {
+                reader.toJsonRowObject(sink, fileMap, selection);
+            } else {
+                reader.toJsonBasic(sink, fileMap, convertPool, MAX_PARALLEL_PER_REQUEST, PARALLEL_BUFFER_BYTES, selection);
+            }
+            return awaitUploads(batch, excelFile.getName(), mode);
+        }
+    }
+
+    /**
+     * LAZY 模式只记录附件引用到 refs，其余模式提交上传
+     */
+    private AttachmentConsumer attachmentConsumer(File excelFile, AttachmentMode mode, Map<String, String> refs,
+                                                  UploadScheduler.Batch batch) {
+        return mode == AttachmentMode.LAZY
+                ? (coord, fileData) -> refs.put(coord, deferAttachment(excelFile, fileData))
+                : (coord, fileData) -> submitUploadTask(fileData, excelFile.getName(), coord, batch);
+    }
+
+    /**
+     * 提取附件的 sheet：basic 模式为选中的 sheet(未指定时全部，返回 -1)，row-object 模式为选中的 sheet(默认第一个)
+     */
+    static int attachmentSheet(Selection selection, boolean rowObject, List<String> sheetNames) {
+        return rowObject || !selection.allSheets() ? selection.sheetIndex(sheetNames, 0) : -1;
+    }
+
+    /**
+     * 只保留可能出现在输出中的附件：锚点所在的合并区域(不在合并区域中时为锚点单元格)与选中的行范围和列相交。
+     * row-object 模式的第一行是表头，只有合并区域延伸到数据行时才会被引用；where 条件要解析单元格后才能判断，不参与过滤
+     */
+    static AttachmentConsumer selectAttachments(AttachmentConsumer consumer, Selection selection, boolean rowObject,
+                                                Selection.Projection projection, MergedRegionIndex mergedIndex) {
+        // 输出的行范围(从 0 开始)
+        int firstRow = Math.max(rowObject ? 1 : 0, selection.getFirstRow() - 1);
+        int lastRow = selection.getLastRow() - 1;
+        return (coord, fileData) -> {
+            // 无法确定锚点("Unknown")的附件不会被任何单元格引用
+            if (!CELL_COORD.matcher(coord).matches()) {
+                return;
+            }
+            CellReference ref = new CellReference(coord);
+            CellRangeAddress region = mergedIndex.find(ref.getRow(), ref.getCol());
+            int top = region != null ? region.getFirstRow() : ref.getRow();
+            int bottom = region != null ? region.getLastRow() : ref.getRow();
+            if (bottom < firstRow || top > lastRow) {
+                return;
+            }
+            int left = region != null ? region.getFirstColumn() : ref.getCol();
+            int right = region != null ? region.getLastColumn() : ref.getCol();
+            for (int col = left; col <= right; col++) {
+                if (projection.includesColumn(col)) {
+                    consumer.accept(coord, fileData);
+                    return;
+                }
+            }
+        };
+    }
+
+    /**
+     * 等待本次转换的上传结束，PIPELINED 模式下有上传失败时返回 false
+     */
+    private boolean awaitUploads(UploadScheduler.Batch batch, String excelFileName, AttachmentMode mode) {
+        batch.await();
+        if (batch.getFailures() == 0) {
+            return true;
+        }
+        log.warn("{} attachment uploads failed for {}", batch.getFailures(), excelFileName);
+        return mode != AttachmentMode.PIPELINED;
+    }
+
+    /**
+     * 已上传过的附件直接使用 URL，否则只记录来源并返回引用
+     */
+    private String deferAttachment(File excelFile, byte[] fileData) {
+        String hash = DigestUtil.md5Hex(fileData);
+        String url = attachmentIndex.get(hash);
+        return url != null ? url : deferredAttachmentIndex.register(hash, excelFile);
+    }
+
+    /**
+     * 将 LAZY 模式的附件引用解析为 URL：已上传时直接返回，否则从来源文件中按摘要取出附件并上传。
+     * 找不到附件(包括来源文件已被磁盘缓存淘汰)时返回 null
+     */
+    public String resolveAttachment(String hash) throws IOException {
+        String url = attachmentIndex.get(hash);
+        if (url != null) {
+            return url;
+        }
+        File source = deferredAttachmentIndex.source(hash);
+        if (source == null || !source.exists()) {
+            log.warn("Source of attachment {} not found: {}", hash, source);
+            return null;
+        }
+        byte[] fileData;
+        try {
+            fileData = findAttachment(source, hash);
+        } catch (IOException e) {
+            if (source.exists()) {
+                throw e;
+            }
+            // 读取过程中来源文件被淘汰
+            log.warn("Source of attachment {} evicted: {}", hash, source);
+            return null;
+        }
+        if (fileData == null) {
+            log.warn("Attachment {} not found in {}", hash, source.getName());
+            return null;
+        }
+        String key = getAttachmentKey(fileData, hash);
+        try (UploadScheduler.Batch batch = uploadScheduler.newBatch()) {
+            return attachmentIndex.getOrUpload(hash, () -> batch.upload(key, fileData), batch.executor()).join();
+        } catch (CompletionException e) {
+            throw new RuntimeException("Failed to upload attachment " + hash, e.getCause());
+        }
+    }
+
+    /**
+     * 在 excel 文件中查找内容摘要为 hash 的附件。
+     * xlsx 的图片和嵌入对象都是独立的 part(xl/media、xl/embeddings)，直接读取这些 part 即可，不解析 sheet；
+     * xls 或未在这些 part 中找到时，按转换时相同的方式遍历工作簿中的附件
+     */
+    private byte[] findAttachment(File excelFile, String hash) throws IOException {
+        if (excelFile.getName().endsWith(".xlsx")) {
+            OPCPackage pkg;
+            try {
+                pkg = OPCPackage.open(excelFile, PackageAccess.READ);
+            } catch (InvalidFormatException e) {
+                throw new IOException("Failed to open xlsx package: " + excelFile.getName(), e);
+            }
+            try {
+                for (PackagePart part : pkg.getParts()) {
+                    String name = part.getPartName().getName();
+                    if (!name.startsWith("/xl/media/") && !name.startsWith("/xl/embeddings/")) {
+                        continue;
+                    }
+                    try (InputStream is = part.getInputStream()) {
+                        byte[] fileData = is.readAllBytes();
+                        if (hash.equals(DigestUtil.md5Hex(fileData))) {
+                            return fileData;
                         }
                     }
-                    columns.add(colObj);
                 }
-                rowObj.put("columns", columns);
-                rows.add(rowObj);
+            } catch (InvalidFormatException e) {
+                throw new IOException("Failed to read xlsx package: " + excelFile.getName(), e);
+            } finally {
+                // 只读方式打开，revert 关闭底层 zip 而不回写
+                pkg.revert();
+            }
+        }
+        byte[][] found = new byte[1][];
+        try (Workbook workbook = getWorkbook(excelFile)) {
+            extractFilesFromExcel(workbook, (coord, fileData) -> {
+                if (found[0] == null && hash.equals(DigestUtil.md5Hex(fileData))) {
+                    found[0] = fileData;
+                }
+            });
+        }
+        return found[0];
+    }
+
+    /**
+     * POI 的 Workbook 不能被多个线程同时读取：并行解析时每个线程使用自己打开的工作簿(数量不超过同时解析的 sheet 数)，
+     * 各 sheet 的输出按原顺序合并。可以并行的 xlsx 已经改用流式引擎，这里并行的是 xls
+     */
+    private void toJsonBasic(File excelFile, Workbook workbook, Map<String, String> fileMap, ExcelJsonSink sink,
+                             Selection selection) throws IOException {
+        int selectedSheet = selection.allSheets() ? -1 : selection.sheetIndex(sheetNames(workbook), 0);
+        List<Integer> sheets = new ArrayList<>();
+        for (int sheetIndex = 0; sheetIndex < workbook.getNumberOfSheets(); sheetIndex++) {
+            if (selectedSheet < 0 || sheetIndex == selectedSheet) {
+                sheets.add(sheetIndex);
+            }
+        }
+        if (!parallel() || sheets.size() <= 1) {
+            for (int sheetIndex : sheets) {
+                toJsonSheet(workbook.getSheetAt(sheetIndex), fileMap, selection, sink);
             }
-            sheetObj.put("rows", rows);
-            data.add(sheetObj);
+            return;
+        }
+        try (WorkbookPool workbooks = new WorkbookPool(excelFile, workbook)) {
+            ParallelConversion.run(sheets, MAX_PARALLEL_PER_REQUEST, PARALLEL_BUFFER_BYTES, convertPool, (sheetIndex, unitSink) -> {
+                Workbook own = workbooks.acquire();
+                try {
+                    toJsonSheet(own.getSheetAt(sheetIndex), fileMap, selection, unitSink);
+                } finally {
+                    workbooks.release(own);
+                }
+            }, sink);
         }
-        json.put("data", data);
-        return json;
     }
 
-    private JSONObject toJsonRowObject(Workbook workbook, Map<String, String> fileMap) {
-        JSONObject json = new JSONObject();
-        JSONObject header = new JSONObject();
-        JSONArray data = new JSONArray();
+    /**
+     * 同一文件的多个工作簿实例，每个实例同时只被一个线程使用；调用方已打开的实例最先使用，不够时再打开
+     */
+    private final class WorkbookPool implements Closeable {
+        private final File excelFile;
+        private final Workbook primary;
+        private final Deque<Workbook> idle = new ArrayDeque<>();
+        private boolean closed;
+
+        private WorkbookPool(File excelFile, Workbook primary) {
+            this.excelFile = excelFile;
+            this.primary = primary;
+            idle.push(primary);
+        }
+
+        private Workbook acquire() throws IOException {
+            synchronized (this) {
+                if (!idle.isEmpty()) {
+                    return idle.pop();
+                }
+            }
+            log.debug("Opening another workbook for parallel conversion: {}", excelFile.getName());
+            return getWorkbook(excelFile);
+        }
+
+        private void release(Workbook workbook) throws IOException {
+            synchronized (this) {
+                if (!closed) {
+                    idle.push(workbook);
+                    return;
+                }
+            }
+            // 出错后仍在解析的单元结束时关闭自己打开的实例
+            if (workbook != primary) {
+                workbook.close();
+            }
+        }
+
+        /**
+         * 关闭空闲的额外实例，调用方打开的实例由调用方关闭
+         */
+        @Override
+        public void close() throws IOException {
+            List<Workbook> opened;
+            synchronized (this) {
+                closed = true;
+                opened = new ArrayList<>(idle);
+                idle.clear();
+            }
+            for (Workbook workbook : opened) {
+                if (workbook != primary) {
+                    workbook.close();
+                }
+            }
+        }
+    }
 
+    private void toJsonSheet(Sheet sheet, Map<String, String> fileMap, Selection selection, ExcelJsonSink sink) {
+        Selection.Projection projection = selection.project(selection.needsHeaderNames() ? headerNames(sheet) : null);
+        List<CellRangeAddress> mergedRegions = sheet.getMergedRegions();
+        MergedRegionIndex mergedIndex = MergedRegionIndex.build(sheet.getSheetName(), mergedRegions);
+        CellFormats formats = new CellFormats();
+        sink.startSheet(sheet.getSheetName());
+        reportMergedRegions(mergedRegions, selection, sink);
+        for (Row row : sheet) {
+            // 只输出选中的行范围
+            if (row.getRowNum() + 1 < selection.getFirstRow()) {
+                continue;
+            }
+            if (row.getRowNum() + 1 > selection.getLastRow()) {
+                break;
+            }
+            if (projection.hasConditions() && !projection.matches(col -> cellValue(formats, row.getCell(col)))) {
+                continue;
+            }
+            int rowNum = row.getRowNum()+1;
+            sink.startRow(rowNum);
+            for (Cell cell : row) {
+                if (!projection.includesColumn(cell.getColumnIndex())) {
+                    continue;
+                }
+                String colName = getExcelColumnName(cell.getColumnIndex());
+
+                int rowspan = 1;
+                int colspan = 1;
+                CellRangeAddress region = mergedIndex.find(cell.getRowIndex(), cell.getColumnIndex());
+                if (region != null) {
+                    rowspan = region.getLastRow() - region.getFirstRow() + 1;
+                    colspan = region.getLastColumn() - region.getFirstColumn() + 1;
+                }
+
+                if(!fileMap.isEmpty() && fileMap.containsKey(colName+rowNum)){
+                    // Use the COS URL directly
+                    sink.cell(colName, "file", fileMap.get(colName+rowNum), rowspan, colspan);
+                    log.info("cell:{}  replaced ->  url:{}" , colName+rowNum, fileMap.get(colName+rowNum));
+                }else{
+                    setCellValue(formats, sink, colName, cell, rowspan, colspan);
+                }
+            }
+            sink.endRow();
+        }
+        sink.endSheet();
+        mergedIndex.logStats();
+    }
+
+    /**
+     * 报告与选中行范围相交的合并区域，选中行从合并区域中间开始时输出端据此得到区域的真实起点
+     */
+    static void reportMergedRegions(List<CellRangeAddress> regions, Selection selection, ExcelJsonSink sink) {
+        for (CellRangeAddress region : regions) {
+            if (region.getLastRow() + 1 >= selection.getFirstRow() && region.getFirstRow() + 1 <= selection.getLastRow()) {
+                sink.mergedRegion(region.getFirstRow(), region.getFirstColumn(), region.getLastRow(), region.getLastColumn());
+            }
+        }
+    }
+
+    private void toJsonRowObject(Workbook workbook, Map<String, String> fileMap, ExcelJsonSink sink, Selection selection) {
         if (workbook.getNumberOfSheets() > 0) {
-            Sheet sheet = workbook.getSheetAt(0);
-            int lastRowNum = sheet.getLastRowNum();
+            Sheet sheet = workbook.getSheetAt(selection.sheetIndex(sheetNames(workbook), 0));
+            int lastRowNum = Math.min(sheet.getLastRowNum(), selection.getLastRow() - 1);
+            MergedRegionIndex mergedIndex = MergedRegionIndex.build(sheet.getSheetName(), sheet.getMergedRegions());
+            Selection.Projection projection = selection.project(selection.needsHeaderNames() ? headerNames(sheet) : null);
+            CellFormats formats = new CellFormats();
 
             // Process Header (Row 0)
             Row headerRow = sheet.getRow(0);
             int maxColIx = 0;
+            // 表头列的键(A1、B1 ...)，每行复用
+            String[] keys = new String[0];
             if (headerRow != null) {
                 maxColIx = headerRow.getLastCellNum();
+                keys = new String[Math.max(0, maxColIx)];
                 for (int i = 0; i < maxColIx; i++) {
+                    keys[i] = getExcelColumnName(i) + "1";
+                    if (!projection.includesColumn(i)) {
+                        continue;
+                    }
                     Cell cell = headerRow.getCell(i);
-                    String colName = getExcelColumnName(i) + "1";
                     if (cell != null) {
-                        header.put(colName, cell.toString());
+                        sink.header(keys[i], cell.toString());
                     } else {
-                        header.put(colName, "");
+                        sink.header(keys[i], "");
                     }
                 }
             }
 
-            // Process Data (Rows 1 to lastRowNum)
-            for (int i = 1; i <= lastRowNum; i++) {
-                Row row = sheet.getRow(i);
-                JSONObject rowData = new JSONObject();
-                rowData.put("index", i);
+            // Process Data (Rows 1 to lastRowNum, 只处理选中的行范围)
+            for (int i = Math.max(1, selection.getFirstRow() - 1); i <= lastRowNum; i++) {
+                int rowIndex = i;
+                int headerCols = maxColIx;
+                if (projection.hasConditions()
+                        && !projection.matches(col -> col < headerCols ? cellValue(formats, sourceCell(sheet, mergedIndex, rowIndex, col)) : null)) {
+                    continue;
+                }
+                sink.startRow(i);
 
                 for (int j = 0; j < maxColIx; j++) {
-                    String key = getExcelColumnName(j) + "1";
-                    JSONObject cellObj = new JSONObject();
+                    if (!projection.includesColumn(j)) {
+                        continue;
+                    }
+                    String key = keys[j];
 
                     int targetRow = i;
                     int targetCol = j;
 
-                    if (sheet.getMergedRegions() != null) {
-                        for (CellRangeAddress region : sheet.getMergedRegions()) {
-                            if (region.isInRange(i, j)) {
-                                targetRow = region.getFirstRow();
-                                targetCol = region.getFirstColumn();
-                                break;
-                            }
-                        }
+                    CellRangeAddress region = mergedIndex.find(i, j);
+                    if (region != null) {
+                        targetRow = region.getFirstRow();
+                        targetCol = region.getFirstColumn();
                     }
 
                     Row srcRow = sheet.getRow(targetRow);
                     Cell srcCell = (srcRow != null) ? srcRow.getCell(targetCol) : null;
-                    String srcColName = getExcelColumnName(targetCol);
-                    String srcCoord = srcColName + (targetRow + 1);
+                    String srcCoord = fileMap.isEmpty() ? null : getExcelColumnName(targetCol) + (targetRow + 1);
 
-                    if (!fileMap.isEmpty() && fileMap.containsKey(srcCoord)) {
-                        cellObj.put("type", "file");
-                        cellObj.put("value", fileMap.get(srcCoord));
+                    if (srcCoord != null && fileMap.containsKey(srcCoord)) {
+                        sink.cell(key, "file", fileMap.get(srcCoord), 1, 1);
                     } else {
-                        setCellValue(cellObj, srcCell);
+                        setCellValue(formats, sink, key, srcCell, 1, 1);
                     }
-
-                    rowData.put(key, cellObj);
                 }
-                data.add(rowData);
+                sink.endRow();
+            }
+            mergedIndex.logStats();
+        }
+    }
+
+    /**
+     * row-object 模式中单元格的取值来源：合并区域取左上角单元格
+     */
+    private static Cell sourceCell(Sheet sheet, MergedRegionIndex mergedIndex, int row, int col) {
+        CellRangeAddress region = mergedIndex.find(row, col);
+        int targetRow = region != null ? region.getFirstRow() : row;
+        int targetCol = region != null ? region.getFirstColumn() : col;
+        Row srcRow = sheet.getRow(targetRow);
+        return srcRow != null ? srcRow.getCell(targetCol) : null;
+    }
+
+    private static List<String> sheetNames(Workbook workbook) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
+            names.add(workbook.getSheetName(i));
+        }
+        return names;
+    }
+
+    /**
+     * 第一行的表头文本 -> 列序号，用于按名称选择列
+     */
+    private static Map<String, Integer> headerNames(Sheet sheet) {
+        Map<String, Integer> names = new HashMap<>();
+        Row headerRow = sheet.getRow(0);
+        if (headerRow != null) {
+            for (Cell cell : headerRow) {
+                names.putIfAbsent(cell.toString(), cell.getColumnIndex());
             }
         }
-        json.put("header", header);
-        json.put("data", data);
-        return json;
+        return names;
+    }
+
+    /**
+     * 条件判断使用的单元格值，与输出中的值一致
+     */
+    private Object cellValue(CellFormats formats, Cell cell) {
+        if (cell == null) {
+            return null;
+        }
+        ValueCapture capture = new ValueCapture();
+        setCellValue(formats, capture, "", cell, 1, 1);
+        return capture.value;
+    }
+
+    /**
+     * 只保留单元格值的 sink，用于条件判断
+     */
+    private static final class ValueCapture implements ExcelJsonSink {
+        private Object value;
+
+        @Override
+        public void header(String key, String value) {
+        }
+
+        @Override
+        public void startSheet(String sheetName) {
+        }
+
+        @Override
+        public void startRow(int index) {
+        }
+
+        @Override
+        public void cell(String key, String type, Object value, int rowspan, int colspan) {
+            this.value = value;
+        }
+
+        @Override
+        public void endRow() {
+        }
+
+        @Override
+        public void endSheet() {
+        }
     }
 
     private Workbook getWorkbook(File file) throws IOException {
@@ -193,218 +662,222 @@ public class Excel2JsonUtil {
             }
         }
     }
-    private String getExcelColumnName(int col) {
-        StringBuilder columnName = new StringBuilder();
+
+    /**
+     * 列序号(从 0 开始) -> 列字母，Excel 范围内的列名生成一次后复用
+     */
+    static String getExcelColumnName(int col) {
+        if (col < 0 || col >= COLUMN_NAMES.length) {
+            return columnName(col);
+        }
+        String name = COLUMN_NAMES[col];
+        if (name == null) {
+            name = columnName(col);
+            COLUMN_NAMES[col] = name;
+        }
+        return name;
+    }
+
+    private static String columnName(int col) {
+        char[] chars = new char[7];
+        int start = chars.length;
         while (col >= 0) {
-            columnName.insert(0, (char)('A' + (col % 26)));
+            chars[--start] = (char) ('A' + (col % 26));
             col = (col / 26) - 1;
         }
-        return columnName.toString();
+        return new String(chars, start, chars.length - start);
     }
 
-    private void setCellValue(JSONObject colObj, Cell cell) {
+    private void setCellValue(CellFormats formats, ExcelJsonSink sink, String key, Cell cell, int rowspan, int colspan) {
         if (cell == null) {
-            colObj.put("type", "text");
-            colObj.put("value", "");
+            sink.cell(key, "text", "", rowspan, colspan);
             return;
         }
 
         switch (cell.getCellType()) {
-            case STRING -> {
-                colObj.put("type", "text");
-                colObj.put("value", cell.getStringCellValue());
-            }
+            case STRING -> sink.cell(key, "text", cell.getStringCellValue(), rowspan, colspan);
             case NUMERIC -> {
-                if (DateUtil.isCellDateFormatted(cell)) {
-                    colObj.put("type", "date");
-                    // 使用 DataFormatter 格式化日期，或者手动格式化
+                // 日期、货币按样式分类判断，结果按样式序号缓存
+                int kind = formats.kind(cell.getCellStyle());
+                double value = cell.getNumericCellValue();
+                if ((kind & CellFormats.DATE) != 0 && DateUtil.isValidExcelDate(value)) {
                     // 用户要求 yyyy-mm-dd
-                    java.util.Date date = cell.getDateCellValue();
-                    if (date != null) {
-                        java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd");
-                        colObj.put("value", sdf.format(date));
-                    } else {
-                        colObj.put("value", "");
-                    }
+                    sink.cell(key, "date", CellFormats.formatDate(cell.getLocalDateTimeCellValue()), rowspan, colspan);
+                } else if ((kind & CellFormats.CURRENCY) != 0) {
+                    sink.cell(key, "money", formats.money(cell), rowspan, colspan);
                 } else {
-                    // Check for currency format
-                    String formatString = cell.getCellStyle().getDataFormatString();
-                    if (formatString != null && (formatString.contains("￥") || formatString.contains("$") || formatString.contains("€") || formatString.contains("£"))) {
-                        colObj.put("type", "money");
-                        DataFormatter dataFormatter = new DataFormatter();
-                        colObj.put("value", dataFormatter.formatCellValue(cell));
-                    } else {
-                        colObj.put("type", "number");
-                        colObj.put("value", cell.getNumericCellValue());
-                    }
+                    sink.cell(key, "number", value, rowspan, colspan);
                 }
             }
-            case BOOLEAN -> {
-                colObj.put("type", "boolean");
-                colObj.put("value", cell.getBooleanCellValue());
-            }
+            case BOOLEAN -> sink.cell(key, "boolean", cell.getBooleanCellValue(), rowspan, colspan);
             case FORMULA -> {
                 // 公式比较复杂，可能是数字、字符串等
                 // 使用 CachedFormulaResultType
                 switch (cell.getCachedFormulaResultType()) {
-                    case STRING -> {
-                        colObj.put("type", "text");
-                        colObj.put("value", cell.getStringCellValue());
-                    }
-                    case NUMERIC -> {
-                         // 公式里的日期判断比较麻烦，简单处理为数字
-                         colObj.put("type", "number");
-                         colObj.put("value", cell.getNumericCellValue());
-                    }
-                    case BOOLEAN -> {
-                        colObj.put("type", "boolean");
-                        colObj.put("value", cell.getBooleanCellValue());
-                    }
-                    default -> {
-                        colObj.put("type", "text");
-                        colObj.put("value", "");
-                    }
+                    case STRING -> sink.cell(key, "text", cell.getStringCellValue(), rowspan, colspan);
+                    // 公式里的日期判断比较麻烦，简单处理为数字
+                    case NUMERIC -> sink.cell(key, "number", cell.getNumericCellValue(), rowspan, colspan);
+                    case BOOLEAN -> sink.cell(key, "boolean", cell.getBooleanCellValue(), rowspan, colspan);
+                    default -> sink.cell(key, "text", "", rowspan, colspan);
                 }
             }
-            default -> {
-                colObj.put("type", "text");
-                colObj.put("value", "");
-            }
+            default -> sink.cell(key, "text", "", rowspan, colspan);
         }
     }
 
-    private Map<String, String> extractFilesFromExcel(Workbook workbook, String originalFileName) {
-        Map<String, String> result = new ConcurrentHashMap<>();
-
-        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
-            List<CompletableFuture<Void>> futures = new ArrayList<>();
+    /**
+     * 遍历工作簿中的图片和嵌入对象，由 consumer 决定提交上传还是只记录引用
+     */
+    private void extractFilesFromExcel(Workbook workbook, AttachmentConsumer consumer) {
+        extractFilesFromExcel(workbook, Selection.ALL, false, consumer);
+    }
 
-            // 记录Excel文件类型信息
-            log.debug("Excel file type: {}", workbook.getClass().getName());
+    /**
+     * 只遍历转换时输出的 sheet，并跳过锚点不在选中行列内的附件
+     */
+    private void extractFilesFromExcel(Workbook workbook, Selection selection, boolean rowObject, AttachmentConsumer consumer) {
+        // 记录Excel文件类型信息
+        log.debug("Excel file type: {}", workbook.getClass().getName());
 
-            for (int sheetIndex = 0; sheetIndex < workbook.getNumberOfSheets(); sheetIndex++) {
-                Sheet sheet = workbook.getSheetAt(sheetIndex);
-                log.debug("Processing sheet: {}", sheet.getSheetName());
+        int selectedSheet = attachmentSheet(selection, rowObject, sheetNames(workbook));
+        for (int sheetIndex = 0; sheetIndex < workbook.getNumberOfSheets(); sheetIndex++) {
+            if (selectedSheet >= 0 && sheetIndex != selectedSheet) {
+                continue;
+            }
+            Sheet sheet = workbook.getSheetAt(sheetIndex);
+            log.debug("Processing sheet: {}", sheet.getSheetName());
+            AttachmentConsumer sheetConsumer = selection.isAll() && !rowObject ? consumer : selectAttachments(consumer, selection, rowObject,
+                    selection.project(selection.needsHeaderNames() ? headerNames(sheet) : null),
+                    MergedRegionIndex.build(sheet.getSheetName(), sheet.getMergedRegions()));
 
-                // 获取绘图对象 - 注意：对于XLS文件，应该使用HSSFSheet的getDrawingPatriarch方法
-                Drawing<?> drawing = null;
-                if (workbook instanceof HSSFWorkbook) {
-                    HSSFSheet hssfSheet = (HSSFSheet) sheet;
-                    // 对于XLS文件，如果没有绘图对象，getDrawingPatriarch会创建一个
-                    drawing = hssfSheet.getDrawingPatriarch();
-                    log.debug("Using HSSFSheet.getDrawingPatriarch() for XLS file");
-                } else {
-                    drawing = sheet.getDrawingPatriarch();
-                    log.debug("Using standard getDrawingPatriarch() for non-XLS file");
-                }
+            // 获取绘图对象 - 注意：对于XLS文件，应该使用HSSFSheet的getDrawingPatriarch方法
+            Drawing<?> drawing = null;
+            if (workbook instanceof HSSFWorkbook) {
+                HSSFSheet hssfSheet = (HSSFSheet) sheet;
+                // 对于XLS文件，如果没有绘图对象，getDrawingPatriarch会创建一个
+                drawing = hssfSheet.getDrawingPatriarch();
+                log.debug("Using HSSFSheet.getDrawingPatriarch() for XLS file");
+            } else {
+                drawing = sheet.getDrawingPatriarch();
+                log.debug("Using standard getDrawingPatriarch() for non-XLS file");
+            }
 
-                if (drawing == null) {
-                    log.debug("No drawing found in sheet: {}", sheet.getSheetName());
-                    continue;
-                }
+            if (drawing == null) {
+                log.debug("No drawing found in sheet: {}", sheet.getSheetName());
+                continue;
+            }
 
-                log.debug("Drawing type: {}", drawing.getClass().getName());
+            log.debug("Drawing type: {}", drawing.getClass().getName());
 
-                // 处理XLS格式
-                if (drawing instanceof HSSFPatriarch patriarch) {
-                    log.debug("Found HSSFPatriarch with {} children", patriarch.getChildren().size());
-                    for (HSSFShape shape : patriarch.getChildren()) {
-                        log.debug("Processing HSSFShape: {}", shape.getClass().getName());
-                        // 先检查是否为HSSFObjectData类型
-                        if (shape instanceof HSSFObjectData obj) {
-                            log.debug("Found HSSFObjectData object");
-                            try {
-                                byte[] fileData = obj.getObjectData();
-                                String coord = getShapeCoordinate(shape);
-                                submitUploadTask(fileData, originalFileName, coord, executor, futures, result);
-                            } catch (Exception e) {
-                                log.error("Error extracting HSSFObjectData: {}", e.getMessage(), e);
-                            }
+            // 处理XLS格式
+            if (drawing instanceof HSSFPatriarch patriarch) {
+                log.debug("Found HSSFPatriarch with {} children", patriarch.getChildren().size());
+                for (HSSFShape shape : patriarch.getChildren()) {
+                    log.debug("Processing HSSFShape: {}", shape.getClass().getName());
+                    // 先检查是否为HSSFObjectData类型
+                    if (shape instanceof HSSFObjectData obj) {
+                        log.debug("Found HSSFObjectData object");
+                        try {
+                            byte[] fileData = obj.getObjectData();
+                            String coord = getShapeCoordinate(shape);
+                            sheetConsumer.accept(coord, fileData);
+                        } catch (Exception e) {
+                            log.error("Error extracting HSSFObjectData: {}", e.getMessage(), e);
                         }
-                        // 处理HSSFPicture类型
-                        else if (shape instanceof HSSFPicture picture) {
-                            log.debug("Found HSSFPicture object");
-                            try {
-                                PictureData pictureData = picture.getPictureData();
-                                byte[] fileData = pictureData.getData();
-                                String coord = getShapeCoordinate(shape);
-                                submitUploadTask(fileData, originalFileName, coord, executor, futures, result);
-                            } catch (Exception e) {
-                                log.error("Error extracting HSSFPicture: {}", e.getMessage(), e);
-                            }
-                        }
-                        // 添加对其他类型的处理，确保不会因为类型不匹配而跳过后续逻辑
-                        else {
-                            log.debug("Skipping non-supported shape: {}", shape.getClass().getName());
+                    }
+                    // 处理HSSFPicture类型
+                    else if (shape instanceof HSSFPicture picture) {
+                        log.debug("Found HSSFPicture object");
+                        try {
+                            PictureData pictureData = picture.getPictureData();
+                            byte[] fileData = pictureData.getData();
+                            String coord = getShapeCoordinate(shape);
+                            sheetConsumer.accept(coord, fileData);
+                        } catch (Exception e) {
+                            log.error("Error extracting HSSFPicture: {}", e.getMessage(), e);
                         }
                     }
+                    // 添加对其他类型的处理，确保不会因为类型不匹配而跳过后续逻辑
+                    else {
+                        log.debug("Skipping non-supported shape: {}", shape.getClass().getName());
+                    }
                 }
-                // 处理XLSX格式
-                else if (drawing instanceof XSSFDrawing xssfDrawing) {
-                    for (XSSFShape shape : xssfDrawing.getShapes()) {
-                        if (shape instanceof XSSFObjectData obj) {
+            }
+            // 处理XLSX格式
+            else if (drawing instanceof XSSFDrawing xssfDrawing) {
+                for (XSSFShape shape : xssfDrawing.getShapes()) {
+                    if (shape instanceof XSSFObjectData obj) {
+                        try {
+                            // 安全地获取PackagePart对象
+                            PackagePart packagePart = null;
                             try {
-                                // 安全地获取PackagePart对象
-                                PackagePart packagePart = null;
-                                try {
-                                    // 尝试使用反射安全地调用getPackagePart方法
-                                    java.lang.reflect.Method getPackagePartMethod = obj.getClass().getMethod("getPackagePart");
-                                    packagePart = (PackagePart) getPackagePartMethod.invoke(obj);
-                                } catch (Exception e) {
-                                    // 如果反射调用失败，记录日志但不抛出异常
-                                    log.error("Reflection getPackagePart() call failed: {}", e.getMessage());
-                                }
+                                // 尝试使用反射安全地调用getPackagePart方法
+                                java.lang.reflect.Method getPackagePartMethod = obj.getClass().getMethod("getPackagePart");
+                                packagePart = (PackagePart) getPackagePartMethod.invoke(obj);
+                            } catch (Exception e) {
+                                // 如果反射调用失败，记录日志但不抛出异常
+                                log.error("Reflection getPackagePart() call failed: {}", e.getMessage());
+                            }
 
-                                if (packagePart != null) {
-                                    try (InputStream is = packagePart.getInputStream()) {
-                                        byte[] fileData = is.readAllBytes();
-                                        String coord = getShapeCoordinate(shape);
-                                        submitUploadTask(fileData, originalFileName, coord, executor, futures, result);
-                                    }
-                                } else {
-                                    log.debug("PackagePart is null or not available for XSSF object, trying fallback methods");
-                                    // 尝试备用方法
-                                    extractXSSFObjectDataFallback(obj, shape, originalFileName, result, executor, futures);
+                            if (packagePart != null) {
+                                try (InputStream is = packagePart.getInputStream()) {
+                                    byte[] fileData = is.readAllBytes();
+                                    String coord = getShapeCoordinate(shape);
+                                    sheetConsumer.accept(coord, fileData);
                                 }
-                            } catch (Exception e) {
-                                log.error("Error extracting XSSF embedded file: {}", e.getMessage());
+                            } else {
+                                log.debug("PackagePart is null or not available for XSSF object, trying fallback methods");
                                 // 尝试备用方法
-                                extractXSSFObjectDataFallback(obj, shape, originalFileName, result, executor, futures);
-                            }
-                        }// 处理HSSFPicture类型
-                        else if (shape instanceof XSSFPicture picture) {
-                            log.debug("Found HSSFPicture object");
-                            try {
-                                PictureData pictureData = picture.getPictureData();
-                                byte[] fileData = pictureData.getData();
-                                String coord = getShapeCoordinate(shape);
-                                submitUploadTask(fileData, originalFileName, coord, executor, futures, result);
-                            } catch (Exception e) {
-                                log.error("Error extracting HSSFPicture: {}", e.getMessage(), e);
+                                extractXSSFObjectDataFallback(obj, shape, sheetConsumer);
                             }
+                        } catch (Exception e) {
+                            log.error("Error extracting XSSF embedded file: {}", e.getMessage());
+                            // 尝试备用方法
+                            extractXSSFObjectDataFallback(obj, shape, sheetConsumer);
+                        }
+                    }// 处理HSSFPicture类型
+                    else if (shape instanceof XSSFPicture picture) {
+                        log.debug("Found HSSFPicture object");
+                        try {
+                            PictureData pictureData = picture.getPictureData();
+                            byte[] fileData = pictureData.getData();
+                            String coord = getShapeCoordinate(shape);
+                            sheetConsumer.accept(coord, fileData);
+                        } catch (Exception e) {
+                            log.error("Error extracting HSSFPicture: {}", e.getMessage(), e);
                         }
                     }
                 }
             }
-
-            if (!futures.isEmpty()) {
-                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-            }
         }
-        return result;
     }
 
-    private void submitUploadTask(byte[] fileData, String originalFileName, String coord, ExecutorService executor, List<CompletableFuture<Void>> futures, Map<String, String> result) {
-        CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-            try {
-                String fileName = saveEmbeddedFile(fileData, originalFileName);
-                result.put(coord, fileName);
-                log.debug("Extracted embedded file at {} saved as {}", coord, fileName);
-            } catch (IOException e) {
-                log.error("Error uploading file for coord {}", coord, e);
+    private void submitUploadTask(byte[] fileData, String originalFileName, String coord, UploadScheduler.Batch batch) {
+        // 按内容摘要去重：相同内容只上传一次，之后直接复用索引中的 URL
+        String hash = DigestUtil.md5Hex(fileData);
+        String key = getAttachmentKey(fileData, hash);
+        String url = attachmentIndex.get(hash);
+        if (url == null) {
+            if (!batch.reserve(key, fileData.length)) {
+                log.warn("Skip embedded file at {} of {}: upload budget exceeded", coord, originalFileName);
+                return;
             }
-        }, executor);
-        futures.add(future);
+            url = batch.url(key);
+        }
+        batch.pending().put(coord, url);
+
+        CompletableFuture<Void> future = attachmentIndex.getOrUpload(hash, () -> batch.upload(key, fileData), batch.executor())
+                .handle((uploaded, e) -> {
+                    if (e != null) {
+                        batch.failed();
+                        log.error("Error uploading file for coord {} of {}", coord, originalFileName, e);
+                    } else {
+                        batch.result().put(coord, uploaded);
+                        log.debug("Extracted embedded file at {} saved as {}", coord, uploaded);
+                    }
+                    return null;
+                });
+        batch.track(future);
     }
 
     private String getShapeCoordinate(Object shape) {
@@ -427,19 +900,11 @@ public class Excel2JsonUtil {
         return "Unknown";
     }
 
-    private String saveEmbeddedFile(byte[] fileData, String originalFileName) throws IOException {
-        String timestamp = LocalDateTime.now().format(TIMESTAMP_FORMAT);
-        String baseName = originalFileName.replaceAll("\\.[^.]+$", "");
-        String extension = getFileExtension(fileData);
-        String fileName = timestamp + "_" + baseName + extension;
-
-        // Upload to COS
-        String key = "attachment/" + fileName;
-        try (InputStream is = new ByteArrayInputStream(fileData)) {
-            com.qcloud.cos.model.ObjectMetadata metadata = new com.qcloud.cos.model.ObjectMetadata();
-            metadata.setContentLength(fileData.length);
-            return cosService.uploadFile(key, is, metadata);
-        }
+    /**
+     * 附件的存储 key 由内容摘要决定
+     */
+    private String getAttachmentKey(byte[] fileData, String hash) {
+        return "attachment/" + hash + getFileExtension(fileData);
     }
 
     private String getFileExtension(byte[] fileData) {
@@ -491,14 +956,14 @@ public class Excel2JsonUtil {
         return ".bin";
     }
 
-    private void extractXSSFObjectDataFallback(XSSFObjectData obj, XSSFShape shape, String excelFileName, Map<String, String> result, ExecutorService executor, List<CompletableFuture<Void>> futures) {
+    private void extractXSSFObjectDataFallback(XSSFObjectData obj, XSSFShape shape, AttachmentConsumer consumer) {
         log.debug("Starting fallback extraction methods for XSSF object");
         try {
             // 尝试方法1：直接获取对象数据 - 最可靠的方法
             byte[] fileData = obj.getObjectData();
             if (fileData != null && fileData.length > 0) {
                 String coord = getShapeCoordinate(shape);
-                submitUploadTask(fileData, excelFileName, coord, executor, futures, result);
+                consumer.accept(coord, fileData);
                 log.debug("Extracted XSSF embedded file (fallback-1) at {} saved", coord);
                 return;
             } else {
@@ -525,7 +990,7 @@ public class Excel2JsonUtil {
 
                     if (fileData != null && fileData.length > 0) {
                         String coord = getShapeCoordinate(shape);
-                        submitUploadTask(fileData, excelFileName, coord, executor, futures, result);
+                        consumer.accept(coord, fileData);
                         log.debug("Extracted XSSF embedded file (fallback-2) at {} saved", coord);
                     }
                 }
@@ -552,7 +1017,7 @@ public class Excel2JsonUtil {
 
                     if (fileData != null && fileData.length > 0) {
                         String coord = getShapeCoordinate(shape);
-                        submitUploadTask(fileData, excelFileName, coord, executor, futures, result);
+                        consumer.accept(coord, fileData);
                         log.debug("Extracted XSSF embedded file (fallback-3) at {} saved", coord);
                     }
                 }
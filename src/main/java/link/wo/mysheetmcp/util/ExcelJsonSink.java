@@ -0,0 +1,51 @@
+package link.wo.mysheetmcp.util;
+
+/**
+ * 转换结果输出接口。
+ * <p>
+ * 解析引擎按 sheet -> 行 -> 单元格的顺序推送数据，由实现决定是组装成 JSON 树还是直接写出，
+ * 这样解析过程本身只需要保留当前行的数据。
+ * <ul>
+ *     <li>basic 模式：startSheet / mergedRegion(...) / startRow(rowIndex) / cell(colIndex...) / endRow / endSheet</li>
+ *     <li>row-object 模式：header(...) / startRow(index) / cell(key...) / endRow</li>
+ * </ul>
+ */
+public interface ExcelJsonSink {
+
+    /**
+     * row-object 模式的表头单元格
+     */
+    void header(String key, String value);
+
+    /**
+     * basic 模式开始一个 sheet
+     */
+    void startSheet(String sheetName);
+
+    /**
+     * basic 模式在 startSheet 之后报告与选中行范围相交的合并区域(行列均从 0 开始)。
+     * 单元格只带跨度，选择从合并区域中间开始时需要据此得到区域的真实起点，不需要的实现可忽略
+     */
+    default void mergedRegion(int firstRow, int firstCol, int lastRow, int lastCol) {
+    }
+
+    /**
+     * 开始一行，basic 模式为 rowIndex(从 1 开始)，row-object 模式为 index
+     */
+    void startRow(int index);
+
+    /**
+     * 输出一个单元格
+     *
+     * @param key     basic 模式为列名(如 A)，row-object 模式为表头键(如 A1)
+     * @param type    text / number / money / date / boolean / file
+     * @param value   单元格值
+     * @param rowspan 合并行数，小于等于 1 时不输出
+     * @param colspan 合并列数，小于等于 1 时不输出
+     */
+    void cell(String key, String type, Object value, int rowspan, int colspan);
+
+    void endRow();
+
+    void endSheet();
+}
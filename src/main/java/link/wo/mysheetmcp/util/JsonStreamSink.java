@@ -0,0 +1,173 @@
+package link.wo.mysheetmcp.util;
+
+import com.alibaba.fastjson2.JSONObject;
+import com.alibaba.fastjson2.JSONWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 将转换结果直接写成 excel2Json 的 JSON 文本，不构建中间的 JSONObject 树。
+ * <p>
+ * 每行结束时编码并刷出到 OutputStream，内存中只保留当前行；
+ * 输出与 JsonTreeSink 生成的结构再 toJSONString 的结果一致（null 值同样省略）。
+ * 所有行写完后需调用 {@link #finish(String, String)} 写入元数据并闭合文档。
+ */
+public class JsonStreamSink implements ExcelJsonSink {
+    private static final byte[] HEADER_START = "\"header\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DATA_START = "\"data\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SHEET_START = "{\"sheet\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ROWS_START = ",\"rows\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SHEET_END = "]}".getBytes(StandardCharsets.UTF_8);
+
+    private final OutputStream out;
+    private final boolean rowObject;
+    private final RowBuffer row;
+    private final JSONWriter writer = JSONWriter.ofUTF8();
+    private final JSONObject header = new JSONObject();
+
+    private boolean dataStarted;
+    private boolean firstSheet = true;
+    private boolean firstRow = true;
+    private long bytes;
+
+    public JsonStreamSink(OutputStream out, boolean rowObject) {
+        this.out = out;
+        this.rowObject = rowObject;
+        this.row = new RowBuffer(rowObject);
+    }
+
+    @Override
+    public void header(String key, String value) {
+        header.put(key, value);
+    }
+
+    @Override
+    public void startSheet(String sheetName) {
+        startData();
+        if (!firstSheet) {
+            write(',');
+        }
+        firstSheet = false;
+        write(SHEET_START);
+        writer.writeString(sheetName);
+        flush();
+        write(ROWS_START);
+        firstRow = true;
+    }
+
+    @Override
+    public void startRow(int index) {
+        row.start(index);
+    }
+
+    @Override
+    public void cell(String key, String type, Object value, int rowspan, int colspan) {
+        row.add(key, type, value, rowspan, colspan);
+    }
+
+    @Override
+    public void endRow() {
+        beginRow();
+        row.writeJson(writer);
+        flush();
+    }
+
+    /**
+     * 写出一个已经组装好的行对象，用于从缓存回放
+     */
+    public void row(JSONObject rowObj) {
+        beginRow();
+        writer.write(rowObj);
+        flush();
+    }
+
+    @Override
+    public void endSheet() {
+        write(SHEET_END);
+    }
+
+    /**
+     * 闭合 data 数组并写入 filename / md5，返回写出的总字节数
+     */
+    public long finish(String filename, String md5) {
+        startData();
+        write(']');
+        if (filename != null) {
+            writeField("filename", filename);
+        }
+        if (md5 != null) {
+            writeField("md5", md5);
+        }
+        write('}');
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        writer.close();
+        return bytes;
+    }
+
+    /**
+     * row-object 的表头在第一行之前写出，basic 模式直接开始 data 数组
+     */
+    private void startData() {
+        if (dataStarted) {
+            return;
+        }
+        dataStarted = true;
+        write('{');
+        if (rowObject) {
+            write(HEADER_START);
+            writer.write(header);
+            flush();
+            write(',');
+        }
+        write(DATA_START);
+    }
+
+    private void beginRow() {
+        startData();
+        if (!firstRow) {
+            write(',');
+        }
+        firstRow = false;
+    }
+
+    private void writeField(String name, String value) {
+        write(',');
+        writer.writeString(name);
+        writer.writeRaw(':');
+        writer.writeString(value);
+        flush();
+    }
+
+    private void flush() {
+        try {
+            bytes += writer.flushTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(int b) {
+        try {
+            out.write(b);
+            bytes++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(byte[] b) {
+        try {
+            out.write(b);
+            bytes += b.length;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
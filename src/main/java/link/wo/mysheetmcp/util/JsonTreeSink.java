@@ -0,0 +1,132 @@
+package link.wo.mysheetmcp.util;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+
+/**
+ * 将推送的数据组装成与 toJsonBasic / toJsonRowObject 相同结构的 JSONObject
+ */
+public class JsonTreeSink implements ExcelJsonSink {
+    private final boolean rowObject;
+    private final JSONObject json = new JSONObject();
+    private final JSONObject header = new JSONObject();
+    private final JSONArray data = new JSONArray();
+
+    private JSONArray rows;
+    private JSONObject rowObj;
+    private JSONArray columns;
+
+    public JsonTreeSink(boolean rowObject) {
+        this.rowObject = rowObject;
+    }
+
+    @Override
+    public void header(String key, String value) {
+        header.put(key, value);
+    }
+
+    @Override
+    public void startSheet(String sheetName) {
+        JSONObject sheetObj = new JSONObject();
+        sheetObj.put("sheet", sheetName);
+        rows = new JSONArray();
+        sheetObj.put("rows", rows);
+        data.add(sheetObj);
+    }
+
+    @Override
+    public void startRow(int index) {
+        rowObj = new JSONObject();
+        if (rowObject) {
+            rowObj.put("index", index);
+        } else {
+            rowObj.put("rowIndex", index);
+            columns = new JSONArray();
+        }
+    }
+
+    @Override
+    public void cell(String key, String type, Object value, int rowspan, int colspan) {
+        JSONObject colObj = new JSONObject();
+        if (rowObject) {
+            colObj.put("type", type);
+            colObj.put("value", value);
+            rowObj.put(key, colObj);
+            return;
+        }
+        colObj.put("colIndex", key);
+        colObj.put("type", type);
+        colObj.put("value", value);
+        if (rowspan > 1) {
+            colObj.put("rowspan", rowspan);
+        }
+        if (colspan > 1) {
+            colObj.put("colspan", colspan);
+        }
+        columns.add(colObj);
+    }
+
+    @Override
+    public void endRow() {
+        if (rowObject) {
+            data.add(rowObj);
+        } else {
+            rowObj.put("columns", columns);
+            rows.add(rowObj);
+        }
+    }
+
+    @Override
+    public void endSheet() {
+    }
+
+    public JSONObject getJson() {
+        if (rowObject) {
+            json.put("header", header);
+        }
+        json.put("data", data);
+        return json;
+    }
+
+    /**
+     * 将已生成的 JSON 结构重新推送给 sink，用于把旧的 .json 缓存迁移到新的存储格式
+     */
+    public static void replay(JSONObject json, boolean rowObject, ExcelJsonSink sink) {
+        JSONArray data = json.getJSONArray("data");
+        if (rowObject) {
+            JSONObject header = json.getJSONObject("header");
+            if (header != null) {
+                header.forEach((key, value) -> sink.header(key, value == null ? null : value.toString()));
+            }
+            for (int i = 0; data != null && i < data.size(); i++) {
+                JSONObject row = data.getJSONObject(i);
+                sink.startRow(row.getIntValue("index"));
+                for (String key : row.keySet()) {
+                    if (!"index".equals(key)) {
+                        JSONObject colObj = row.getJSONObject(key);
+                        sink.cell(key, colObj.getString("type"), colObj.get("value"), 1, 1);
+                    }
+                }
+                sink.endRow();
+            }
+            return;
+        }
+        for (int i = 0; data != null && i < data.size(); i++) {
+            JSONObject sheetObj = data.getJSONObject(i);
+            sink.startSheet(sheetObj.getString("sheet"));
+            JSONArray rows = sheetObj.getJSONArray("rows");
+            for (int r = 0; rows != null && r < rows.size(); r++) {
+                JSONObject row = rows.getJSONObject(r);
+                sink.startRow(row.getIntValue("rowIndex"));
+                JSONArray columns = row.getJSONArray("columns");
+                for (int c = 0; columns != null && c < columns.size(); c++) {
+                    JSONObject colObj = columns.getJSONObject(c);
+                    sink.cell(colObj.getString("colIndex"), colObj.getString("type"), colObj.get("value"),
+                            colObj.getIntValue("rowspan", 1), colObj.getIntValue("colspan", 1));
+                }
+                sink.endRow();
+            }
+            sink.endSheet();
+        }
+    }
+}
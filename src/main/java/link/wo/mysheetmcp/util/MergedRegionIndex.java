@@ -0,0 +1,135 @@
+package link.wo.mysheetmcp.util;
+
+import cn.hutool.log.Log;
+import cn.hutool.log.LogFactory;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单个 sheet 的合并区域索引。
+ * <p>
+ * 合并区域互不重叠，因此同一列上覆盖的区域按起始行排序后也互不重叠。
+ * 按列分桶后对起始行二分查找，单元格到区域的解析为 O(log k)（k 为该列上的区域数），
+ * 替代每个单元格都复制并线性扫描 sheet.getMergedRegions() 的做法。
+ * 索引内存与区域宽度之和成正比，合并区域通常是窄而高的，比按行分桶更省内存。
+ */
+public class MergedRegionIndex {
+    private static final Log log = LogFactory.get();
+    private static final CellRangeAddress[] NONE = new CellRangeAddress[0];
+
+    private final String sheetName;
+    private final int regionCount;
+    // 列 -> 覆盖该列的区域，按 firstRow 升序
+    private final CellRangeAddress[][] byColumn;
+    // firstRow -> 从该行开始且跨多行的区域
+    private final Map<Integer, List<CellRangeAddress>> byFirstRow;
+
+    private long lookups;
+    private long hits;
+
+    private MergedRegionIndex(String sheetName, int regionCount, CellRangeAddress[][] byColumn,
+                              Map<Integer, List<CellRangeAddress>> byFirstRow) {
+        this.sheetName = sheetName;
+        this.regionCount = regionCount;
+        this.byColumn = byColumn;
+        this.byFirstRow = byFirstRow;
+    }
+
+    public static MergedRegionIndex build(String sheetName, List<CellRangeAddress> regions) {
+        long start = System.nanoTime();
+        if (regions == null || regions.isEmpty()) {
+            return new MergedRegionIndex(sheetName, 0, new CellRangeAddress[0][], Collections.emptyMap());
+        }
+
+        int maxCol = 0;
+        for (CellRangeAddress region : regions) {
+            maxCol = Math.max(maxCol, region.getLastColumn());
+        }
+        int[] counts = new int[maxCol + 1];
+        for (CellRangeAddress region : regions) {
+            for (int c = region.getFirstColumn(); c <= region.getLastColumn(); c++) {
+                counts[c]++;
+            }
+        }
+        CellRangeAddress[][] byColumn = new CellRangeAddress[maxCol + 1][];
+        for (int c = 0; c <= maxCol; c++) {
+            byColumn[c] = counts[c] == 0 ? NONE : new CellRangeAddress[counts[c]];
+            counts[c] = 0;
+        }
+        Map<Integer, List<CellRangeAddress>> byFirstRow = new HashMap<>();
+        for (CellRangeAddress region : regions) {
+            for (int c = region.getFirstColumn(); c <= region.getLastColumn(); c++) {
+                byColumn[c][counts[c]++] = region;
+            }
+            if (region.getLastRow() > region.getFirstRow()) {
+                byFirstRow.computeIfAbsent(region.getFirstRow(), k -> new ArrayList<>()).add(region);
+            }
+        }
+        Comparator<CellRangeAddress> byRow = Comparator.comparingInt(CellRangeAddress::getFirstRow);
+        for (CellRangeAddress[] column : byColumn) {
+            if (column.length > 1) {
+                Arrays.sort(column, byRow);
+            }
+        }
+
+        MergedRegionIndex index = new MergedRegionIndex(sheetName, regions.size(), byColumn, byFirstRow);
+        log.debug("Merged region index built for sheet {}: regions:{}, columns:{}, cost:{}us", sheetName,
+                regions.size(), byColumn.length, (System.nanoTime() - start) / 1000);
+        return index;
+    }
+
+    /**
+     * 查找包含该单元格的合并区域，不存在时返回 null
+     */
+    public CellRangeAddress find(int row, int col) {
+        if (regionCount == 0) {
+            return null;
+        }
+        lookups++;
+        if (col >= byColumn.length) {
+            return null;
+        }
+        CellRangeAddress[] column = byColumn[col];
+        int low = 0;
+        int high = column.length - 1;
+        // 找到 firstRow <= row 的最后一个区域
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (column[mid].getFirstRow() <= row) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (high >= 0 && column[high].getLastRow() >= row) {
+            hits++;
+            return column[high];
+        }
+        return null;
+    }
+
+    /**
+     * 从指定行开始且跨多行的合并区域
+     */
+    public List<CellRangeAddress> startingAt(int row) {
+        List<CellRangeAddress> regions = byFirstRow.get(row);
+        return regions != null ? regions : Collections.emptyList();
+    }
+
+    public boolean isEmpty() {
+        return regionCount == 0;
+    }
+
+    public void logStats() {
+        if (regionCount > 0) {
+            log.debug("Merged region lookups for sheet {}: regions:{}, lookups:{}, hits:{}", sheetName, regionCount, lookups, hits);
+        }
+    }
+}
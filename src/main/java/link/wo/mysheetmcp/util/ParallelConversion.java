@@ -0,0 +1,199 @@
+package link.wo.mysheetmcp.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按顺序合并的并行解析：各个单元(流式引擎中的 sheet)在共享线程池中解析到各自的 {@link BufferedSink}，
+ * 调用线程按单元顺序依次回放到目标 sink。
+ * <p>
+ * 同一请求同时在解析或等待回放的单元数不超过 parallelism，一个大文件最多占用这么多个线程，
+ * 不会占满整个线程池。缓冲的输出合计不超过 bufferBytes(按 {@link BufferedSink#bytes()} 估算)：
+ * 超出时该单元丢弃已缓冲的输出并中止，之后不再提交新的并行单元，
+ * 轮到它时由调用线程重新解析并直接写入目标 sink，剩余单元也逐个直接写入，内存占用不随 sheet 大小增长。
+ * <p>
+ * 任一单元失败后设置共享的取消标志，正在解析的单元在开始下一行时检查该标志并停止，不再继续占用线程。
+ */
+public final class ParallelConversion {
+
+    /**
+     * 解析一个单元，输出写入给定的 sink
+     */
+    @FunctionalInterface
+    public interface UnitConverter<T> {
+        void convert(T unit, ExcelJsonSink sink) throws Exception;
+    }
+
+    private ParallelConversion() {
+    }
+
+    public static <T> void run(List<T> units, int parallelism, long bufferBytes, Executor pool, UnitConverter<T> converter,
+                               ExcelJsonSink sink) {
+        if (pool == null || parallelism <= 1 || units.size() <= 1) {
+            for (T unit : units) {
+                convert(converter, unit, sink);
+            }
+            return;
+        }
+
+        Shared shared = new Shared(bufferBytes);
+        Deque<Pending<T>> window = new ArrayDeque<>();
+        Iterator<T> it = units.iterator();
+        try {
+            while (it.hasNext() || !window.isEmpty()) {
+                while (it.hasNext() && window.size() < parallelism && !shared.exceeded) {
+                    T unit = it.next();
+                    UnitBuffer buffer = new UnitBuffer(shared);
+                    window.add(new Pending<>(unit, buffer, CompletableFuture.runAsync(() -> convert(converter, unit, buffer), pool)));
+                }
+                Pending<T> head = window.poll();
+                if (head == null) {
+                    convert(converter, it.next(), sink);
+                } else if (join(head)) {
+                    head.buffer.replay(sink);
+                } else {
+                    convert(converter, head.unit, sink);
+                }
+            }
+        } finally {
+            // 出错时不再回放：尚未开始的单元直接取消，正在解析的单元在下一行停止
+            shared.cancelled = true;
+            window.forEach(pending -> pending.future.cancel(false));
+        }
+    }
+
+    /**
+     * 一个请求中所有单元共享的缓冲预算和取消标志
+     */
+    private static final class Shared {
+        private final long limit;
+        private final AtomicLong used = new AtomicLong();
+        private volatile boolean exceeded;
+        private volatile boolean cancelled;
+
+        private Shared(long limit) {
+            this.limit = limit;
+        }
+    }
+
+    private record Pending<T>(T unit, UnitBuffer buffer, CompletableFuture<Void> future) {
+    }
+
+    /**
+     * 单元的输出缓冲，每行开始时检查取消标志，每行结束时把新增的估算大小计入预算
+     */
+    private static final class UnitBuffer implements ExcelJsonSink {
+        private final Shared shared;
+        private BufferedSink buffer = new BufferedSink();
+        private long charged;
+        private volatile boolean overflowed;
+
+        private UnitBuffer(Shared shared) {
+            this.shared = shared;
+        }
+
+        @Override
+        public void header(String key, String value) {
+            buffer.header(key, value);
+        }
+
+        @Override
+        public void startSheet(String sheetName) {
+            buffer.startSheet(sheetName);
+        }
+
+        @Override
+        public void mergedRegion(int firstRow, int firstCol, int lastRow, int lastCol) {
+            buffer.mergedRegion(firstRow, firstCol, lastRow, lastCol);
+        }
+
+        @Override
+        public void startRow(int index) {
+            if (shared.cancelled) {
+                throw new CancellationException("Parallel conversion cancelled");
+            }
+            buffer.startRow(index);
+        }
+
+        @Override
+        public void cell(String key, String type, Object value, int rowspan, int colspan) {
+            buffer.cell(key, type, value, rowspan, colspan);
+        }
+
+        @Override
+        public void endRow() {
+            buffer.endRow();
+            charge();
+        }
+
+        @Override
+        public void endSheet() {
+            buffer.endSheet();
+            charge();
+        }
+
+        private void charge() {
+            long bytes = buffer.bytes();
+            long used = shared.used.addAndGet(bytes - charged);
+            charged = bytes;
+            if (used > shared.limit) {
+                shared.exceeded = true;
+                overflowed = true;
+                release();
+                throw new BufferOverflow();
+            }
+        }
+
+        private void replay(ExcelJsonSink sink) {
+            buffer.replay(sink);
+            release();
+        }
+
+        private void release() {
+            shared.used.addAndGet(-charged);
+            charged = 0;
+            buffer = null;
+        }
+    }
+
+    /**
+     * 单元的缓冲超出预算，由调用线程重新解析
+     */
+    private static final class BufferOverflow extends RuntimeException {
+        private BufferOverflow() {
+            super("Parallel conversion buffer budget exceeded", null, false, false);
+        }
+    }
+
+    private static <T> void convert(UnitConverter<T> converter, T unit, ExcelJsonSink sink) {
+        try {
+            converter.convert(unit, sink);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 等待单元解析完成，缓冲超出预算时返回 false
+     */
+    private static boolean join(Pending<?> pending) {
+        try {
+            pending.future.join();
+            return true;
+        } catch (CompletionException e) {
+            if (pending.buffer.overflowed) {
+                return false;
+            }
+            throw e.getCause() instanceof RuntimeException re ? re : new RuntimeException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package link.wo.mysheetmcp.util;
+
+import com.alibaba.fastjson2.JSONWriter;
+
+import java.util.Arrays;
+
+/**
+ * 缓存一行的单元格事件，行结束时一次性编码。
+ * <p>
+ * JSONB 数组需要预先写入长度，因此 basic 模式的 columns 只能在整行结束后写出；
+ * 数组按行宽复用，不为每个单元格创建对象。
+ */
+public class RowBuffer {
+    private final boolean rowObject;
+
+    private int index;
+    private int size;
+    private String[] keys = new String[16];
+    private String[] types = new String[16];
+    private Object[] values = new Object[16];
+    private int[] rowspans = new int[16];
+    private int[] colspans = new int[16];
+
+    public RowBuffer(boolean rowObject) {
+        this.rowObject = rowObject;
+    }
+
+    public void start(int index) {
+        this.index = index;
+        Arrays.fill(values, 0, size, null);
+        this.size = 0;
+    }
+
+    public void add(String key, String type, Object value, int rowspan, int colspan) {
+        if (size == keys.length) {
+            int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            types = Arrays.copyOf(types, capacity);
+            values = Arrays.copyOf(values, capacity);
+            rowspans = Arrays.copyOf(rowspans, capacity);
+            colspans = Arrays.copyOf(colspans, capacity);
+        }
+        keys[size] = key;
+        types[size] = type;
+        values[size] = value;
+        rowspans[size] = rowspan;
+        colspans[size] = colspan;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 以 JSON 文本写出当前行，结构与 JsonTreeSink 生成的行对象一致
+     */
+    public void writeJson(JSONWriter writer) {
+        writer.startObject();
+        writer.writeName(rowObject ? "index" : "rowIndex");
+        writer.writeColon();
+        writer.writeInt32(index);
+        if (rowObject) {
+            for (int i = 0; i < size; i++) {
+                writer.writeName(keys[i]);
+                writer.writeColon();
+                writeCellJson(writer, i);
+            }
+        } else {
+            writer.writeName("columns");
+            writer.writeColon();
+            writer.startArray();
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
+                    writer.writeComma();
+                }
+                writeCellJson(writer, i);
+            }
+            writer.endArray();
+        }
+        writer.endObject();
+    }
+
+    private void writeCellJson(JSONWriter writer, int i) {
+        writer.startObject();
+        if (!rowObject) {
+            writer.writeName("colIndex");
+            writer.writeColon();
+            writer.writeString(keys[i]);
+        }
+        writer.writeName("type");
+        writer.writeColon();
+        writer.writeString(types[i]);
+        // 与 JSONObject.toJSONString 一致，null 值不输出
+        if (values[i] != null) {
+            writer.writeName("value");
+            writer.writeColon();
+            writer.writeAny(values[i]);
+        }
+        if (rowspans[i] > 1) {
+            writer.writeName("rowspan");
+            writer.writeColon();
+            writer.writeInt32(rowspans[i]);
+        }
+        if (colspans[i] > 1) {
+            writer.writeName("colspan");
+            writer.writeColon();
+            writer.writeInt32(colspans[i]);
+        }
+        writer.endObject();
+    }
+
+    /**
+     * 以 JSONB 二进制写出当前行
+     */
+    public void writeJsonb(JSONWriter writer) {
+        writer.startObject();
+        writer.writeName(rowObject ? "index" : "rowIndex");
+        writer.writeInt32(index);
+        if (rowObject) {
+            for (int i = 0; i < size; i++) {
+                writer.writeName(keys[i]);
+                writeCellJsonb(writer, i);
+            }
+        } else {
+            writer.writeName("columns");
+            writer.startArray(size);
+            for (int i = 0; i < size; i++) {
+                writeCellJsonb(writer, i);
+            }
+        }
+        writer.endObject();
+    }
+
+    private void writeCellJsonb(JSONWriter writer, int i) {
+        writer.startObject();
+        if (!rowObject) {
+            writer.writeName("colIndex");
+            writer.writeString(keys[i]);
+        }
+        writer.writeName("type");
+        writer.writeString(types[i]);
+        if (values[i] != null) {
+            writer.writeName("value");
+            writer.writeAny(values[i]);
+        }
+        if (rowspans[i] > 1) {
+            writer.writeName("rowspan");
+            writer.writeInt32(rowspans[i]);
+        }
+        if (colspans[i] > 1) {
+            writer.writeName("colspan");
+            writer.writeInt32(colspans[i]);
+        }
+        writer.endObject();
+    }
+}
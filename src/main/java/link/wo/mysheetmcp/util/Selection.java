@@ -0,0 +1,315 @@
+package link.wo.mysheetmcp.util;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 转换时的投影和过滤条件：sheet、列、行范围和简单的比较条件，在解析引擎内部应用，
+ * 未选中的单元格不会被解码、判断类型或序列化。
+ * <ul>
+ *     <li>sheet：sheet 名称或从 0 开始的序号；basic 模式默认全部 sheet，row-object 模式默认第一个</li>
+ *     <li>columns：逗号分隔的列，列字母(A,C,F)或第一行中的表头名称，名称优先</li>
+ *     <li>rows：Excel 行号范围(从 1 开始，包含两端)，如 2-100、10-、-50</li>
+ *     <li>where：以 and 连接的条件，列 运算符 值，运算符为 = != > >= < <= ~(包含，忽略大小写)</li>
+ * </ul>
+ * 比较条件作用于单元格解码后的值：值和常量都是数字时按数值比较，否则按文本比较；
+ * 大小比较中常量为数字而单元格不是数字时不匹配。不存在的列名不会选中任何列，条件中按空值比较。
+ */
+public final class Selection {
+    public static final Selection ALL = new Selection(null, Collections.emptyList(), 1, Integer.MAX_VALUE, Collections.emptyList());
+
+    private static final Pattern ROWS = Pattern.compile("^(\\d*)\\s*-\\s*(\\d*)$|^(\\d+)$");
+    private static final Pattern CONDITION = Pattern.compile("^(.+?)\\s*(>=|<=|!=|=|>|<|~)\\s*(.*)$");
+    private static final Pattern AND = Pattern.compile("\\s+(?i:and)\\s+");
+    private static final Pattern COLUMN_LETTERS = Pattern.compile("^[A-Za-z]{1,3}$");
+
+    private final String sheet;
+    private final List<String> columns;
+    private final int firstRow;
+    private final int lastRow;
+    private final List<Condition> where;
+
+    record Condition(String column, String op, String value, Double number) {
+    }
+
+    private Selection(String sheet, List<String> columns, int firstRow, int lastRow, List<Condition> where) {
+        this.sheet = sheet;
+        this.columns = columns;
+        this.firstRow = firstRow;
+        this.lastRow = lastRow;
+        this.where = where;
+    }
+
+    /**
+     * 解析工具参数，全部为空时返回 {@link #ALL}，格式错误时抛出 IllegalArgumentException
+     */
+    public static Selection parse(String sheet, String columns, String rows, String where) {
+        String sheetName = StrUtil.isBlank(sheet) ? null : sheet.trim();
+
+        List<String> columnList = new ArrayList<>();
+        if (StrUtil.isNotBlank(columns)) {
+            for (String column : columns.split(",")) {
+                if (StrUtil.isNotBlank(column)) {
+                    columnList.add(column.trim());
+                }
+            }
+        }
+
+        int first = 1;
+        int last = Integer.MAX_VALUE;
+        if (StrUtil.isNotBlank(rows)) {
+            Matcher m = ROWS.matcher(rows.trim());
+            if (!m.matches()) {
+                throw new IllegalArgumentException("Invalid row range: " + rows);
+            }
+            if (m.group(3) != null) {
+                first = last = Integer.parseInt(m.group(3));
+            } else {
+                first = m.group(1).isEmpty() ? 1 : Integer.parseInt(m.group(1));
+                last = m.group(2).isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(m.group(2));
+            }
+            if (first < 1 || last < first) {
+                throw new IllegalArgumentException("Invalid row range: " + rows);
+            }
+        }
+
+        List<Condition> conditions = new ArrayList<>();
+        if (StrUtil.isNotBlank(where)) {
+            for (String part : AND.split(where.trim())) {
+                Matcher m = CONDITION.matcher(part.trim());
+                if (!m.matches()) {
+                    throw new IllegalArgumentException("Invalid condition: " + part);
+                }
+                String value = unquote(m.group(3).trim());
+                conditions.add(new Condition(m.group(1).trim(), m.group(2), value, parseNumber(value)));
+            }
+        }
+
+        if (sheetName == null && columnList.isEmpty() && first == 1 && last == Integer.MAX_VALUE && conditions.isEmpty()) {
+            return ALL;
+        }
+        return new Selection(sheetName, List.copyOf(columnList), first, last, List.copyOf(conditions));
+    }
+
+    public boolean isAll() {
+        return this == ALL;
+    }
+
+    /**
+     * 规范化的条件摘要，用于区分投影结果的缓存
+     */
+    public String key() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("sheet=").append(sheet != null ? sheet : "")
+                .append("|columns=").append(String.join(",", columns))
+                .append("|rows=").append(firstRow).append('-').append(lastRow)
+                .append("|where=");
+        for (Condition condition : where) {
+            sb.append(condition.column()).append(condition.op()).append(condition.value()).append('\u0000');
+        }
+        return DigestUtil.md5Hex(sb.toString()).substring(0, 16);
+    }
+
+    /**
+     * 选中的 sheet 序号，未指定时返回 defaultIndex，找不到时抛出 IllegalArgumentException
+     */
+    public int sheetIndex(List<String> sheetNames, int defaultIndex) {
+        if (sheet == null) {
+            return defaultIndex;
+        }
+        int index = sheetNames.indexOf(sheet);
+        if (index < 0 && sheet.matches("\\d+")) {
+            index = Integer.parseInt(sheet);
+        }
+        if (index < 0 || index >= sheetNames.size()) {
+            throw new IllegalArgumentException("Sheet not found: " + sheet);
+        }
+        return index;
+    }
+
+    public boolean allSheets() {
+        return sheet == null;
+    }
+
+    /**
+     * Excel 行号(从 1 开始)是否在选中范围内
+     */
+    public boolean includesRow(int excelRow) {
+        return excelRow >= firstRow && excelRow <= lastRow;
+    }
+
+    public int getFirstRow() {
+        return firstRow;
+    }
+
+    public int getLastRow() {
+        return lastRow;
+    }
+
+    /**
+     * 指定了列或条件时需要先读取 sheet 的第一行：名称优先于列字母，列字母也可能是表头名称
+     */
+    public boolean needsHeaderNames() {
+        return !columns.isEmpty() || !where.isEmpty();
+    }
+
+    /**
+     * 按 sheet 的表头(第一行文本 -> 列序号)解析出列投影和条件
+     */
+    public Projection project(Map<String, Integer> headerNames) {
+        if (!needsHeaderNames()) {
+            return Projection.ALL;
+        }
+        BitSet selected = null;
+        if (!columns.isEmpty()) {
+            selected = new BitSet();
+            for (String column : columns) {
+                int col = resolve(column, headerNames);
+                if (col >= 0) {
+                    selected.set(col);
+                }
+            }
+        }
+        int[] conditionColumns = new int[where.size()];
+        BitSet needed = selected != null ? (BitSet) selected.clone() : null;
+        for (int i = 0; i < where.size(); i++) {
+            conditionColumns[i] = resolve(where.get(i).column(), headerNames);
+            if (needed != null && conditionColumns[i] >= 0) {
+                needed.set(conditionColumns[i]);
+            }
+        }
+        return new Projection(selected, needed, where.toArray(new Condition[0]), conditionColumns);
+    }
+
+    /**
+     * 解析后的条件，供会话查询复用同样的语法和比较规则
+     */
+    List<Condition> conditions() {
+        return where;
+    }
+
+    /**
+     * 列名(表头名称优先)或列字母对应的从 0 开始的列序号，都不匹配时返回 -1
+     */
+    static int resolve(String column, Map<String, Integer> headerNames) {
+        Integer named = headerNames != null ? headerNames.get(column) : null;
+        if (named != null) {
+            return named;
+        }
+        if (COLUMN_LETTERS.matcher(column).matches()) {
+            int col = 0;
+            for (char c : column.toUpperCase().toCharArray()) {
+                col = col * 26 + (c - 'A' + 1);
+            }
+            return col - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * 单个 sheet 上解析后的投影，不可变，可被并行解析的任务共享
+     */
+    public static final class Projection {
+        public static final Projection ALL = new Projection(null, null, new Condition[0], new int[0]);
+
+        // null 表示全部列
+        private final BitSet columns;
+        // 输出或条件需要解码的列，null 表示全部列
+        private final BitSet needed;
+        private final Condition[] conditions;
+        private final int[] conditionColumns;
+
+        private Projection(BitSet columns, BitSet needed, Condition[] conditions, int[] conditionColumns) {
+            this.columns = columns;
+            this.needed = needed;
+            this.conditions = conditions;
+            this.conditionColumns = conditionColumns;
+        }
+
+        /**
+         * 该列是否输出
+         */
+        public boolean includesColumn(int col) {
+            return columns == null || columns.get(col);
+        }
+
+        /**
+         * 该列是否需要解码(输出或用于条件判断)
+         */
+        public boolean needsColumn(int col) {
+            return needed == null || needed.get(col);
+        }
+
+        public boolean hasConditions() {
+            return conditions.length > 0;
+        }
+
+        /**
+         * 行是否满足全部条件，valueOf 返回列的解码值，空单元格返回 null
+         */
+        public boolean matches(IntFunction<Object> valueOf) {
+            for (int i = 0; i < conditions.length; i++) {
+                Object value = conditionColumns[i] >= 0 ? valueOf.apply(conditionColumns[i]) : null;
+                if (!test(conditions[i], value)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 单个条件对单元格值的判断，value 为 null 表示空单元格
+     */
+    static boolean test(Condition condition, Object value) {
+        String text = value == null ? "" : value.toString();
+        Double number = value instanceof Number n ? Double.valueOf(n.doubleValue()) : parseNumber(text);
+        int cmp;
+        if (number != null && condition.number() != null) {
+            cmp = Double.compare(number, condition.number());
+        } else if (condition.number() != null && !"=".equals(condition.op()) && !"!=".equals(condition.op())
+                && !"~".equals(condition.op())) {
+            // 数值大小比较，单元格不是数字时不匹配
+            return false;
+        } else {
+            cmp = text.compareTo(condition.value());
+        }
+        return switch (condition.op()) {
+            case "=" -> cmp == 0;
+            case "!=" -> cmp != 0;
+            case ">" -> cmp > 0;
+            case ">=" -> cmp >= 0;
+            case "<" -> cmp < 0;
+            case "<=" -> cmp <= 0;
+            case "~" -> text.toLowerCase().contains(condition.value().toLowerCase());
+            default -> false;
+        };
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && (value.startsWith("\"") && value.endsWith("\"") || value.startsWith("'") && value.endsWith("'"))) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    private static Double parseNumber(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
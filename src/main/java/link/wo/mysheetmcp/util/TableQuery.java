@@ -0,0 +1,776 @@
+package link.wo.mysheetmcp.util;
+
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import link.wo.mysheetmcp.store.ColumnarTable;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 会话数据上的查询：过滤(where)、投影(select)、分组(groupBy)、聚合(sum / count / avg / min / max / distinct)、排序和截断。
+ * <p>
+ * 在 {@link ColumnarTable} 上按列执行：条件对整列求值得到行位图，文本条件对字典中的每个值只判断一次；
+ * 聚合直接扫描 double[] / long[] 和字典码。行数超过 chunkRows 时把行区间分给线程池并行过滤和聚合，再按顺序合并。
+ * <p>
+ * 列可以用列字母(B)或表头名称引用：row-object 模式的表头为 header，basic 模式为 sheet 的第 1 行，
+ * basic 模式中第 1 行作为表头，不参与查询。where 的语法和比较规则与转换时的 {@link Selection} 相同。
+ */
+public final class TableQuery {
+
+    private static final Pattern AGGREGATE = Pattern.compile("^(sum|count|avg|min|max|distinct)\\s*\\(\\s*(.+?)\\s*\\)$",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern ORDER = Pattern.compile("^(.+?)(?:\\s+(asc|desc))?$", Pattern.CASE_INSENSITIVE);
+
+    private record Aggregate(String function, String column, String label) {
+    }
+
+    private record Order(String label, boolean descending) {
+    }
+
+    /**
+     * 按行号比较两行，排序时不装箱
+     */
+    @FunctionalInterface
+    private interface RowComparator {
+        int compare(int a, int b);
+    }
+
+    private final List<String> select;
+    private final List<Selection.Condition> where;
+    private final List<String> groupBy;
+    private final List<Aggregate> aggregates;
+    private final List<Order> orderBy;
+
+    private TableQuery(List<String> select, List<Selection.Condition> where, List<String> groupBy,
+                       List<Aggregate> aggregates, List<Order> orderBy) {
+        this.select = select;
+        this.where = where;
+        this.groupBy = groupBy;
+        this.aggregates = aggregates;
+        this.orderBy = orderBy;
+    }
+
+    /**
+     * 解析工具参数，格式错误时抛出 IllegalArgumentException
+     */
+    public static TableQuery parse(String select, String where, String groupBy, String aggregates, String orderBy) {
+        List<Aggregate> aggregateList = new ArrayList<>();
+        for (String item : split(aggregates)) {
+            Matcher m = AGGREGATE.matcher(item);
+            if (!m.matches()) {
+                throw new IllegalArgumentException("Invalid aggregate: " + item);
+            }
+            String function = m.group(1).toLowerCase(Locale.ROOT);
+            String column = m.group(2);
+            if ("*".equals(column) && !"count".equals(function)) {
+                throw new IllegalArgumentException("Only count accepts *: " + item);
+            }
+            aggregateList.add(new Aggregate(function, column, function + "(" + column + ")"));
+        }
+        List<Order> orderList = new ArrayList<>();
+        for (String item : split(orderBy)) {
+            Matcher m = ORDER.matcher(item);
+            m.matches();
+            orderList.add(new Order(m.group(1).trim(), m.group(2) != null && "desc".equalsIgnoreCase(m.group(2))));
+        }
+        List<String> groupList = split(groupBy);
+        if (!groupList.isEmpty() && aggregateList.isEmpty()) {
+            aggregateList.add(new Aggregate("count", "*", "count(*)"));
+        }
+        return new TableQuery(split(select), Selection.parse(null, null, null, where).conditions(), groupList,
+                aggregateList, orderList);
+    }
+
+    /**
+     * 在一个 sheet 上执行查询，最多返回 limit 行
+     *
+     * @param pool        并行执行的线程池，为 null 时在调用线程执行
+     * @param parallelism 同时执行的行区间数上限
+     * @param chunkRows   每个并行行区间的最少行数
+     */
+    public JSONObject execute(ColumnarTable table, ColumnarTable.Table sheet, Executor pool, int parallelism,
+                              int chunkRows, int limit) {
+        Columns columns = new Columns(table, sheet);
+        // basic 模式的第 1 行是表头
+        int first = !table.isRowObject() && sheet.getRowCount() > 0 && sheet.rowIndex(0) == 1 ? 1 : 0;
+        List<int[]> ranges = ranges(first, sheet.getRowCount(), pool != null ? parallelism : 1, chunkRows);
+
+        BitSet matched = filter(columns, ranges, pool);
+        JSONObject result = new JSONObject();
+        if (!table.isRowObject()) {
+            result.put("sheet", sheet.getName());
+        }
+        result.put("matched", matched.cardinality());
+        if (aggregates.isEmpty()) {
+            selectRows(columns, sheet, matched, limit, result);
+        } else {
+            aggregate(columns, matched, ranges, pool, limit, result);
+        }
+        return result;
+    }
+
+    /**
+     * 对各行区间并行求值所有条件，条件之间为 and
+     */
+    private BitSet filter(Columns columns, List<int[]> ranges, Executor pool) {
+        List<ColumnarTable.Column> conditionColumns = new ArrayList<>();
+        List<boolean[]> dictionaryResults = new ArrayList<>();
+        for (Selection.Condition condition : where) {
+            ColumnarTable.Column column = columns.require(condition.column());
+            conditionColumns.add(column);
+            boolean[] results = null;
+            if (column != null) {
+                // 文本类单元格按字典求值，每个不同的值只判断一次
+                results = new boolean[column.dictionarySize()];
+                for (int code = 0; code < results.length; code++) {
+                    results[code] = Selection.test(condition, column.dictionaryValue(code));
+                }
+            }
+            dictionaryResults.add(results);
+        }
+
+        List<long[]> parts = run(ranges, pool, range -> {
+            int from = range[0];
+            int to = range[1];
+            // 按 64 行对齐的位图字，区间之间不共享
+            long[] words = new long[(to - from + 63) >>> 6];
+            for (int row = from; row < to; row++) {
+                words[(row - from) >>> 6] |= 1L << (row - from);
+            }
+            for (int i = 0; i < where.size(); i++) {
+                Selection.Condition condition = where.get(i);
+                ColumnarTable.Column column = conditionColumns.get(i);
+                boolean nullResult = Selection.test(condition, null);
+                boolean[] dictionary = dictionaryResults.get(i);
+                Long day = condition.number() == null && !"~".equals(condition.op()) ? isoDay(condition.value()) : null;
+                for (int row = from; row < to; row++) {
+                    int bit = row - from;
+                    if ((words[bit >>> 6] & (1L << bit)) == 0) {
+                        continue;
+                    }
+                    boolean match;
+                    if (column == null || !column.isPresent(row)) {
+                        match = nullResult;
+                    } else if (column.isNumber(row) && condition.number() != null && !"~".equals(condition.op())) {
+                        match = compare(condition.op(), Double.compare(column.number(row), condition.number()));
+                    } else if (column.textCode(row) >= 0) {
+                        match = dictionary[column.textCode(row)];
+                    } else if (column.isDate(row) && day != null) {
+                        match = compare(condition.op(), Long.compare(column.epochDay(row), day));
+                    } else {
+                        match = Selection.test(condition, column.value(row));
+                    }
+                    if (!match) {
+                        words[bit >>> 6] &= ~(1L << bit);
+                    }
+                }
+            }
+            return words;
+        });
+
+        BitSet matched = new BitSet();
+        for (int i = 0; i < ranges.size(); i++) {
+            BitSet part = BitSet.valueOf(parts.get(i));
+            int from = ranges.get(i)[0];
+            for (int bit = part.nextSetBit(0); bit >= 0; bit = part.nextSetBit(bit + 1)) {
+                matched.set(from + bit);
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * 不聚合时返回选中的列，第一列为 Excel 行号
+     */
+    private void selectRows(Columns columns, ColumnarTable.Table sheet, BitSet matched, int limit, JSONObject result) {
+        List<String> labels = new ArrayList<>();
+        List<ColumnarTable.Column> selected = new ArrayList<>();
+        if (select.isEmpty()) {
+            for (ColumnarTable.Column column : columns.all()) {
+                labels.add(columns.label(column));
+                selected.add(column);
+            }
+        } else {
+            for (String name : select) {
+                labels.add(name);
+                selected.add(columns.require(name));
+            }
+        }
+
+        int total = matched.cardinality();
+        int n = Math.min(total, limit);
+        int[] rows = orderBy.isEmpty() ? firstRows(matched, n) : topRows(matched, n, rowComparator(columns, labels, selected));
+
+        JSONArray header = new JSONArray();
+        header.add("row");
+        header.addAll(labels);
+        JSONArray data = new JSONArray();
+        for (int row : rows) {
+            JSONArray values = new JSONArray(selected.size() + 1);
+            values.add(columns.excelRow(row));
+            for (ColumnarTable.Column column : selected) {
+                values.add(column != null ? column.value(row) : null);
+            }
+            data.add(values);
+        }
+        result.put("columns", header);
+        result.put("rows", data);
+        result.put("truncated", total > n);
+    }
+
+    /**
+     * 按 orderBy 比较两行，相同时按行号，与对匹配行做稳定排序的顺序一致
+     */
+    private RowComparator rowComparator(Columns columns, List<String> labels, List<ColumnarTable.Column> selected) {
+        ColumnarTable.Column[] orderColumns = new ColumnarTable.Column[orderBy.size()];
+        boolean[] descending = new boolean[orderBy.size()];
+        for (int i = 0; i < orderBy.size(); i++) {
+            Order order = orderBy.get(i);
+            int index = labels.indexOf(order.label());
+            orderColumns[i] = index >= 0 ? selected.get(index) : columns.require(order.label());
+            descending[i] = order.descending();
+        }
+        return (a, b) -> {
+            for (int i = 0; i < orderColumns.length; i++) {
+                int c = compareCells(orderColumns[i], a, b);
+                if (c != 0) {
+                    return descending[i] ? -c : c;
+                }
+            }
+            return Integer.compare(a, b);
+        };
+    }
+
+    private static int[] firstRows(BitSet matched, int n) {
+        int[] rows = new int[n];
+        for (int i = 0, row = matched.nextSetBit(0); i < n; i++, row = matched.nextSetBit(row + 1)) {
+            rows[i] = row;
+        }
+        return rows;
+    }
+
+    /**
+     * 排序后的前 n 行：大小为 n 的堆保留目前最靠前的 n 行(堆顶为其中最靠后的一行)，最后原地堆排序，
+     * 不对全部匹配行排序，也不装箱
+     */
+    private static int[] topRows(BitSet matched, int n, RowComparator comparator) {
+        int[] heap = new int[n];
+        if (n == 0) {
+            return heap;
+        }
+        int size = 0;
+        for (int row = matched.nextSetBit(0); row >= 0; row = matched.nextSetBit(row + 1)) {
+            if (size < n) {
+                heap[size] = row;
+                siftUp(heap, size++, comparator);
+            } else if (comparator.compare(row, heap[0]) < 0) {
+                heap[0] = row;
+                siftDown(heap, 0, n, comparator);
+            }
+        }
+        for (int end = n - 1; end > 0; end--) {
+            int top = heap[0];
+            heap[0] = heap[end];
+            heap[end] = top;
+            siftDown(heap, 0, end, comparator);
+        }
+        return heap;
+    }
+
+    private static void siftUp(int[] heap, int i, RowComparator comparator) {
+        int row = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (comparator.compare(row, heap[parent]) <= 0) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = row;
+    }
+
+    private static void siftDown(int[] heap, int i, int size, RowComparator comparator) {
+        int row = heap[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && comparator.compare(heap[child + 1], heap[child]) > 0) {
+                child++;
+            }
+            if (comparator.compare(row, heap[child]) >= 0) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = row;
+    }
+
+    /**
+     * 按分组列给匹配的行分配组号(顺序执行)，再并行累加各行区间，按区间顺序合并
+     */
+    private void aggregate(Columns columns, BitSet matched, List<int[]> ranges, Executor pool, int limit, JSONObject result) {
+        List<ColumnarTable.Column> groupColumns = new ArrayList<>();
+        for (String name : groupBy) {
+            groupColumns.add(columns.require(name));
+        }
+        List<ColumnarTable.Column> aggregateColumns = new ArrayList<>();
+        for (Aggregate aggregate : aggregates) {
+            aggregateColumns.add("*".equals(aggregate.column()) ? null : columns.require(aggregate.column()));
+        }
+
+        int[] groupOf = new int[columns.rowCount()];
+        List<Object[]> groupKeys = new ArrayList<>();
+        if (groupColumns.isEmpty()) {
+            groupKeys.add(new Object[0]);
+        } else {
+            Map<List<Object>, Integer> groups = new HashMap<>();
+            for (int row = matched.nextSetBit(0); row >= 0; row = matched.nextSetBit(row + 1)) {
+                List<Object> key = new ArrayList<>(groupColumns.size());
+                for (ColumnarTable.Column column : groupColumns) {
+                    key.add(column != null ? column.value(row) : null);
+                }
+                Integer group = groups.get(key);
+                if (group == null) {
+                    group = groupKeys.size();
+                    groups.put(key, group);
+                    groupKeys.add(key.toArray());
+                }
+                groupOf[row] = group;
+            }
+        }
+        int groupCount = groupKeys.size();
+
+        // 文本单元格按字典预先解析数值(货币文本去掉符号和千分位)
+        List<double[]> dictionaryNumbers = new ArrayList<>();
+        for (ColumnarTable.Column column : aggregateColumns) {
+            double[] numbers = null;
+            if (column != null) {
+                numbers = new double[column.dictionarySize()];
+                for (int code = 0; code < numbers.length; code++) {
+                    numbers[code] = parseAmount(column.dictionaryValue(code));
+                }
+            }
+            dictionaryNumbers.add(numbers);
+        }
+
+        List<Accumulator[]> parts = run(ranges, pool, range -> {
+            Accumulator[] accumulators = new Accumulator[aggregates.size()];
+            for (int i = 0; i < accumulators.length; i++) {
+                Aggregate aggregate = aggregates.get(i);
+                ColumnarTable.Column column = aggregateColumns.get(i);
+                Accumulator acc = new Accumulator(groupCount, "distinct".equals(aggregate.function()));
+                double[] numbers = dictionaryNumbers.get(i);
+                int from = matched.nextSetBit(range[0]);
+                for (int row = from; row >= 0 && row < range[1]; row = matched.nextSetBit(row + 1)) {
+                    acc.add(groupOf[row], column, row, numbers);
+                }
+                accumulators[i] = acc;
+            }
+            return accumulators;
+        });
+        Accumulator[] total = parts.get(0);
+        for (int p = 1; p < parts.size(); p++) {
+            for (int i = 0; i < total.length; i++) {
+                total[i].merge(parts.get(p)[i]);
+            }
+        }
+
+        List<String> labels = new ArrayList<>(groupBy);
+        for (Aggregate aggregate : aggregates) {
+            labels.add(aggregate.label());
+        }
+        List<Object[]> rows = new ArrayList<>(groupCount);
+        for (int group = 0; group < groupCount; group++) {
+            Object[] row = new Object[labels.size()];
+            Object[] key = groupKeys.get(group);
+            System.arraycopy(key, 0, row, 0, key.length);
+            for (int i = 0; i < aggregates.size(); i++) {
+                row[key.length + i] = total[i].result(aggregates.get(i).function(), group, aggregateColumns.get(i) == null);
+            }
+            rows.add(row);
+        }
+
+        if (!orderBy.isEmpty()) {
+            Comparator<Object[]> comparator = null;
+            for (Order order : orderBy) {
+                int index = indexOfLabel(labels, order.label());
+                if (index < 0) {
+                    throw new IllegalArgumentException("Unknown order by column: " + order.label());
+                }
+                Comparator<Object[]> next = (a, b) -> compareValues(a[index], b[index]);
+                if (order.descending()) {
+                    next = next.reversed();
+                }
+                comparator = comparator == null ? next : comparator.thenComparing(next);
+            }
+            rows.sort(comparator);
+        }
+
+        JSONArray data = new JSONArray();
+        int n = Math.min(rows.size(), limit);
+        for (int i = 0; i < n; i++) {
+            data.add(new JSONArray(Arrays.asList(rows.get(i))));
+        }
+        result.put("columns", new JSONArray(labels));
+        result.put("rows", data);
+        if (!groupColumns.isEmpty()) {
+            result.put("groups", rows.size());
+        }
+        result.put("truncated", rows.size() > n);
+    }
+
+    /**
+     * 一个聚合函数在各组上的中间结果
+     */
+    private static final class Accumulator {
+        // 组内匹配的行数
+        private final long[] rows;
+        // 非空单元格数
+        private final long[] counts;
+        private final double[] sums;
+        private final long[] numberCounts;
+        private final double[] minNumbers;
+        private final double[] maxNumbers;
+        private final long[] minDays;
+        private final long[] maxDays;
+        private final String[] minTexts;
+        private final String[] maxTexts;
+        private final Set<Object>[] distinct;
+
+        @SuppressWarnings("unchecked")
+        private Accumulator(int groups, boolean distinct) {
+            rows = new long[groups];
+            counts = new long[groups];
+            sums = new double[groups];
+            numberCounts = new long[groups];
+            minNumbers = new double[groups];
+            maxNumbers = new double[groups];
+            minDays = new long[groups];
+            maxDays = new long[groups];
+            Arrays.fill(minDays, Long.MAX_VALUE);
+            Arrays.fill(maxDays, Long.MIN_VALUE);
+            minTexts = new String[groups];
+            maxTexts = new String[groups];
+            this.distinct = distinct ? new Set[groups] : null;
+        }
+
+        private void add(int group, ColumnarTable.Column column, int row, double[] dictionaryNumbers) {
+            rows[group]++;
+            if (column == null || !column.isPresent(row)) {
+                return;
+            }
+            Object value = null;
+            double number = Double.NaN;
+            int code = column.textCode(row);
+            if (column.isNumber(row)) {
+                number = column.number(row);
+            } else if (code >= 0) {
+                String text = column.dictionaryValue(code);
+                if (text.isEmpty()) {
+                    return;
+                }
+                number = dictionaryNumbers[code];
+                value = text;
+            } else if (column.isDate(row)) {
+                long day = column.epochDay(row);
+                minDays[group] = Math.min(minDays[group], day);
+                maxDays[group] = Math.max(maxDays[group], day);
+            } else {
+                value = column.value(row);
+                if (value == null) {
+                    return;
+                }
+            }
+            counts[group]++;
+            if (!Double.isNaN(number)) {
+                if (numberCounts[group] == 0 || number < minNumbers[group]) {
+                    minNumbers[group] = number;
+                }
+                if (numberCounts[group] == 0 || number > maxNumbers[group]) {
+                    maxNumbers[group] = number;
+                }
+                sums[group] += number;
+                numberCounts[group]++;
+            } else if (value instanceof String text) {
+                if (minTexts[group] == null || text.compareTo(minTexts[group]) < 0) {
+                    minTexts[group] = text;
+                }
+                if (maxTexts[group] == null || text.compareTo(maxTexts[group]) > 0) {
+                    maxTexts[group] = text;
+                }
+            }
+            if (distinct != null) {
+                if (distinct[group] == null) {
+                    distinct[group] = new HashSet<>();
+                }
+                distinct[group].add(column.value(row));
+            }
+        }
+
+        private void merge(Accumulator other) {
+            for (int g = 0; g < rows.length; g++) {
+                rows[g] += other.rows[g];
+                counts[g] += other.counts[g];
+                sums[g] += other.sums[g];
+                if (other.numberCounts[g] > 0) {
+                    minNumbers[g] = numberCounts[g] == 0 ? other.minNumbers[g] : Math.min(minNumbers[g], other.minNumbers[g]);
+                    maxNumbers[g] = numberCounts[g] == 0 ? other.maxNumbers[g] : Math.max(maxNumbers[g], other.maxNumbers[g]);
+                }
+                numberCounts[g] += other.numberCounts[g];
+                minDays[g] = Math.min(minDays[g], other.minDays[g]);
+                maxDays[g] = Math.max(maxDays[g], other.maxDays[g]);
+                if (other.minTexts[g] != null && (minTexts[g] == null || other.minTexts[g].compareTo(minTexts[g]) < 0)) {
+                    minTexts[g] = other.minTexts[g];
+                }
+                if (other.maxTexts[g] != null && (maxTexts[g] == null || other.maxTexts[g].compareTo(maxTexts[g]) > 0)) {
+                    maxTexts[g] = other.maxTexts[g];
+                }
+                if (distinct != null && other.distinct[g] != null) {
+                    if (distinct[g] == null) {
+                        distinct[g] = new HashSet<>();
+                    }
+                    distinct[g].addAll(other.distinct[g]);
+                }
+            }
+        }
+
+        /**
+         * min / max 优先按数值，其次日期，最后文本
+         */
+        private Object result(String function, int g, boolean allRows) {
+            return switch (function) {
+                case "count" -> allRows ? rows[g] : counts[g];
+                case "sum" -> sums[g];
+                case "avg" -> numberCounts[g] > 0 ? sums[g] / numberCounts[g] : null;
+                case "min" -> numberCounts[g] > 0 ? Double.valueOf(minNumbers[g])
+                        : minDays[g] != Long.MAX_VALUE ? LocalDate.ofEpochDay(minDays[g]).toString() : minTexts[g];
+                case "max" -> numberCounts[g] > 0 ? Double.valueOf(maxNumbers[g])
+                        : maxDays[g] != Long.MIN_VALUE ? LocalDate.ofEpochDay(maxDays[g]).toString() : maxTexts[g];
+                case "distinct" -> distinct[g] != null ? distinct[g].size() : 0;
+                default -> null;
+            };
+        }
+    }
+
+    /**
+     * 列引用解析：表头名称优先，其次列字母
+     */
+    private static final class Columns {
+        private final ColumnarTable table;
+        private final ColumnarTable.Table sheet;
+        private final Map<String, Integer> headerNames = new HashMap<>();
+        private final Map<Integer, String> labels = new HashMap<>();
+
+        private Columns(ColumnarTable table, ColumnarTable.Table sheet) {
+            this.table = table;
+            this.sheet = sheet;
+            if (table.isRowObject()) {
+                JSONObject header = table.getHeader();
+                if (header != null) {
+                    header.forEach((key, value) -> addHeader(Selection.resolve(key.replaceAll("\\d+$", ""), null), value));
+                }
+            } else if (sheet.getRowCount() > 0 && sheet.rowIndex(0) == 1) {
+                for (ColumnarTable.Column column : sheet.getColumns()) {
+                    addHeader(column.getColIndex(), column.value(0));
+                }
+            }
+        }
+
+        private void addHeader(int col, Object value) {
+            if (col >= 0 && value != null && !value.toString().isEmpty()) {
+                headerNames.putIfAbsent(value.toString(), col);
+                labels.put(col, value.toString());
+            }
+        }
+
+        /**
+         * 列不存在于表头和列字母中时抛出 IllegalArgumentException；列存在但没有单元格时返回 null
+         */
+        private ColumnarTable.Column require(String name) {
+            int col = Selection.resolve(name, headerNames);
+            if (col < 0) {
+                throw new IllegalArgumentException("Unknown column: " + name);
+            }
+            String key = Excel2JsonUtil.getExcelColumnName(col) + (table.isRowObject() ? "1" : "");
+            return sheet.column(key);
+        }
+
+        private List<ColumnarTable.Column> all() {
+            return sheet.getColumns();
+        }
+
+        private String label(ColumnarTable.Column column) {
+            return labels.getOrDefault(column.getColIndex(), Excel2JsonUtil.getExcelColumnName(column.getColIndex()));
+        }
+
+        private int rowCount() {
+            return sheet.getRowCount();
+        }
+
+        /**
+         * Excel 行号：basic 为 rowIndex，row-object 为 index + 1
+         */
+        private int excelRow(int row) {
+            return table.isRowObject() ? sheet.rowIndex(row) + 1 : sheet.rowIndex(row);
+        }
+    }
+
+    /**
+     * 把 [from, to) 分成不超过 parallelism 个、每个不少于 chunkRows 行的连续区间
+     */
+    private static List<int[]> ranges(int from, int to, int parallelism, int chunkRows) {
+        int rows = Math.max(0, to - from);
+        int parts = chunkRows > 0 ? Math.max(1, Math.min(parallelism, rows / chunkRows)) : 1;
+        int size = Math.max(1, (rows + parts - 1) / parts);
+        List<int[]> ranges = new ArrayList<>(parts);
+        for (int start = from; start < to; start += size) {
+            ranges.add(new int[]{start, Math.min(to, start + size)});
+        }
+        if (ranges.isEmpty()) {
+            ranges.add(new int[]{from, from});
+        }
+        return ranges;
+    }
+
+    private static <T> List<T> run(List<int[]> ranges, Executor pool, Function<int[], T> task) {
+        if (pool == null || ranges.size() <= 1) {
+            List<T> results = new ArrayList<>(ranges.size());
+            for (int[] range : ranges) {
+                results.add(task.apply(range));
+            }
+            return results;
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>(ranges.size());
+        for (int[] range : ranges) {
+            futures.add(CompletableFuture.supplyAsync(() -> task.apply(range), pool));
+        }
+        List<T> results = new ArrayList<>(ranges.size());
+        try {
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : new RuntimeException(e.getCause());
+        }
+        return results;
+    }
+
+    private static boolean compare(String op, int cmp) {
+        return switch (op) {
+            case "=" -> cmp == 0;
+            case "!=" -> cmp != 0;
+            case ">" -> cmp > 0;
+            case ">=" -> cmp >= 0;
+            case "<" -> cmp < 0;
+            case "<=" -> cmp <= 0;
+            default -> false;
+        };
+    }
+
+    /**
+     * 空单元格排在最后；都是数值时按数值比较，否则按文本比较
+     */
+    private static int compareCells(ColumnarTable.Column column, int a, int b) {
+        if (column == null) {
+            return 0;
+        }
+        if (column.isNumber(a) && column.isNumber(b)) {
+            return Double.compare(column.number(a), column.number(b));
+        }
+        return compareValues(column.value(a), column.value(b));
+    }
+
+    private static int compareValues(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : 1) : -1;
+        }
+        if (a instanceof Number x && b instanceof Number y) {
+            return Double.compare(x.doubleValue(), y.doubleValue());
+        }
+        return a.toString().compareTo(b.toString());
+    }
+
+    private static int indexOfLabel(List<String> labels, String label) {
+        for (int i = 0; i < labels.size(); i++) {
+            if (labels.get(i).equalsIgnoreCase(label) || labels.get(i).replace(" ", "").equalsIgnoreCase(label.replace(" ", ""))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Long isoDay(String value) {
+        if (value == null || value.length() != 10) {
+            return null;
+        }
+        try {
+            LocalDate date = LocalDate.parse(value);
+            return date.toString().equals(value) ? date.toEpochDay() : null;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 文本中的数值：去掉货币符号、千分位和空白，无法解析时为 NaN
+     */
+    private static double parseAmount(String text) {
+        String cleaned = text.replaceAll("[\\s,￥¥$€£]", "");
+        if (cleaned.isEmpty()) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(cleaned);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static List<String> split(String value) {
+        List<String> items = new ArrayList<>();
+        if (StrUtil.isBlank(value)) {
+            return items;
+        }
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                addItem(items, value.substring(start, i));
+                start = i + 1;
+            }
+        }
+        addItem(items, value.substring(start));
+        return items;
+    }
+
+    private static void addItem(List<String> items, String item) {
+        if (StrUtil.isNotBlank(item)) {
+            items.add(item.trim());
+        }
+    }
+}
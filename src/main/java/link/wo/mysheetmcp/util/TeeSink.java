@@ -0,0 +1,61 @@
+package link.wo.mysheetmcp.util;
+
+/**
+ * 将一次解析的输出同时推送给多个 sink，例如同时生成返回结果和会话行存储
+ */
+public class TeeSink implements ExcelJsonSink {
+    private final ExcelJsonSink[] sinks;
+
+    public TeeSink(ExcelJsonSink... sinks) {
+        this.sinks = sinks;
+    }
+
+    @Override
+    public void header(String key, String value) {
+        for (ExcelJsonSink sink : sinks) {
+            sink.header(key, value);
+        }
+    }
+
+    @Override
+    public void startSheet(String sheetName) {
+        for (ExcelJsonSink sink : sinks) {
+            sink.startSheet(sheetName);
+        }
+    }
+
+    @Override
+    public void mergedRegion(int firstRow, int firstCol, int lastRow, int lastCol) {
+        for (ExcelJsonSink sink : sinks) {
+            sink.mergedRegion(firstRow, firstCol, lastRow, lastCol);
+        }
+    }
+
+    @Override
+    public void startRow(int index) {
+        for (ExcelJsonSink sink : sinks) {
+            sink.startRow(index);
+        }
+    }
+
+    @Override
+    public void cell(String key, String type, Object value, int rowspan, int colspan) {
+        for (ExcelJsonSink sink : sinks) {
+            sink.cell(key, type, value, rowspan, colspan);
+        }
+    }
+
+    @Override
+    public void endRow() {
+        for (ExcelJsonSink sink : sinks) {
+            sink.endRow();
+        }
+    }
+
+    @Override
+    public void endSheet() {
+        for (ExcelJsonSink sink : sinks) {
+            sink.endSheet();
+        }
+    }
+}
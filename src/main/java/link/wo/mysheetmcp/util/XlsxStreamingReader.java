@@ -0,0 +1,934 @@
+package link.wo.mysheetmcp.util;
+
+import cn.hutool.log.Log;
+import cn.hutool.log.LogFactory;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.LocaleUtil;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.xml.sax.SAXException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * 基于 XSSF 事件模型的 xlsx 流式解析引擎。
+ * <p>
+ * 只加载共享字符串表和样式表，sheet XML 通过 StAX 逐行拉取解析，
+ * 输出结构与 {@link Excel2JsonUtil} 的 basic / row-object 模式保持一致。
+ * 每个 sheet 会先快速扫描一遍获取合并单元格和 OLE 对象（它们位于 sheetData 之后），
+ * 再进行第二遍的单元格解析，因此内存占用只与行宽和合并区域数量有关，与文件大小无关。
+ */
+public class XlsxStreamingReader implements Closeable {
+    private static final Log log = LogFactory.get();
+
+    private static final String NS_RELATIONSHIPS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+    private final OPCPackage pkg;
+    private final ReadOnlySharedStringsTable sharedStrings;
+    private final StylesTable styles;
+    private final boolean date1904;
+    private final List<SheetInfo> sheets = new ArrayList<>();
+    private final XMLInputFactory xmlInputFactory = XMLHelper.newXMLInputFactory();
+
+    // 样式索引 -> 数字格式，StylesTable.getStyleAt 每次调用都会新建对象，打开时一次性读出，之后只读(可被多个 sheet 并行读取)
+    private final short[] formatIndexes;
+    private final String[] formatStrings;
+    // 样式索引 -> 日期/货币分类(CellFormats.DATE / CURRENCY)
+    private final byte[] formatKinds;
+    // DataFormatter 不是线程安全的，只在货币格式单元格上使用
+    private final DataFormatter dataFormatter = new DataFormatter();
+
+    public XlsxStreamingReader(File file) throws IOException {
+        try {
+            this.pkg = OPCPackage.open(file, PackageAccess.READ);
+        } catch (Exception e) {
+            throw new IOException("Failed to open xlsx package: " + file.getName(), e);
+        }
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            this.sharedStrings = new ReadOnlySharedStringsTable(pkg, false);
+            this.styles = reader.getStylesTable();
+            try (InputStream is = reader.getWorkbookData()) {
+                this.date1904 = readDate1904(is);
+            }
+            int styleCount = styles != null ? styles.getNumCellStyles() : 0;
+            this.formatIndexes = new short[styleCount];
+            this.formatStrings = new String[styleCount];
+            this.formatKinds = new byte[styleCount];
+            for (int i = 0; i < styleCount; i++) {
+                XSSFCellStyle style = styles.getStyleAt(i);
+                formatIndexes[i] = style.getDataFormat();
+                String fmt = style.getDataFormatString();
+                formatStrings[i] = fmt != null ? fmt : "General";
+                formatKinds[i] = (byte) CellFormats.classify(formatIndexes[i], formatStrings[i]);
+            }
+            XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (it.hasNext()) {
+                try (InputStream ignored = it.next()) {
+                    sheets.add(new SheetInfo(it.getSheetName(), it.getSheetPart()));
+                }
+            }
+        } catch (OpenXML4JException | SAXException | XMLStreamException e) {
+            pkg.revert();
+            throw new IOException("Failed to read xlsx workbook: " + file.getName(), e);
+        } catch (IOException | RuntimeException e) {
+            pkg.revert();
+            throw e;
+        }
+    }
+
+    public int getNumberOfSheets() {
+        return sheets.size();
+    }
+
+    /**
+     * 嵌入文件回调，coord 为锚点单元格坐标(如 B3)
+     */
+    @FunctionalInterface
+    public interface AttachmentConsumer {
+        void accept(String coord, byte[] fileData);
+    }
+
+    /**
+     * 遍历转换时输出的 sheet 中的图片和 OLE 嵌入对象，跳过锚点不在选中行列内的附件
+     */
+    public void forEachAttachment(AttachmentConsumer consumer, Selection selection, boolean rowObject) throws IOException {
+        int selectedSheet = Excel2JsonUtil.attachmentSheet(selection, rowObject, sheetNames());
+        for (int sheetIndex = 0; sheetIndex < sheets.size(); sheetIndex++) {
+            if (selectedSheet >= 0 && sheetIndex != selectedSheet) {
+                continue;
+            }
+            SheetInfo sheet = sheets.get(sheetIndex);
+            SheetMeta meta = meta(sheet);
+            AttachmentConsumer sheetConsumer = selection.isAll() && !rowObject ? consumer : Excel2JsonUtil.selectAttachments(consumer, selection, rowObject,
+                    selection.project(selection.needsHeaderNames() ? headerNames(sheet) : null),
+                    MergedRegionIndex.build(sheet.name, meta.mergedRegions));
+            try {
+                for (PackageRelationship rel : sheet.part.getRelationshipsByType(XSSFRelation.DRAWINGS.getRelation())) {
+                    PackagePart drawingPart = sheet.part.getRelatedPart(rel);
+                    if (drawingPart != null) {
+                        readDrawingPictures(drawingPart, sheetConsumer);
+                    }
+                }
+                for (OleObjectRef ole : meta.oleObjects) {
+                    PackageRelationship rel = sheet.part.getRelationship(ole.relId);
+                    PackagePart objectPart = rel == null ? null : sheet.part.getRelatedPart(rel);
+                    if (objectPart == null) {
+                        log.debug("OLE object part not found, sheet:{}, rId:{}", sheet.name, ole.relId);
+                        continue;
+                    }
+                    try (InputStream is = objectPart.getInputStream()) {
+                        sheetConsumer.accept(Excel2JsonUtil.getExcelColumnName(ole.col) + (ole.row + 1), is.readAllBytes());
+                    }
+                }
+            } catch (OpenXML4JException | XMLStreamException e) {
+                log.error("Error extracting embedded files from sheet {}: {}", sheet.name, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * basic 模式：输出所有 sheet 的所有行
+     */
+    public void toJsonBasic(ExcelJsonSink sink, Map<String, String> fileMap) throws IOException {
+        toJsonBasic(sink, fileMap, null, 1, 0, Selection.ALL);
+    }
+
+    /**
+     * 各 sheet 在 pool 中并行解析，同时解析的 sheet 数不超过 parallelism，缓冲的输出不超过 bufferBytes，按 sheet 顺序合并输出。
+     * 只解析 selection 选中的 sheet，未选中的行和列不解码，读到选中范围的最后一行即停止
+     */
+    public void toJsonBasic(ExcelJsonSink sink, Map<String, String> fileMap, Executor pool, int parallelism, long bufferBytes,
+                            Selection selection) throws IOException {
+        List<SheetInfo> selected = selection.allSheets() ? sheets : List.of(sheets.get(selection.sheetIndex(sheetNames(), 0)));
+        Map<SheetInfo, Selection.Projection> projections = new HashMap<>();
+        for (SheetInfo sheet : selected) {
+            // 合并区域在调用线程中扫描，解析任务只读取 sheetData
+            meta(sheet);
+            projections.put(sheet, selection.project(selection.needsHeaderNames() ? headerNames(sheet) : null));
+        }
+        ParallelConversion.run(selected, parallelism, bufferBytes, pool,
+                (sheet, sheetSink) -> toJsonSheet(sheet, sheetSink, fileMap, selection, projections.get(sheet)), sink);
+    }
+
+    private void toJsonSheet(SheetInfo sheet, ExcelJsonSink sink, Map<String, String> fileMap, Selection selection,
+                             Selection.Projection projection) throws IOException {
+        MergedRegionIndex mergedIndex = MergedRegionIndex.build(sheet.name, meta(sheet).mergedRegions);
+        // 有条件时整行读完再判断，只缓存当前行选中的单元格
+        List<Integer> rowCols = new ArrayList<>();
+        List<CellVal> rowVals = new ArrayList<>();
+        sink.startSheet(sheet.name);
+        Excel2JsonUtil.reportMergedRegions(meta(sheet).mergedRegions, selection, sink);
+        readSheet(sheet, new RowCallback() {
+            @Override
+            public void startRow(int rowIdx) {
+                if (!selection.includesRow(rowIdx + 1)) {
+                    return;
+                }
+                if (projection.hasConditions()) {
+                    rowCols.clear();
+                    rowVals.clear();
+                } else {
+                    sink.startRow(rowIdx + 1);
+                }
+            }
+
+            @Override
+            public boolean wants(int rowIdx, int colIdx) {
+                return selection.includesRow(rowIdx + 1) && projection.needsColumn(colIdx);
+            }
+
+            @Override
+            public void cell(int rowIdx, int colIdx, CellVal val) {
+                if (projection.hasConditions()) {
+                    rowCols.add(colIdx);
+                    rowVals.add(val);
+                } else if (projection.includesColumn(colIdx)) {
+                    emitCell(rowIdx, colIdx, val);
+                }
+            }
+
+            @Override
+            public void endRow(int rowIdx) {
+                if (!selection.includesRow(rowIdx + 1)) {
+                    return;
+                }
+                if (projection.hasConditions()) {
+                    if (!projection.matches(col -> {
+                        int i = rowCols.indexOf(col);
+                        return i >= 0 ? rowVals.get(i).value : null;
+                    })) {
+                        return;
+                    }
+                    sink.startRow(rowIdx + 1);
+                    for (int i = 0; i < rowCols.size(); i++) {
+                        if (projection.includesColumn(rowCols.get(i))) {
+                            emitCell(rowIdx, rowCols.get(i), rowVals.get(i));
+                        }
+                    }
+                }
+                sink.endRow();
+            }
+
+            @Override
+            public boolean stopAfter(int rowIdx) {
+                return rowIdx + 1 >= selection.getLastRow();
+            }
+
+            private void emitCell(int rowIdx, int colIdx, CellVal val) {
+                String colName = Excel2JsonUtil.getExcelColumnName(colIdx);
+                String coord = fileMap.isEmpty() ? null : colName + (rowIdx + 1);
+                String type = val.type;
+                Object value = val.value;
+                if (coord != null && fileMap.containsKey(coord)) {
+                    type = "file";
+                    value = fileMap.get(coord);
+                    log.debug("cell:{}  replaced ->  url:{}", coord, value);
+                }
+                CellRangeAddress region = mergedIndex.find(rowIdx, colIdx);
+                if (region != null) {
+                    sink.cell(colName, type, value, region.getLastRow() - region.getFirstRow() + 1,
+                            region.getLastColumn() - region.getFirstColumn() + 1);
+                } else {
+                    sink.cell(colName, type, value, 1, 1);
+                }
+            }
+        });
+        sink.endSheet();
+        mergedIndex.logStats();
+    }
+
+    private List<String> sheetNames() {
+        List<String> names = new ArrayList<>();
+        for (SheetInfo sheet : sheets) {
+            names.add(sheet.name);
+        }
+        return names;
+    }
+
+    /**
+     * 读取 sheet 第一行的表头文本 -> 列序号，读完第一行即停止
+     */
+    private Map<String, Integer> headerNames(SheetInfo sheet) throws IOException {
+        Map<String, Integer> names = new HashMap<>();
+        readSheet(sheet, new RowCallback() {
+            @Override
+            public void startRow(int rowIdx) {
+            }
+
+            @Override
+            public boolean wants(int rowIdx, int colIdx) {
+                return rowIdx == 0;
+            }
+
+            @Override
+            public void cell(int rowIdx, int colIdx, CellVal val) {
+                names.putIfAbsent(text(val), colIdx);
+            }
+
+            @Override
+            public void endRow(int rowIdx) {
+            }
+
+            @Override
+            public boolean stopAfter(int rowIdx) {
+                return true;
+            }
+        });
+        return names;
+    }
+
+    /**
+     * row-object 模式：第一个 sheet 的第一行作为表头，其余行按表头列输出，合并单元格取左上角的值
+     */
+    public void toJsonRowObject(ExcelJsonSink sink, Map<String, String> fileMap) throws IOException {
+        toJsonRowObject(sink, fileMap, Selection.ALL);
+    }
+
+    /**
+     * 只输出 selection 选中的列和行；选中范围之前的行只解码合并区域左上角所在的列
+     */
+    public void toJsonRowObject(ExcelJsonSink sink, Map<String, String> fileMap, Selection selection) throws IOException {
+        if (sheets.isEmpty()) {
+            return;
+        }
+        SheetInfo sheet = sheets.get(selection.sheetIndex(sheetNames(), 0));
+        List<CellRangeAddress> mergedRegions = meta(sheet).mergedRegions;
+        MergedRegionIndex regions = MergedRegionIndex.build(sheet.name, mergedRegions);
+        BitSet anchorColumns = new BitSet();
+        for (CellRangeAddress region : mergedRegions) {
+            anchorColumns.set(region.getFirstColumn());
+        }
+        RowObjectState state = new RowObjectState();
+        state.projection = selection.project(selection.needsHeaderNames() ? Map.of() : null);
+
+        readSheet(sheet, new RowCallback() {
+            @Override
+            public void startRow(int rowIdx) {
+                state.clearRow();
+            }
+
+            @Override
+            public boolean wants(int rowIdx, int colIdx) {
+                if (rowIdx == 0 || anchorColumns.get(colIdx)) {
+                    return true;
+                }
+                return selection.includesRow(rowIdx + 1) && state.projection.needsColumn(colIdx);
+            }
+
+            @Override
+            public boolean stopAfter(int rowIdx) {
+                return rowIdx + 1 >= selection.getLastRow();
+            }
+
+            @Override
+            public void cell(int rowIdx, int colIdx, CellVal val) {
+                if (rowIdx == 0) {
+                    state.headerCells.put(colIdx, val);
+                    state.maxColIx = colIdx + 1;
+                } else if (colIdx < state.maxColIx) {
+                    state.current[colIdx] = val;
+                }
+            }
+
+            @Override
+            public void endRow(int rowIdx) {
+                if (rowIdx == 0) {
+                    if (selection.needsHeaderNames()) {
+                        Map<String, Integer> names = new HashMap<>();
+                        state.headerCells.forEach((col, val) -> names.merge(text(val), col, Math::min));
+                        state.projection = selection.project(names);
+                    }
+                    state.current = new CellVal[state.maxColIx];
+                    state.keys = new String[state.maxColIx];
+                    for (int i = 0; i < state.maxColIx; i++) {
+                        CellVal val = state.headerCells.get(i);
+                        state.keys[i] = Excel2JsonUtil.getExcelColumnName(i) + "1";
+                        if (state.projection.includesColumn(i)) {
+                            sink.header(state.keys[i], val != null ? text(val) : "");
+                        }
+                        state.current[i] = val;
+                    }
+                    state.headerCells = null;
+                } else {
+                    // 中间缺失的行按空行输出
+                    for (int gap = state.lastRow + 1; gap < rowIdx; gap++) {
+                        CellVal[] empty = new CellVal[state.maxColIx];
+                        if (selection.includesRow(gap + 1)) {
+                            emitRowObject(sink, fileMap, regions, state, gap, empty);
+                        }
+                        rememberAnchors(regions, state, gap, empty);
+                    }
+                    if (selection.includesRow(rowIdx + 1)) {
+                        emitRowObject(sink, fileMap, regions, state, rowIdx, state.current);
+                    }
+                }
+                rememberAnchors(regions, state, rowIdx, state.current);
+                state.lastRow = rowIdx;
+            }
+        });
+        regions.logStats();
+    }
+
+    private void emitRowObject(ExcelJsonSink sink, Map<String, String> fileMap, MergedRegionIndex regions,
+                               RowObjectState state, int rowIdx, CellVal[] cells) {
+        Selection.Projection projection = state.projection;
+        if (projection.hasConditions() && !projection.matches(col -> {
+            if (col >= state.maxColIx) {
+                return null;
+            }
+            CellVal src = sourceCell(regions, state, rowIdx, col, cells);
+            return src != null ? src.value : null;
+        })) {
+            return;
+        }
+        sink.startRow(rowIdx);
+        for (int j = 0; j < state.maxColIx; j++) {
+            if (!projection.includesColumn(j)) {
+                continue;
+            }
+            String key = state.keys[j];
+            int targetRow = rowIdx;
+            int targetCol = j;
+            CellRangeAddress merged = regions.find(rowIdx, j);
+            if (merged != null) {
+                targetRow = merged.getFirstRow();
+                targetCol = merged.getFirstColumn();
+            }
+
+            CellVal src;
+            if (targetRow == rowIdx) {
+                src = cells[targetCol];
+            } else {
+                src = state.anchors.get(merged);
+            }
+            String srcCoord = fileMap.isEmpty() ? null : Excel2JsonUtil.getExcelColumnName(targetCol) + (targetRow + 1);
+
+            if (srcCoord != null && fileMap.containsKey(srcCoord)) {
+                sink.cell(key, "file", fileMap.get(srcCoord), 1, 1);
+            } else if (src == null) {
+                sink.cell(key, "text", "", 1, 1);
+            } else {
+                sink.cell(key, src.type, src.value, 1, 1);
+            }
+        }
+        sink.endRow();
+    }
+
+    /**
+     * 合并区域取左上角单元格的值
+     */
+    private static CellVal sourceCell(MergedRegionIndex regions, RowObjectState state, int rowIdx, int col, CellVal[] cells) {
+        CellRangeAddress merged = regions.find(rowIdx, col);
+        if (merged == null) {
+            return cells[col];
+        }
+        return merged.getFirstRow() == rowIdx ? cells[merged.getFirstColumn()] : state.anchors.get(merged);
+    }
+
+    /**
+     * 保存从当前行开始、向下延伸的合并区域左上角的值，并释放已经结束的区域
+     */
+    private void rememberAnchors(MergedRegionIndex regions, RowObjectState state, int rowIdx, CellVal[] cells) {
+        if (regions.isEmpty()) {
+            return;
+        }
+        if (!state.anchors.isEmpty()) {
+            state.anchors.keySet().removeIf(region -> region.getLastRow() <= rowIdx);
+        }
+        for (CellRangeAddress region : regions.startingAt(rowIdx)) {
+            int col = region.getFirstColumn();
+            state.anchors.put(region, col < cells.length ? cells[col] : null);
+        }
+    }
+
+    private static class RowObjectState {
+        Map<Integer, CellVal> headerCells = new HashMap<>();
+        Map<CellRangeAddress, CellVal> anchors = new HashMap<>();
+        Selection.Projection projection = Selection.Projection.ALL;
+        CellVal[] current = new CellVal[0];
+        // 表头列的键(A1、B1 ...)，每行复用
+        String[] keys = new String[0];
+        int maxColIx = 0;
+        int lastRow = 0;
+
+        void clearRow() {
+            Arrays.fill(current, null);
+        }
+    }
+
+    private interface RowCallback {
+        void startRow(int rowIdx);
+
+        /**
+         * 是否需要该单元格，返回 false 时跳过解码且不回调 cell
+         */
+        default boolean wants(int rowIdx, int colIdx) {
+            return true;
+        }
+
+        void cell(int rowIdx, int colIdx, CellVal val);
+
+        void endRow(int rowIdx);
+
+        /**
+         * 该行结束后是否停止读取
+         */
+        default boolean stopAfter(int rowIdx) {
+            return false;
+        }
+    }
+
+    /**
+     * 解析后的单元格值，text 为 Cell.toString() 的等价结果，用于 row-object 表头；
+     * 数字、货币和日期单元格的 text 为 null，需要时由 {@link #text(CellVal)} 按原始值 raw 生成
+     */
+    private record CellVal(String type, Object value, String text, double raw) {
+        CellVal(String type, Object value, String text) {
+            this(type, value, text, 0);
+        }
+    }
+
+    /**
+     * 单元格的表头文本，只在读取表头时调用
+     */
+    private String text(CellVal val) {
+        if (val.text != null) {
+            return val.text;
+        }
+        return "date".equals(val.type) ? toDateText(DateUtil.getJavaDate(val.raw, date1904)) : Double.toString(val.raw);
+    }
+
+    private void readSheet(SheetInfo sheet, RowCallback callback) throws IOException {
+        try (InputStream is = sheet.part.getInputStream()) {
+            // JDK 的 XMLInputFactory 会复用上一个 reader 实例，并行读取 sheet 时每次新建
+            XMLStreamReader xml = XMLHelper.newXMLInputFactory().createXMLStreamReader(is);
+            try {
+                int rowIdx = -1;
+                int colIdx = -1;
+                String cellType = null;
+                int styleIdx = 0;
+                String value = null;
+                String formula = null;
+                StringBuilder inline = null;
+                StringBuilder text = new StringBuilder();
+                boolean inSheetData = false;
+                boolean inPhonetic = false;
+
+                boolean done = false;
+                while (!done && xml.hasNext()) {
+                    int event = xml.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = xml.getLocalName();
+                        if (!inSheetData) {
+                            if ("sheetData".equals(name)) {
+                                inSheetData = true;
+                            }
+                            continue;
+                        }
+                        switch (name) {
+                            case "row" -> {
+                                String r = xml.getAttributeValue(null, "r");
+                                rowIdx = r != null ? Integer.parseInt(r) - 1 : rowIdx + 1;
+                                colIdx = -1;
+                                callback.startRow(rowIdx);
+                            }
+                            case "c" -> {
+                                String r = xml.getAttributeValue(null, "r");
+                                colIdx = r != null ? new CellReference(r).getCol() : colIdx + 1;
+                                cellType = xml.getAttributeValue(null, "t");
+                                String s = xml.getAttributeValue(null, "s");
+                                styleIdx = s != null ? Integer.parseInt(s) : 0;
+                                value = null;
+                                formula = null;
+                                inline = null;
+                            }
+                            case "v", "f" -> text.setLength(0);
+                            case "is" -> inline = new StringBuilder();
+                            case "rPh" -> inPhonetic = true;
+                            case "t" -> text.setLength(0);
+                            default -> {
+                            }
+                        }
+                    } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                            || event == XMLStreamConstants.SPACE) {
+                        if (inSheetData) {
+                            text.append(xml.getTextCharacters(), xml.getTextStart(), xml.getTextLength());
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        if (!inSheetData) {
+                            continue;
+                        }
+                        switch (xml.getLocalName()) {
+                            case "sheetData" -> inSheetData = false;
+                            case "v" -> value = text.toString();
+                            case "f" -> formula = text.toString();
+                            case "t" -> {
+                                if (inline != null && !inPhonetic) {
+                                    inline.append(text);
+                                }
+                            }
+                            case "rPh" -> inPhonetic = false;
+                            case "c" -> {
+                                if (callback.wants(rowIdx, colIdx)) {
+                                    callback.cell(rowIdx, colIdx, toCellVal(cellType, styleIdx, value, formula, inline));
+                                }
+                            }
+                            case "row" -> {
+                                callback.endRow(rowIdx);
+                                done = callback.stopAfter(rowIdx);
+                            }
+                            default -> {
+                            }
+                        }
+                    }
+                }
+            } finally {
+                xml.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to parse sheet: " + sheet.name, e);
+        }
+    }
+
+    /**
+     * 与 Excel2JsonUtil.setCellValue 的类型判断保持一致
+     */
+    private CellVal toCellVal(String t, int styleIdx, String v, String formula, StringBuilder inline) {
+        if (formula != null) {
+            if ("str".equals(t) || "s".equals(t)) {
+                String s = v != null ? v : "";
+                return new CellVal("text", s, formula);
+            } else if ("b".equals(t)) {
+                return new CellVal("boolean", "1".equals(v), formula);
+            } else if ("e".equals(t)) {
+                return new CellVal("text", "", formula);
+            }
+            double d = v != null ? parseDouble(v) : 0.0;
+            return new CellVal("number", d, formula);
+        }
+
+        if (t == null || "n".equals(t)) {
+            if (v == null || v.isEmpty()) {
+                return new CellVal("text", "", "");
+            }
+            double d = parseDouble(v);
+            int kind = styleIdx < formatKinds.length ? formatKinds[styleIdx] : 0;
+            if ((kind & CellFormats.DATE) != 0 && DateUtil.isValidExcelDate(d)) {
+                return new CellVal("date", CellFormats.formatDate(DateUtil.getLocalDateTime(d, date1904)), null, d);
+            }
+            if ((kind & CellFormats.CURRENCY) != 0) {
+                String money;
+                synchronized (dataFormatter) {
+                    money = dataFormatter.formatRawCellContents(d, formatIndex(styleIdx), formatString(styleIdx), date1904);
+                }
+                return new CellVal("money", money, null, d);
+            }
+            return new CellVal("number", d, null, d);
+        }
+
+        switch (t) {
+            case "s" -> {
+                String s = "";
+                if (v != null && !v.isEmpty()) {
+                    try {
+                        s = sharedStrings.getItemAt(Integer.parseInt(v)).getString();
+                    } catch (RuntimeException e) {
+                        log.warn("Invalid shared string index: {}", v);
+                    }
+                }
+                return new CellVal("text", s, s);
+            }
+            case "inlineStr" -> {
+                String s = inline != null ? new XSSFRichTextString(inline.toString()).getString() : "";
+                return new CellVal("text", s, s);
+            }
+            case "str" -> {
+                String s = v != null ? v : "";
+                return new CellVal("text", s, s);
+            }
+            case "b" -> {
+                boolean b = "1".equals(v);
+                return new CellVal("boolean", b, b ? "TRUE" : "FALSE");
+            }
+            case "e" -> {
+                return new CellVal("text", "", v != null ? v : "");
+            }
+            default -> {
+                return new CellVal("text", "", "");
+            }
+        }
+    }
+
+    private String toDateText(java.util.Date date) {
+        if (date == null) {
+            return "";
+        }
+        SimpleDateFormat sdf = new SimpleDateFormat("dd-MMM-yyyy", LocaleUtil.getUserLocale());
+        sdf.setTimeZone(LocaleUtil.getUserTimeZone());
+        return sdf.format(date);
+    }
+
+    private static double parseDouble(String v) {
+        try {
+            return Double.parseDouble(v);
+        } catch (NumberFormatException e) {
+            return 0.0;
+        }
+    }
+
+    private short formatIndex(int styleIdx) {
+        return styleIdx < formatIndexes.length ? formatIndexes[styleIdx] : 0;
+    }
+
+    private String formatString(int styleIdx) {
+        return styleIdx < formatStrings.length ? formatStrings[styleIdx] : "General";
+    }
+
+    private static class SheetInfo {
+        final String name;
+        final PackagePart part;
+        SheetMeta meta;
+
+        SheetInfo(String name, PackagePart part) {
+            this.name = name;
+            this.part = part;
+        }
+    }
+
+    private static class SheetMeta {
+        final List<CellRangeAddress> mergedRegions = new ArrayList<>();
+        final List<OleObjectRef> oleObjects = new ArrayList<>();
+    }
+
+    private record OleObjectRef(String relId, int col, int row) {
+    }
+
+    private SheetMeta meta(SheetInfo sheet) throws IOException {
+        if (sheet.meta == null) {
+            long start = System.currentTimeMillis();
+            sheet.meta = scanSheetMeta(sheet);
+            log.debug("Scanned sheet {} in {}ms, mergedRegions:{}, oleObjects:{}", sheet.name,
+                    System.currentTimeMillis() - start, sheet.meta.mergedRegions.size(), sheet.meta.oleObjects.size());
+        }
+        return sheet.meta;
+    }
+
+    /**
+     * 第一遍扫描：跳过 sheetData，收集 mergeCells 与 oleObjects
+     */
+    private SheetMeta scanSheetMeta(SheetInfo sheet) throws IOException {
+        SheetMeta meta = new SheetMeta();
+        try (InputStream is = sheet.part.getInputStream()) {
+            XMLStreamReader xml = xmlInputFactory.createXMLStreamReader(is);
+            try {
+                String oleRelId = null;
+                boolean inFrom = false;
+                int fromCol = -1;
+                int fromRow = -1;
+                StringBuilder text = new StringBuilder();
+                while (xml.hasNext()) {
+                    int event = xml.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        switch (xml.getLocalName()) {
+                            case "sheetData" -> skipElement(xml);
+                            case "mergeCell" -> {
+                                String ref = xml.getAttributeValue(null, "ref");
+                                if (ref != null) {
+                                    meta.mergedRegions.add(CellRangeAddress.valueOf(ref));
+                                }
+                            }
+                            case "oleObject" -> {
+                                oleRelId = xml.getAttributeValue(NS_RELATIONSHIPS, "id");
+                                fromCol = -1;
+                                fromRow = -1;
+                            }
+                            case "from" -> inFrom = oleRelId != null;
+                            case "col", "row" -> text.setLength(0);
+                            default -> {
+                            }
+                        }
+                    } else if (event == XMLStreamConstants.CHARACTERS) {
+                        if (inFrom) {
+                            text.append(xml.getText());
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        switch (xml.getLocalName()) {
+                            case "col" -> {
+                                if (inFrom) {
+                                    fromCol = Integer.parseInt(text.toString().trim());
+                                }
+                            }
+                            case "row" -> {
+                                if (inFrom) {
+                                    fromRow = Integer.parseInt(text.toString().trim());
+                                }
+                            }
+                            case "from" -> inFrom = false;
+                            case "oleObject" -> {
+                                if (oleRelId != null && fromCol >= 0 && fromRow >= 0) {
+                                    meta.oleObjects.add(new OleObjectRef(oleRelId, fromCol, fromRow));
+                                }
+                                oleRelId = null;
+                            }
+                            default -> {
+                            }
+                        }
+                    }
+                }
+            } finally {
+                xml.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to scan sheet: " + sheet.name, e);
+        }
+        return meta;
+    }
+
+    /**
+     * 解析 drawing 部件中的图片锚点，只处理直接挂在锚点下的图片（与 XSSFDrawing.getShapes 一致）
+     */
+    private void readDrawingPictures(PackagePart drawingPart, AttachmentConsumer consumer)
+            throws IOException, XMLStreamException, OpenXML4JException {
+        try (InputStream is = drawingPart.getInputStream()) {
+            XMLStreamReader xml = xmlInputFactory.createXMLStreamReader(is);
+            try {
+                int depth = 0;
+                int anchorDepth = -1;
+                int groupDepth = -1;
+                boolean inFrom = false;
+                int fromCol = 0;
+                int fromRow = 0;
+                StringBuilder text = new StringBuilder();
+                while (xml.hasNext()) {
+                    int event = xml.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        depth++;
+                        String name = xml.getLocalName();
+                        switch (name) {
+                            case "twoCellAnchor", "oneCellAnchor", "absoluteAnchor" -> {
+                                anchorDepth = depth;
+                                fromCol = 0;
+                                fromRow = 0;
+                            }
+                            case "from" -> inFrom = anchorDepth > 0;
+                            case "col", "row" -> text.setLength(0);
+                            case "grpSp" -> {
+                                if (groupDepth < 0) {
+                                    groupDepth = depth;
+                                }
+                            }
+                            case "blip" -> {
+                                String embed = xml.getAttributeValue(NS_RELATIONSHIPS, "embed");
+                                if (embed != null && anchorDepth > 0 && groupDepth < 0) {
+                                    PackageRelationship rel = drawingPart.getRelationship(embed);
+                                    PackagePart imagePart = rel == null ? null : drawingPart.getRelatedPart(rel);
+                                    if (imagePart != null) {
+                                        try (InputStream img = imagePart.getInputStream()) {
+                                            consumer.accept(Excel2JsonUtil.getExcelColumnName(fromCol) + (fromRow + 1), img.readAllBytes());
+                                        }
+                                    }
+                                }
+                            }
+                            default -> {
+                            }
+                        }
+                    } else if (event == XMLStreamConstants.CHARACTERS) {
+                        if (inFrom) {
+                            text.append(xml.getText());
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        switch (xml.getLocalName()) {
+                            case "col" -> {
+                                if (inFrom) {
+                                    fromCol = Integer.parseInt(text.toString().trim());
+                                }
+                            }
+                            case "row" -> {
+                                if (inFrom) {
+                                    fromRow = Integer.parseInt(text.toString().trim());
+                                }
+                            }
+                            case "from" -> inFrom = false;
+                            case "grpSp" -> {
+                                if (groupDepth == depth) {
+                                    groupDepth = -1;
+                                }
+                            }
+                            case "twoCellAnchor", "oneCellAnchor", "absoluteAnchor" -> anchorDepth = -1;
+                            default -> {
+                            }
+                        }
+                        depth--;
+                    }
+                }
+            } finally {
+                xml.close();
+            }
+        }
+    }
+
+    private static void skipElement(XMLStreamReader xml) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && xml.hasNext()) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private boolean readDate1904(InputStream workbookXml) throws XMLStreamException {
+        XMLStreamReader xml = xmlInputFactory.createXMLStreamReader(workbookXml);
+        try {
+            while (xml.hasNext()) {
+                if (xml.next() == XMLStreamConstants.START_ELEMENT && "workbookPr".equals(xml.getLocalName())) {
+                    String v = xml.getAttributeValue(null, "date1904");
+                    return "1".equals(v) || "true".equalsIgnoreCase(v);
+                }
+                if (xml.isStartElement() && "sheets".equals(xml.getLocalName())) {
+                    return false;
+                }
+            }
+            return false;
+        } finally {
+            xml.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        // 只读方式打开，revert 关闭底层 zip 而不回写
+        pkg.revert();
+    }
+}
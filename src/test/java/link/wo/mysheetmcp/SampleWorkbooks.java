@@ -0,0 +1,188 @@
+package link.wo.mysheetmcp;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import link.wo.mysheetmcp.service.UploadScheduler;
+import link.wo.mysheetmcp.store.AttachmentIndex;
+import link.wo.mysheetmcp.store.AttachmentStore;
+import link.wo.mysheetmcp.store.DeferredAttachmentIndex;
+import link.wo.mysheetmcp.store.RowStore;
+import link.wo.mysheetmcp.util.Excel2JsonUtil;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.usermodel.CreationHelper;
+import org.apache.poi.ss.usermodel.Drawing;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Calendar;
+
+/**
+ * 测试用的示例工作簿：包含文本、数字、日期、金额、公式、布尔、空单元格、缺失行和合并单元格
+ */
+public final class SampleWorkbooks {
+
+    private SampleWorkbooks() {
+    }
+
+    /**
+     * 不依赖 Spring 上下文的转换器，附件上传相关组件使用本地指标注册表
+     */
+    public static Excel2JsonUtil converter(File dir, long streamingThreshold) {
+        return converter(dir, streamingThreshold, null);
+    }
+
+    public static Excel2JsonUtil converter(File dir, long streamingThreshold, AttachmentStore attachmentStore) {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        UploadScheduler scheduler = new UploadScheduler();
+        ReflectionTestUtils.setField(scheduler, "MAX_CONCURRENCY", 4);
+        ReflectionTestUtils.setField(scheduler, "MAX_BYTES_PER_CONVERSION", Long.MAX_VALUE);
+        ReflectionTestUtils.setField(scheduler, "RETRY_BACKOFF", 1L);
+        ReflectionTestUtils.setField(scheduler, "attachmentStore", attachmentStore);
+        ReflectionTestUtils.setField(scheduler, "meterRegistry", registry);
+        scheduler.init();
+        AttachmentIndex index = new AttachmentIndex();
+        ReflectionTestUtils.setField(index, "STORAGE_CACHE", dir.getPath());
+        ReflectionTestUtils.setField(index, "meterRegistry", registry);
+        index.init();
+        DeferredAttachmentIndex deferredIndex = new DeferredAttachmentIndex();
+        ReflectionTestUtils.setField(deferredIndex, "STORAGE_CACHE", dir.getPath());
+        ReflectionTestUtils.setField(deferredIndex, "meterRegistry", registry);
+        deferredIndex.init();
+
+        Excel2JsonUtil util = new Excel2JsonUtil();
+        ReflectionTestUtils.setField(util, "STREAMING_THRESHOLD", streamingThreshold);
+        ReflectionTestUtils.setField(util, "uploadScheduler", scheduler);
+        ReflectionTestUtils.setField(util, "attachmentIndex", index);
+        ReflectionTestUtils.setField(util, "deferredAttachmentIndex", deferredIndex);
+        return util;
+    }
+
+    /**
+     * 把工作簿转换为 dir 下的行存储，文件名为 {excel 文件名}.{type}.bin，元数据中的 md5 固定为 "md5"
+     */
+    public static RowStore store(File dir, File excel, String type) throws IOException {
+        Excel2JsonUtil util = converter(dir, Long.MAX_VALUE);
+        try (RowStore.Writer writer = RowStore.create(new File(dir, excel.getName() + "." + type + ".bin"), Excel2JsonUtil.isRowObject(type))) {
+            util.convert(excel, type, writer);
+            writer.setMeta(excel.getName(), "md5");
+            return writer.commit();
+        }
+    }
+
+    public static File create(File dir) throws IOException {
+        File file = new File(dir, "sample.xlsx");
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            CreationHelper helper = workbook.getCreationHelper();
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(helper.createDataFormat().getFormat("yyyy-mm-dd"));
+            CellStyle moneyStyle = workbook.createCellStyle();
+            moneyStyle.setDataFormat(helper.createDataFormat().getFormat("\"￥\"#,##0.00"));
+
+            Sheet sheet = workbook.createSheet("数据");
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("名称");
+            header.createCell(1).setCellValue("数量");
+            header.createCell(2).setCellValue("日期");
+            header.createCell(3).setCellValue("金额");
+            header.createCell(4).setCellValue(true);
+
+            Calendar calendar = Calendar.getInstance();
+            calendar.set(2025, Calendar.MAY, 18);
+            for (int i = 1; i <= 20; i++) {
+                if (i == 7) {
+                    continue;
+                }
+                Row row = sheet.createRow(i);
+                row.createCell(0).setCellValue("项目" + i);
+                row.createCell(1).setCellValue(i * 1.5);
+                row.createCell(2).setCellValue(calendar.getTime());
+                row.getCell(2).setCellStyle(dateStyle);
+                row.createCell(3).setCellValue(i * 100.25);
+                row.getCell(3).setCellStyle(moneyStyle);
+                row.createCell(4).setCellFormula("B" + (i + 1) + "*2");
+                row.createCell(5).setCellValue(i % 2 == 0);
+                row.createCell(6);
+            }
+            sheet.addMergedRegion(new CellRangeAddress(2, 4, 0, 0));
+            sheet.addMergedRegion(new CellRangeAddress(5, 8, 1, 2));
+            sheet.addMergedRegion(new CellRangeAddress(0, 1, 4, 4));
+
+            Sheet second = workbook.createSheet("Sheet2");
+            second.createRow(3).createCell(2).setCellValue("孤立单元格");
+            second.createRow(5);
+            second.addMergedRegion(new CellRangeAddress(3, 3, 2, 5));
+
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                workbook.write(out);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * B2、B3 单元格上各有一张图片，图片内容不同
+     */
+    public static File createWithPictures(File dir) throws IOException {
+        File file = new File(dir, "pictures.xlsx");
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            Sheet sheet = workbook.createSheet("Sheet1");
+            Drawing<?> drawing = sheet.createDrawingPatriarch();
+            for (int i = 1; i <= 2; i++) {
+                sheet.createRow(i).createCell(1).setCellValue("图片" + i);
+                byte[] png = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', (byte) i};
+                ClientAnchor anchor = workbook.getCreationHelper().createClientAnchor();
+                anchor.setCol1(1);
+                anchor.setRow1(i);
+                drawing.createPicture(anchor, workbook.addPicture(png, Workbook.PICTURE_TYPE_PNG));
+            }
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                workbook.write(out);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * sheets 个 sheet，每个 rows 行、cols 列，混合文本、数字和合并单元格，用于并行解析的测试和基准
+     */
+    public static File createMultiSheet(File dir, int sheets, int rows, int cols) throws IOException {
+        return createMultiSheet(dir, sheets, rows, cols, "xlsx");
+    }
+
+    /**
+     * ext 为 xlsx 或 xls
+     */
+    public static File createMultiSheet(File dir, int sheets, int rows, int cols, String ext) throws IOException {
+        File file = new File(dir, "multi-" + sheets + "x" + rows + "." + ext);
+        try (Workbook workbook = "xls".equals(ext) ? new HSSFWorkbook() : new XSSFWorkbook()) {
+            for (int s = 0; s < sheets; s++) {
+                Sheet sheet = workbook.createSheet("Sheet" + (s + 1));
+                for (int r = 0; r < rows; r++) {
+                    Row row = sheet.createRow(r);
+                    for (int c = 0; c < cols; c++) {
+                        if (c % 2 == 0) {
+                            row.createCell(c).setCellValue("S" + s + "R" + r + "C" + c);
+                        } else {
+                            row.createCell(c).setCellValue(s * 1000.5 + r * c);
+                        }
+                    }
+                }
+                if (rows > 4) {
+                    sheet.addMergedRegion(new CellRangeAddress(1, 3, 0, 1));
+                }
+            }
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                workbook.write(out);
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,268 @@
+package link.wo.mysheetmcp.service;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import link.wo.mysheetmcp.SampleWorkbooks;
+import link.wo.mysheetmcp.store.AttachmentStore;
+import link.wo.mysheetmcp.store.DiskCacheManager;
+import link.wo.mysheetmcp.store.ResultCache;
+import link.wo.mysheetmcp.util.AttachmentMode;
+import link.wo.mysheetmcp.util.Excel2JsonUtil;
+import link.wo.mysheetmcp.util.Selection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class Excel2JsonServiceTest {
+
+    @TempDir
+    File tempDir;
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger downloads = new AtomicInteger();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private DiskCacheManager diskCacheManager;
+    private ResultCache resultCache;
+    private SourceService sourceService;
+    private Excel2JsonService service;
+    private File uploadDir;
+    private String baseUrl;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        byte[] workbook = Files.readAllBytes(SampleWorkbooks.create(tempDir).toPath());
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            downloads.incrementAndGet();
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            exchange.sendResponseHeaders(200, workbook.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(workbook);
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        Excel2JsonUtil util = SampleWorkbooks.converter(tempDir, Long.MAX_VALUE);
+        uploadDir = new File(tempDir, "upload");
+        diskCacheManager = new DiskCacheManager();
+        ReflectionTestUtils.setField(diskCacheManager, "STORAGE_CACHE", new File(tempDir, "cache").getPath());
+        ReflectionTestUtils.setField(diskCacheManager, "STORAGE_FILE", uploadDir.getPath());
+        ReflectionTestUtils.setField(diskCacheManager, "QUOTA", Long.MAX_VALUE);
+        ReflectionTestUtils.setField(diskCacheManager, "EVICT_INTERVAL", 60_000L);
+        ReflectionTestUtils.setField(diskCacheManager, "meterRegistry", registry);
+        diskCacheManager.init();
+        resultCache = new ResultCache();
+        ReflectionTestUtils.setField(resultCache, "MAX_BYTES", 1L << 24);
+        ReflectionTestUtils.setField(resultCache, "meterRegistry", registry);
+        resultCache.init();
+        sourceService = new SourceService();
+        ReflectionTestUtils.setField(sourceService, "diskCacheManager", diskCacheManager);
+        ReflectionTestUtils.setField(sourceService, "STORAGE_FILE", uploadDir.getPath());
+        ReflectionTestUtils.setField(sourceService, "STORAGE_CACHE", new File(tempDir, "cache").getPath());
+        ReflectionTestUtils.setField(sourceService, "FRESH_TTL", 0L);
+        service = new Excel2JsonService();
+        ReflectionTestUtils.setField(service, "excel2JsonUtil", util);
+        ReflectionTestUtils.setField(service, "sourceService", sourceService);
+        ReflectionTestUtils.setField(service, "diskCacheManager", diskCacheManager);
+        ReflectionTestUtils.setField(service, "resultCache", resultCache);
+        ReflectionTestUtils.setField(service, "STORAGE_CACHE", new File(tempDir, "cache").getPath());
+        ReflectionTestUtils.setField(service, "READ_MAX_ROWS", 500);
+        ReflectionTestUtils.setField(service, "READ_MAX_BYTES", 262144L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        diskCacheManager.shutdown();
+    }
+
+    @Test
+    void downloadsAreStoredOncePerContent() {
+        JSONObject first = JSON.parseObject(service.excel2Json(baseUrl + "/a/report.xlsx", "basic", null, null, null, null, null, null));
+        JSONObject second = JSON.parseObject(service.excel2Json(baseUrl + "/b/copy.xlsx", "basic", null, null, null, null, null, null));
+
+        assertEquals(first.getString("md5"), second.getString("md5"));
+        assertEquals(first.getJSONArray("data"), second.getJSONArray("data"));
+        assertEquals("report.xlsx", first.getString("filename"));
+
+        // 同一内容只保存一份，文件名即内容摘要
+        File[] stored = uploadDir.listFiles();
+        assertEquals(1, stored.length);
+        assertEquals(first.getString("md5") + ".xlsx", stored[0].getName());
+
+        // 再次命中时从内存返回，不再读取磁盘缓存
+        assertTrue(resultCache.bytes() > 0);
+        for (File cached : new File(tempDir, "cache").listFiles((dir, name) -> name.endsWith(".bin"))) {
+            assertTrue(cached.delete());
+        }
+        assertEquals(second, JSON.parseObject(service.excel2Json(baseUrl + "/a/report.xlsx", "basic", null, null, null, null, null, null)));
+        assertEquals(2.0, registry.get("cache.gets").tag("cache", "excel2json.hot").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void repeatedUrlRevalidatesOrSkipsNetwork() {
+        String url = baseUrl + "/report.xlsx";
+        String first = service.excel2Json(url, "row-object", null, null, null, null, null, null);
+        assertEquals(1, downloads.get());
+
+        // 超过有效期：条件请求返回 304，不重新下载
+        assertEquals(first, service.excel2Json(url, "row-object", null, null, null, null, null, null));
+        assertEquals(2, requests.get());
+        assertEquals(1, downloads.get());
+
+        // 有效期内：不访问网络
+        ReflectionTestUtils.setField(sourceService, "FRESH_TTL", 60_000L);
+        assertEquals(first, service.excel2Json(url, "row-object", null, null, null, null, null, null));
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void hotHitsSkipSourceResolution() throws IOException {
+        SourceService source = spy(sourceService);
+        ReflectionTestUtils.setField(service, "sourceService", source);
+        String excel = SampleWorkbooks.create(tempDir).getPath();
+        String json = service.excel2Json(excel, "basic", null, null, null, null, null, null);
+        assertEquals(json, service.excel2Json(excel, "basic", null, null, null, null, null, null));
+        verify(source, times(1)).resolve(excel);
+
+        // 修改时间变化后重新计算摘要，内容未变时仍命中同一结果
+        assertTrue(new File(excel).setLastModified(System.currentTimeMillis() - 60_000));
+        assertEquals(json, service.excel2Json(excel, "basic", null, null, null, null, null, null));
+        verify(source, times(2)).resolve(excel);
+
+        // URL 在有效期内不再解析来源
+        ReflectionTestUtils.setField(source, "FRESH_TTL", 60_000L);
+        String url = baseUrl + "/report.xlsx";
+        String compact = service.excel2Json(url, "basic", null, null, null, null, null, "compact");
+        assertEquals(compact, service.excel2Json(url, "basic", null, null, null, null, null, "compact"));
+        verify(source, times(1)).resolve(url);
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void lazyAttachmentsUploadOnlyWhenResolved() throws IOException {
+        AttachmentStore attachmentStore = mock(AttachmentStore.class);
+        when(attachmentStore.put(any(), any())).thenAnswer(inv -> "https://cos/" + inv.getArgument(0));
+        ReflectionTestUtils.setField(service, "excel2JsonUtil", SampleWorkbooks.converter(tempDir, Long.MAX_VALUE, attachmentStore));
+        String excel = SampleWorkbooks.createWithPictures(tempDir).getPath();
+
+        JSONObject json = JSON.parseObject(service.excel2Json(excel, "basic", "lazy", null, null, null, null, null));
+        JSONObject cell = json.getJSONArray("data").getJSONObject(0).getJSONArray("rows").getJSONObject(0)
+                .getJSONArray("columns").getJSONObject(0);
+        assertEquals("file", cell.getString("type"));
+        String ref = cell.getString("value");
+        assertTrue(ref.startsWith("attachment:"), ref);
+        verify(attachmentStore, never()).put(any(), any());
+
+        JSONObject resolved = service.resolveAttachment(ref);
+        assertTrue(resolved.getString("url").startsWith("https://cos/attachment/"), resolved.toJSONString());
+        assertEquals(resolved, service.resolveAttachment(ref));
+        verify(attachmentStore, times(1)).put(any(), any());
+        assertEquals("Invalid attachment reference", service.resolveAttachment("https://cos/x").getString("error"));
+
+        // eager 模式使用独立的缓存，附件已上传，直接返回 URL
+        JSONObject eager = JSON.parseObject(service.excel2Json(excel, "basic", null, null, null, null, null, null));
+        assertEquals(resolved.getString("url"), eager.getJSONArray("data").getJSONObject(0).getJSONArray("rows")
+                .getJSONObject(0).getJSONArray("columns").getJSONObject(0).getString("value"));
+    }
+
+    @Test
+    void selectionsAreCachedSeparately() {
+        String url = baseUrl + "/report.xlsx";
+        JSONObject full = JSON.parseObject(service.excel2Json(url, "row-object", null, null, null, null, null, null));
+        JSONObject selected = JSON.parseObject(service.excel2Json(url, "row-object", null, null, "A", "2-3", null, null));
+        assertEquals(1, selected.getJSONObject("header").size());
+        assertEquals(2, selected.getJSONArray("data").size());
+        assertTrue(full.getJSONArray("data").size() > 2);
+        assertEquals(full, JSON.parseObject(service.excel2Json(url, "row-object", null, null, null, null, null, null)));
+
+        assertEquals("Invalid row range: 3-2", JSON.parseObject(service.excel2Json(url, "basic", null, null, null, "3-2", null, null)).getString("error"));
+        assertEquals("Sheet not found: missing", JSON.parseObject(service.excel2Json(url, "basic", null, "missing", null, null, null, null)).getString("error"));
+    }
+
+    @Test
+    void compactFormatsShareTheRowStore() {
+        String url = baseUrl + "/report.xlsx";
+        String json = service.excel2Json(url, "basic", null, null, null, null, null, null);
+        String compact = service.excel2Json(url, "basic", null, null, null, null, null, "compact");
+        ReflectionTestUtils.setField(service, "NDJSON_CHUNK_ROWS", 8);
+        String ndjson = service.excel2Json(url, "basic", null, null, null, null, null, "ndjson");
+        assertEquals(1, downloads.get());
+
+        JSONObject full = JSON.parseObject(json);
+        JSONObject sheet = JSON.parseObject(compact).getJSONArray("data").getJSONObject(0);
+        assertEquals(full.getJSONArray("data").getJSONObject(0).getJSONArray("rows").size(), sheet.getJSONArray("rows").size());
+        assertTrue(compact.length() * 2 < json.length(), compact.length() + " / " + json.length());
+
+        // 格式行 + 每个 sheet 一行列定义和若干数据块(数据 20 行 -> 3 块，Sheet2 1 行 -> 1 块) + 元数据行
+        String[] lines = ndjson.trim().split("\n");
+        assertEquals(1 + 1 + 3 + 1 + 1 + 1, lines.length);
+        assertEquals("compact", JSON.parseObject(lines[0]).getString("format"));
+        assertEquals(full.getString("md5"), JSON.parseObject(lines[lines.length - 1]).getString("md5"));
+        assertEquals(20, JSON.parseObject(lines[1]).getIntValue("rowCount"));
+        assertEquals(8, JSON.parseObject(lines[2]).getJSONArray("rows").size());
+
+        assertEquals("Unknown format: xml", JSON.parseObject(service.excel2Json(url, "basic", null, null, null, null, null, "xml")).getString("error"));
+    }
+
+    @Test
+    void concurrentRequestsShareOneConversion() throws Exception {
+        AttachmentStore attachmentStore = mock(AttachmentStore.class);
+        when(attachmentStore.put(any(), any())).thenAnswer(inv -> {
+            Thread.sleep(500);
+            return "https://cos/" + inv.getArgument(0);
+        });
+        when(attachmentStore.url(any())).thenAnswer(inv -> "https://cos/" + inv.getArgument(0));
+        Excel2JsonUtil util = spy(SampleWorkbooks.converter(tempDir, Long.MAX_VALUE, attachmentStore));
+        ReflectionTestUtils.setField(service, "excel2JsonUtil", util);
+        String excel = SampleWorkbooks.createWithPictures(tempDir).getPath();
+
+        List<Callable<String>> calls = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            calls.add(() -> service.excel2Json(excel, "basic", null, null, null, null, null, null));
+        }
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            List<Future<String>> results = executor.invokeAll(calls);
+            for (Future<String> result : results) {
+                assertEquals(results.get(0).get(), result.get());
+            }
+        }
+        verify(util, times(1)).convert(any(File.class), any(), any(), any(AttachmentMode.class), any(Selection.class));
+        verify(attachmentStore, times(2)).put(any(), any());
+    }
+}
@@ -0,0 +1,102 @@
+package link.wo.mysheetmcp.service;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.qcloud.cos.exception.CosServiceException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import link.wo.mysheetmcp.SampleWorkbooks;
+import link.wo.mysheetmcp.store.AttachmentStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UploadSchedulerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AttachmentStore attachmentStore = mock(AttachmentStore.class);
+    private UploadScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = new UploadScheduler();
+        ReflectionTestUtils.setField(scheduler, "MAX_CONCURRENCY", 2);
+        ReflectionTestUtils.setField(scheduler, "MAX_BYTES_PER_CONVERSION", 10L);
+        ReflectionTestUtils.setField(scheduler, "MAX_RETRIES", 3);
+        ReflectionTestUtils.setField(scheduler, "RETRY_BACKOFF", 1L);
+        ReflectionTestUtils.setField(scheduler, "attachmentStore", attachmentStore);
+        ReflectionTestUtils.setField(scheduler, "meterRegistry", registry);
+        scheduler.init();
+    }
+
+    private static CosServiceException serviceError(int status) {
+        CosServiceException e = new CosServiceException("error " + status);
+        e.setStatusCode(status);
+        return e;
+    }
+
+    @Test
+    void retriesTransientFailures() {
+        when(attachmentStore.put(eq("k"), any()))
+                .thenThrow(serviceError(503))
+                .thenThrow(serviceError(429))
+                .thenReturn("https://cos/k");
+
+        try (UploadScheduler.Batch batch = scheduler.newBatch()) {
+            assertEquals("https://cos/k", batch.upload("k", new byte[4]));
+        }
+        verify(attachmentStore, times(3)).put(eq("k"), any());
+        assertEquals(2.0, registry.get("attachment.upload.retries").counter().count());
+        assertEquals(0.0, registry.get("attachment.upload.failures").counter().count());
+    }
+
+    @Test
+    void clientErrorsAndBudgetAreNotRetried() {
+        when(attachmentStore.put(eq("bad"), any())).thenThrow(serviceError(403));
+
+        try (UploadScheduler.Batch batch = scheduler.newBatch()) {
+            assertThrows(CosServiceException.class, () -> batch.upload("bad", new byte[4]));
+            // 预算 10 字节：已计入 4 字节，再上传 8 字节被拒绝
+            assertThrows(UploadScheduler.BudgetExceededException.class, () -> batch.upload("big", new byte[8]));
+        }
+        verify(attachmentStore, times(1)).put(eq("bad"), any());
+        assertEquals(1.0, registry.get("attachment.upload.failures").counter().count());
+        assertEquals(1.0, registry.get("attachment.upload.rejected").counter().count());
+    }
+
+    @Test
+    void pipelinedConversionKeepsCellsOfFailedUploads(@TempDir File dir) throws Exception {
+        File excel = SampleWorkbooks.createWithPictures(dir);
+        when(attachmentStore.url(any())).thenAnswer(inv -> "https://cos/" + inv.getArgument(0));
+        when(attachmentStore.put(any(), any())).thenAnswer(inv -> {
+            byte[] data = inv.getArgument(1);
+            if (data[data.length - 1] == 2) {
+                throw serviceError(403);
+            }
+            return "https://cos/" + inv.getArgument(0);
+        });
+
+        for (long threshold : new long[]{Long.MAX_VALUE, 0}) {
+            File cache = new File(dir, "cache-" + threshold);
+            JSONObject json = SampleWorkbooks.converter(cache, threshold, attachmentStore).toJson(excel, "basic");
+            JSONArray rows = json.getJSONArray("data").getJSONObject(0).getJSONArray("rows");
+            JSONObject picture = rows.getJSONObject(0).getJSONArray("columns").getJSONObject(0);
+            assertEquals("file", picture.getString("type"));
+            assertTrue(picture.getString("value").startsWith("https://cos/attachment/"), picture.toJSONString());
+            // 上传失败的图片保留单元格原值
+            assertEquals("图片2", rows.getJSONObject(1).getJSONArray("columns").getJSONObject(0).getString("value"));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package link.wo.mysheetmcp.store;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AttachmentIndexTest {
+
+    @TempDir
+    File tempDir;
+
+    private AttachmentIndex newIndex(SimpleMeterRegistry registry) {
+        AttachmentIndex index = new AttachmentIndex();
+        ReflectionTestUtils.setField(index, "STORAGE_CACHE", tempDir.getPath());
+        ReflectionTestUtils.setField(index, "meterRegistry", registry);
+        index.init();
+        return index;
+    }
+
+    @Test
+    void sameContentIsUploadedOnce() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AttachmentIndex index = newIndex(registry);
+        AtomicInteger uploads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletableFuture<String> first = index.getOrUpload("h1", () -> {
+                release.await();
+                uploads.incrementAndGet();
+                return "https://cos/attachment/h1.png";
+            }, executor);
+            // 上传进行中的相同内容直接等待同一个结果
+            CompletableFuture<String> second = index.getOrUpload("h1", () -> {
+                uploads.incrementAndGet();
+                return "other";
+            }, executor);
+            release.countDown();
+            assertEquals("https://cos/attachment/h1.png", first.get());
+            assertEquals("https://cos/attachment/h1.png", second.get());
+            assertEquals("https://cos/attachment/h1.png", index.getOrUpload("h1", () -> "other", executor).get());
+        }
+        assertEquals(1, uploads.get());
+        assertEquals(1.0, registry.get("attachment.dedupe.hits").tag("source", "inflight").counter().count());
+        assertEquals(1.0, registry.get("attachment.dedupe.hits").tag("source", "index").counter().count());
+
+        // 重启后从索引文件恢复
+        AttachmentIndex reloaded = newIndex(new SimpleMeterRegistry());
+        assertEquals(1, reloaded.size());
+        assertEquals("https://cos/attachment/h1.png", reloaded.getOrUpload("h1", () -> "other", Runnable::run).get());
+    }
+}
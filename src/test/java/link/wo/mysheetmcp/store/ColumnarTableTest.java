@@ -0,0 +1,61 @@
+package link.wo.mysheetmcp.store;
+
+import link.wo.mysheetmcp.SampleWorkbooks;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnarTableTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void rowsRoundTripThroughColumns() throws IOException {
+        File excel = SampleWorkbooks.create(tempDir);
+        for (String type : new String[]{"basic", "row-object"}) {
+            RowStore store = SampleWorkbooks.store(tempDir, excel, type);
+            ColumnarTable table = ColumnarTable.build(store);
+            assertEquals(store.getRowCount(), table.getRowCount());
+            assertEquals(store.readHeader(), table.getHeader());
+            for (int i = 0; i < store.getRowCount(); i++) {
+                assertEquals(store.readRow(i).toJSONString(), table.readRow(i).toJSONString(), type + " row " + i);
+            }
+        }
+    }
+
+    @Test
+    void columnsAreStoredByType() throws IOException {
+        File excel = SampleWorkbooks.create(tempDir);
+        ColumnarTable.Table sheet = ColumnarTable.build(SampleWorkbooks.store(tempDir, excel, "basic")).getTables().get(0);
+        assertEquals("数据", sheet.getName());
+
+        // 第 2 行(下标 1)：名称 项目1，数量 1.5，日期 2025-05-18，金额为货币文本
+        ColumnarTable.Column quantity = sheet.column("B");
+        assertTrue(quantity.isNumber(1));
+        assertEquals(1.5, quantity.number(1));
+        assertFalse(quantity.isNumber(0));
+        assertEquals("text", quantity.type(0));
+
+        ColumnarTable.Column date = sheet.column("C");
+        assertTrue(date.isDate(1));
+        assertEquals(LocalDate.of(2025, 5, 18).toEpochDay(), date.epochDay(1));
+
+        ColumnarTable.Column flag = sheet.column("F");
+        assertFalse(flag.isPresent(0));
+        assertEquals(Boolean.FALSE, flag.value(1));
+
+        // 字典编码：相同的文本共享一个字典项
+        ColumnarTable.Column empty = sheet.column("G");
+        assertEquals(1, empty.dictionarySize());
+        assertEquals(0, empty.textCode(1));
+        assertEquals(3, sheet.column("A").rowspan(2));
+    }
+}
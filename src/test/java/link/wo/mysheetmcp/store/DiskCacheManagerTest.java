@@ -0,0 +1,186 @@
+package link.wo.mysheetmcp.store;
+
+import cn.hutool.core.io.FileUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import link.wo.mysheetmcp.SampleWorkbooks;
+import link.wo.mysheetmcp.util.Excel2JsonUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DiskCacheManagerTest {
+
+    @TempDir
+    File tempDir;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private DiskCacheManager manager;
+
+    @AfterEach
+    void tearDown() {
+        manager.shutdown();
+    }
+
+    private File write(File dir, String name, long lastModified) {
+        File file = FileUtil.writeBytes(new byte[100], new File(dir, name));
+        file.setLastModified(lastModified);
+        return file;
+    }
+
+    private void newManager(File cacheDir, File fileDir, long quota, long minIdle, SessionStore sessionStore,
+                            DeferredAttachmentIndex deferredIndex) {
+        manager = new DiskCacheManager();
+        ReflectionTestUtils.setField(manager, "STORAGE_CACHE", cacheDir.getPath());
+        ReflectionTestUtils.setField(manager, "STORAGE_FILE", fileDir.getPath());
+        ReflectionTestUtils.setField(manager, "QUOTA", quota);
+        ReflectionTestUtils.setField(manager, "EVICT_INTERVAL", 60_000L);
+        ReflectionTestUtils.setField(manager, "EVICT_MIN_IDLE", minIdle);
+        ReflectionTestUtils.setField(manager, "sessionStore", sessionStore);
+        ReflectionTestUtils.setField(manager, "deferredAttachmentIndex", deferredIndex);
+        ReflectionTestUtils.setField(manager, "meterRegistry", registry);
+        manager.init();
+    }
+
+    /**
+     * 内存中最多保留一个会话
+     */
+    private SessionStore newSessionStore(File cacheDir, RowStoreRegistry rowStoreRegistry) {
+        SessionStore sessionStore = new SessionStore();
+        ReflectionTestUtils.setField(sessionStore, "rowStoreRegistry", rowStoreRegistry);
+        ReflectionTestUtils.setField(sessionStore, "MEMORY_BUDGET", Long.MAX_VALUE);
+        ReflectionTestUtils.setField(sessionStore, "MAX_IN_MEMORY", 1);
+        ReflectionTestUtils.setField(sessionStore, "TTL", 60_000L);
+        ReflectionTestUtils.setField(sessionStore, "STORAGE_CACHE", cacheDir.getPath());
+        ReflectionTestUtils.setField(sessionStore, "meterRegistry", registry);
+        sessionStore.init();
+        return sessionStore;
+    }
+
+    private DeferredAttachmentIndex newDeferredIndex(File cacheDir) {
+        DeferredAttachmentIndex deferredIndex = new DeferredAttachmentIndex();
+        ReflectionTestUtils.setField(deferredIndex, "STORAGE_CACHE", cacheDir.getPath());
+        ReflectionTestUtils.setField(deferredIndex, "DEFERRED_PIN", 3_600_000L);
+        ReflectionTestUtils.setField(deferredIndex, "meterRegistry", registry);
+        deferredIndex.init();
+        return deferredIndex;
+    }
+
+    @Test
+    void leastRecentlyUsedFilesAreEvictedUnlessPinned() {
+        File cacheDir = new File(tempDir, "cache");
+        File fileDir = new File(tempDir, "file");
+        long now = System.currentTimeMillis();
+        File oldest = write(fileDir, "a.xlsx", now - 50_000);
+        File pinned = write(cacheDir, "a_basic.bin", now - 40_000);
+        File older = write(cacheDir, "b_basic.bin", now - 30_000);
+        File recent = write(fileDir, "b.xlsx", now - 20_000);
+        write(cacheDir, "url.idx", now - 60_000);
+        write(fileDir, "c.xlsx.download", now - 60_000);
+
+        SessionStore sessionStore = mock(SessionStore.class);
+        when(sessionStore.storePaths()).thenReturn(Set.of(pinned.getAbsolutePath()));
+        newManager(cacheDir, fileDir, 250L, 10_000L, sessionStore, mock(DeferredAttachmentIndex.class));
+        // 只管理行存储和下载文件，启动扫描后立即淘汰
+        manager.evict();
+
+        // 400 字节降到 225 以内：跳过被会话使用的行存储，按访问时间删除两个最旧的文件
+        assertFalse(oldest.exists());
+        assertTrue(pinned.exists());
+        assertFalse(older.exists());
+        assertTrue(recent.exists());
+        assertEquals(200, manager.size());
+        assertEquals(1.0, registry.get("disk.cache.evictions").tag("area", "file").counter().count());
+        assertEquals(1.0, registry.get("disk.cache.evictions").tag("area", "cache").counter().count());
+
+        // 新写入的文件刚被访问过，不会被淘汰
+        File added = write(fileDir, "d.xlsx", now);
+        manager.hit(recent);
+        manager.add(added);
+        manager.evict();
+        assertTrue(added.exists());
+        assertTrue(recent.exists());
+        assertEquals(300, manager.size());
+        assertEquals(1.0, registry.get("disk.cache.hits").tag("area", "file").counter().count());
+    }
+
+    @Test
+    void spilledSessionsAndDeferredAttachmentSourcesArePinned() throws IOException {
+        File cacheDir = new File(tempDir, "cache");
+        File fileDir = new File(tempDir, "file");
+        fileDir.mkdirs();
+        File excel = SampleWorkbooks.create(fileDir);
+        File other = write(fileDir, "other.xlsx", System.currentTimeMillis() - 60_000);
+        RowStore basic = SampleWorkbooks.store(cacheDir, excel, "basic");
+        RowStore rowObject = SampleWorkbooks.store(cacheDir, excel, "row-object");
+
+        RowStoreRegistry rowStoreRegistry = new RowStoreRegistry();
+        ReflectionTestUtils.setField(rowStoreRegistry, "meterRegistry", registry);
+        rowStoreRegistry.init();
+        SessionStore sessionStore = newSessionStore(cacheDir, rowStoreRegistry);
+        // 第二个会话创建后第一个会话写入磁盘
+        SessionStore.Session spilled = sessionStore.create(basic, 0);
+        sessionStore.create(rowObject, 0);
+        assertEquals(1, sessionStore.size());
+
+        DeferredAttachmentIndex deferredIndex = newDeferredIndex(cacheDir);
+        deferredIndex.register("0123456789abcdef0123456789abcdef", excel);
+
+        // 配额为 1 字节：只有未被引用的文件可以淘汰
+        newManager(cacheDir, fileDir, 1L, -1L, sessionStore, deferredIndex);
+        manager.evict();
+        assertFalse(other.exists());
+        assertTrue(basic.getFile().exists());
+        assertTrue(rowObject.getFile().exists());
+        assertTrue(excel.exists());
+        assertEquals(deferredIndex.source("0123456789abcdef0123456789abcdef"), excel.getAbsoluteFile());
+
+        // 磁盘上的会话重新加载后仍可读取
+        SessionStore.Session reloaded = sessionStore.get(spilled.getSessionId());
+        assertNotNull(reloaded);
+        assertEquals(basic.readRow(0), sessionStore.open(reloaded).readRow(0));
+
+        // 重启后从会话文件恢复引用
+        SessionStore restarted = newSessionStore(cacheDir, rowStoreRegistry);
+        assertEquals(Set.of(rowObject.getFile().getAbsolutePath()), restarted.storePaths());
+        sessionStore.shutdown();
+        restarted.shutdown();
+    }
+
+    @Test
+    void oldLazySourcesAreEvicted() throws IOException {
+        File cacheDir = new File(tempDir, "cache");
+        File fileDir = new File(tempDir, "file");
+        fileDir.mkdirs();
+        File excel = SampleWorkbooks.createWithPictures(fileDir);
+        Excel2JsonUtil util = SampleWorkbooks.converter(cacheDir, Long.MAX_VALUE);
+        String hash = "0123456789abcdef0123456789abcdef";
+        newDeferredIndex(cacheDir).register(hash, excel);
+
+        // 重启后来源文件已超过 deferred-pin 未使用
+        assertTrue(excel.setLastModified(System.currentTimeMillis() - 7_200_000));
+        DeferredAttachmentIndex deferredIndex = newDeferredIndex(cacheDir);
+        ReflectionTestUtils.setField(util, "deferredAttachmentIndex", deferredIndex);
+        assertEquals(Set.of(), deferredIndex.sourcePaths());
+
+        newManager(cacheDir, fileDir, 1L, -1L, mock(SessionStore.class), deferredIndex);
+        manager.evict();
+        assertFalse(excel.exists());
+        // 条目随来源一起移除，重启后也不再加载
+        assertNull(deferredIndex.source(hash));
+        assertNull(newDeferredIndex(cacheDir).source(hash));
+        assertNull(util.resolveAttachment(hash));
+    }
+}
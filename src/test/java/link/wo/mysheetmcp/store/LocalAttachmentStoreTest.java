@@ -0,0 +1,37 @@
+package link.wo.mysheetmcp.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalAttachmentStoreTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void storedFilesAreServedOverHttp() {
+        LocalAttachmentStore store = new LocalAttachmentStore();
+        ReflectionTestUtils.setField(store, "LOCAL_DIR", tempDir.getPath());
+        ReflectionTestUtils.setField(store, "BASE_URL", "http://localhost:8080/files/");
+
+        byte[] data = "hello".getBytes(StandardCharsets.UTF_8);
+        String url = store.put("attachment/abc.txt", data);
+        assertEquals("http://localhost:8080/files/attachment/abc.txt", url);
+        assertTrue(new File(tempDir, "attachment/abc.txt").exists());
+
+        WebTestClient client = WebTestClient.bindToRouterFunction(store.localAttachmentRoutes()).build();
+        client.get().uri("/files/attachment/abc.txt").exchange()
+                .expectStatus().isOk()
+                .expectBody(byte[].class).isEqualTo(data);
+        client.get().uri("/files/attachment/missing.txt").exchange()
+                .expectStatus().isNotFound();
+    }
+}
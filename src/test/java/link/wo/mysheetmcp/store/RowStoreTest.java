@@ -0,0 +1,163 @@
+package link.wo.mysheetmcp.store;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import link.wo.mysheetmcp.SampleWorkbooks;
+import link.wo.mysheetmcp.util.Excel2JsonUtil;
+import link.wo.mysheetmcp.util.JsonStreamSink;
+import link.wo.mysheetmcp.util.JsonTreeSink;
+import link.wo.mysheetmcp.util.TeeSink;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RowStoreTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void rowsMatchConvertedJson() throws IOException {
+        File excel = SampleWorkbooks.create(tempDir);
+        Excel2JsonUtil util = SampleWorkbooks.converter(tempDir, Long.MAX_VALUE);
+
+        for (String type : new String[]{"basic", "row-object"}) {
+            boolean rowObject = Excel2JsonUtil.isRowObject(type);
+            File storeFile = new File(tempDir, type + ".bin");
+            JsonTreeSink tree = new JsonTreeSink(rowObject);
+            try (RowStore.Writer writer = RowStore.create(storeFile, rowObject)) {
+                util.convert(excel, type, new TeeSink(tree, writer));
+                writer.setMeta("sample.xlsx", "md5");
+                writer.commit();
+            }
+            JSONObject json = tree.getJson();
+            json.put("filename", "sample.xlsx");
+            json.put("md5", "md5");
+
+            JSONArray expectedRows = new JSONArray();
+            if (rowObject) {
+                expectedRows.addAll(json.getJSONArray("data"));
+            } else {
+                JSONArray sheets = json.getJSONArray("data");
+                for (int i = 0; i < sheets.size(); i++) {
+                    expectedRows.addAll(sheets.getJSONObject(i).getJSONArray("rows"));
+                }
+            }
+
+            RowStore store = RowStore.open(storeFile);
+            assertEquals(expectedRows.size(), store.getRowCount(), type);
+            for (int i = 0; i < store.getRowCount(); i++) {
+                assertEquals(expectedRows.getJSONObject(i).toJSONString(), store.readRow(i).toJSONString(), type + " row " + i);
+            }
+            if (rowObject) {
+                assertEquals(json.getJSONObject("header").toJSONString(), store.readHeader().toJSONString());
+            } else {
+                assertNull(store.readHeader());
+            }
+            assertEquals(json.toJSONString(), store.toJson().toJSONString(), type);
+        }
+    }
+
+    @Test
+    void legacyJsonReplaysIntoSameStore() throws IOException {
+        File excel = SampleWorkbooks.create(tempDir);
+        Excel2JsonUtil util = SampleWorkbooks.converter(tempDir, Long.MAX_VALUE);
+
+        for (String type : new String[]{"basic", "row-object"}) {
+            boolean rowObject = Excel2JsonUtil.isRowObject(type);
+            // 旧版本缓存的 .json 文本，经过一次序列化/解析
+            JSONObject legacy = JSON.parseObject(util.toJson(excel, type).toJSONString());
+            File storeFile = new File(tempDir, type + "-legacy.bin");
+            try (RowStore.Writer writer = RowStore.create(storeFile, rowObject)) {
+                JsonTreeSink.replay(legacy, rowObject, writer);
+                writer.commit();
+            }
+            legacy.put("filename", null);
+            legacy.put("md5", null);
+            assertEquals(legacy.toJSONString(), RowStore.open(storeFile).toJson().toJSONString(), type);
+        }
+    }
+
+    @Test
+    void segmentedMappingReadsAcrossBoundaries() throws IOException {
+        for (String type : new String[]{"basic", "row-object"}) {
+            File storeFile = SampleWorkbooks.store(tempDir, SampleWorkbooks.create(tempDir), type).getFile();
+            RowStore whole = RowStore.open(storeFile);
+            // 分段远小于一行，头部、偏移表、行和元数据都跨段读取
+            for (int segmentSize : new int[]{7, 64, 4096}) {
+                RowStore segmented = RowStore.open(storeFile, segmentSize);
+                assertEquals(whole.toJson().toJSONString(), segmented.toJson().toJSONString(), type + " " + segmentSize);
+                assertEquals(whole.readRows(3, 5, Long.MAX_VALUE), segmented.readRows(3, 5, Long.MAX_VALUE));
+                assertEquals(whole.getSheets(), segmented.getSheets());
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                whole.writeJson(new JsonStreamSink(expected, whole.isRowObject()));
+                ByteArrayOutputStream actual = new ByteArrayOutputStream();
+                segmented.writeJson(new JsonStreamSink(actual, segmented.isRowObject()));
+                assertEquals(expected.toString(StandardCharsets.UTF_8), actual.toString(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    void batchReadRespectsBudget() throws IOException {
+        File excel = SampleWorkbooks.create(tempDir);
+        Excel2JsonUtil util = SampleWorkbooks.converter(tempDir, Long.MAX_VALUE);
+        File storeFile = new File(tempDir, "basic.bin");
+        try (RowStore.Writer writer = RowStore.create(storeFile, false)) {
+            util.convert(excel, "basic", writer);
+            writer.commit();
+        }
+        RowStore store = RowStore.open(storeFile);
+
+        JSONArray all = store.readRows(0, Integer.MAX_VALUE, Long.MAX_VALUE);
+        assertEquals(store.getRowCount(), all.size());
+        for (int i = 0; i < all.size(); i++) {
+            assertEquals(store.readRow(i).toJSONString(), all.getJSONObject(i).toJSONString());
+        }
+
+        JSONArray range = store.readRows(5, 3, Long.MAX_VALUE);
+        assertEquals(3, range.size());
+        assertEquals(store.readRow(5).toJSONString(), range.getJSONObject(0).toJSONString());
+
+        // 字节预算不足时至少返回一行
+        assertEquals(1, store.readRows(0, 10, 1).size());
+        assertEquals(0, store.readRows(store.getRowCount(), 10, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void streamedJsonMatchesTree() throws IOException {
+        File excel = SampleWorkbooks.create(tempDir);
+        Excel2JsonUtil util = SampleWorkbooks.converter(tempDir, Long.MAX_VALUE);
+
+        for (String type : new String[]{"basic", "row-object"}) {
+            boolean rowObject = Excel2JsonUtil.isRowObject(type);
+            File storeFile = new File(tempDir, type + "-stream.bin");
+            JsonTreeSink tree = new JsonTreeSink(rowObject);
+            ByteArrayOutputStream converted = new ByteArrayOutputStream();
+            JsonStreamSink stream = new JsonStreamSink(converted, rowObject);
+            try (RowStore.Writer writer = RowStore.create(storeFile, rowObject)) {
+                util.convert(excel, type, new TeeSink(tree, stream, writer));
+                writer.setMeta("sample.xlsx", "md5");
+                writer.commit();
+            }
+            stream.finish("sample.xlsx", "md5");
+            JSONObject json = tree.getJson();
+            json.put("filename", "sample.xlsx");
+            json.put("md5", "md5");
+            assertEquals(json.toJSONString(), converted.toString(StandardCharsets.UTF_8), type);
+
+            // 缓存命中时从二进制缓存逐行写出
+            ByteArrayOutputStream cached = new ByteArrayOutputStream();
+            RowStore.open(storeFile).writeJson(new JsonStreamSink(cached, rowObject));
+            assertEquals(json.toJSONString(), cached.toString(StandardCharsets.UTF_8), type);
+        }
+    }
+}
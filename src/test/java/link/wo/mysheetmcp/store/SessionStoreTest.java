@@ -0,0 +1,119 @@
+package link.wo.mysheetmcp.store;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import link.wo.mysheetmcp.SampleWorkbooks;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SessionStoreTest {
+
+    @TempDir
+    File tempDir;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private RowStoreRegistry rowStoreRegistry;
+    private SessionStore sessionStore;
+
+    @AfterEach
+    void tearDown() {
+        sessionStore.shutdown();
+    }
+
+    private void newSessionStore(long budget, int maxInMemory) {
+        rowStoreRegistry = new RowStoreRegistry();
+        ReflectionTestUtils.setField(rowStoreRegistry, "meterRegistry", registry);
+        rowStoreRegistry.init();
+        sessionStore = new SessionStore();
+        ReflectionTestUtils.setField(sessionStore, "rowStoreRegistry", rowStoreRegistry);
+        ReflectionTestUtils.setField(sessionStore, "MEMORY_BUDGET", budget);
+        ReflectionTestUtils.setField(sessionStore, "MAX_IN_MEMORY", maxInMemory);
+        ReflectionTestUtils.setField(sessionStore, "TTL", 60_000L);
+        ReflectionTestUtils.setField(sessionStore, "STORAGE_CACHE", tempDir.getPath());
+        ReflectionTestUtils.setField(sessionStore, "meterRegistry", registry);
+        sessionStore.init();
+    }
+
+    @Test
+    void coldSessionsAreReleasedSpilledAndReloaded() throws IOException {
+        RowStore basic = SampleWorkbooks.store(tempDir, SampleWorkbooks.create(tempDir), "basic");
+        RowStore rowObject = SampleWorkbooks.store(tempDir, SampleWorkbooks.create(tempDir), "row-object");
+        newSessionStore(basic.getFile().length() + rowObject.getFile().length() - 1, 2);
+
+        SessionStore.Session first = sessionStore.create(basic, 3);
+        SessionStore.Session second = sessionStore.create(rowObject, 0);
+        // 超出预算：释放最久未访问的会话打开的行存储
+        assertEquals(rowObject.getFile().length(), rowStoreRegistry.bytes());
+        assertEquals(1.0, registry.get("session.evictions").tag("type", "release").counter().count());
+        assertEquals(basic.readRow(3), sessionStore.open(first).readRow(3));
+        assertSame(sessionStore.open(first), sessionStore.open(first));
+
+        // 超出会话数上限：最冷的会话写入磁盘，再次访问时重新加载
+        SessionStore.Session third = sessionStore.create(basic, 0);
+        assertEquals(2, sessionStore.size());
+        assertEquals(1.0, registry.get("session.evictions").tag("type", "spill").counter().count());
+        SessionStore.Session reloaded = sessionStore.get(second.getSessionId());
+        assertNotNull(reloaded);
+        assertEquals(rowObject.getRowCount(), reloaded.getRowCount());
+        assertEquals(rowObject.readRow(0), sessionStore.open(reloaded).readRow(0));
+        assertEquals(1.0, registry.get("session.reloads").counter().count());
+        assertEquals(2, sessionStore.size());
+
+        // 过期会话不再返回
+        SessionStore.Session current = sessionStore.get(third.getSessionId());
+        current.setLastAccess(System.currentTimeMillis() - 60_000L);
+        assertNull(sessionStore.get(third.getSessionId()));
+        assertNull(sessionStore.get("unknown"));
+    }
+
+    @Test
+    void sessionsOfSameFileShareOneStore() throws IOException {
+        RowStore basic = SampleWorkbooks.store(tempDir, SampleWorkbooks.create(tempDir), "basic");
+        newSessionStore(Long.MAX_VALUE, 100);
+
+        SessionStore.Session first = sessionStore.create(basic, 0);
+        SessionStore.Session second = sessionStore.create(RowStore.open(basic.getFile()), 5);
+        assertSame(sessionStore.open(first), sessionStore.open(second));
+        assertEquals(1, rowStoreRegistry.size());
+        assertEquals(basic.getFile().length(), rowStoreRegistry.bytes());
+        assertEquals(0, sessionStore.get(first.getSessionId()).getCurrentIndex());
+        assertEquals(5, sessionStore.get(second.getSessionId()).getCurrentIndex());
+
+        // 最后一个会话过期后释放行存储
+        first.setLastAccess(0);
+        sessionStore.prune();
+        assertEquals(1, rowStoreRegistry.size());
+        second.setLastAccess(0);
+        sessionStore.prune();
+        assertEquals(0, rowStoreRegistry.size());
+        assertEquals(0, rowStoreRegistry.bytes());
+    }
+
+    @Test
+    void columnarTableIsSharedAndReleasedWithStore() throws IOException {
+        RowStore basic = SampleWorkbooks.store(tempDir, SampleWorkbooks.create(tempDir), "basic");
+        newSessionStore(Long.MAX_VALUE, 100);
+
+        SessionStore.Session first = sessionStore.create(basic, 0);
+        SessionStore.Session second = sessionStore.create(RowStore.open(basic.getFile()), 0);
+        ColumnarTable table = sessionStore.table(first);
+        assertSame(table, sessionStore.table(second));
+        assertEquals(1.0, registry.get("rowstore.table.builds").counter().count());
+        assertEquals(basic.getFile().length() + table.bytes(), rowStoreRegistry.bytes());
+
+        first.setLastAccess(0);
+        second.setLastAccess(0);
+        sessionStore.prune();
+        assertEquals(0, rowStoreRegistry.bytes());
+        assertEquals(0, rowStoreRegistry.tableBytes());
+    }
+}
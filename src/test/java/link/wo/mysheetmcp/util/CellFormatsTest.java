@@ -0,0 +1,85 @@
+package link.wo.mysheetmcp.util;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CellFormatsTest {
+
+    private static final String[] FORMATS = {"General", "yyyy-mm-dd", "\"￥\"#,##0.00", "[$-409]m/d/yy", "$#,##0.00;[Red]-$#,##0.00",
+            "0.00%", "#,##0.00 €", "h:mm:ss"};
+    private static final double[] VALUES = {45000.5, 1, 60, 61, -3, 0, 2958465.99, 1234567.891};
+
+    @Test
+    void cachedClassificationMatchesPerCellChecks() throws IOException {
+        for (Workbook workbook : new Workbook[]{new XSSFWorkbook(), new HSSFWorkbook()}) {
+            try (workbook) {
+                Sheet sheet = workbook.createSheet();
+                CellStyle[] styles = new CellStyle[FORMATS.length];
+                for (int i = 0; i < FORMATS.length; i++) {
+                    styles[i] = workbook.createCellStyle();
+                    styles[i].setDataFormat(workbook.createDataFormat().getFormat(FORMATS[i]));
+                }
+                CellFormats formats = new CellFormats();
+                for (int r = 0; r < VALUES.length; r++) {
+                    Row row = sheet.createRow(r);
+                    for (int c = 0; c < styles.length; c++) {
+                        Cell cell = row.createCell(c);
+                        cell.setCellValue(VALUES[r]);
+                        cell.setCellStyle(styles[c]);
+                        assertEquals(expected(cell), actual(formats, cell), workbook.getClass().getSimpleName() + " " + FORMATS[c] + " " + VALUES[r]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void columnNamesMatchExcel() {
+        for (int col = 0; col < 20000; col++) {
+            StringBuilder name = new StringBuilder();
+            for (int c = col; c >= 0; c = c / 26 - 1) {
+                name.insert(0, (char) ('A' + c % 26));
+            }
+            assertEquals(name.toString(), Excel2JsonUtil.getExcelColumnName(col));
+        }
+        assertEquals("XFD", Excel2JsonUtil.getExcelColumnName(16383));
+    }
+
+    /**
+     * 按单元格逐个判断的原始实现
+     */
+    private static String expected(Cell cell) {
+        if (DateUtil.isCellDateFormatted(cell)) {
+            return "date:" + new SimpleDateFormat("yyyy-MM-dd").format(cell.getDateCellValue());
+        }
+        String format = cell.getCellStyle().getDataFormatString();
+        if (format.contains("￥") || format.contains("$") || format.contains("€") || format.contains("£")) {
+            return "money:" + new DataFormatter().formatCellValue(cell);
+        }
+        return "number:" + cell.getNumericCellValue();
+    }
+
+    private static String actual(CellFormats formats, Cell cell) {
+        int kind = formats.kind(cell.getCellStyle());
+        if ((kind & CellFormats.DATE) != 0 && DateUtil.isValidExcelDate(cell.getNumericCellValue())) {
+            return "date:" + CellFormats.formatDate(cell.getLocalDateTimeCellValue());
+        }
+        if ((kind & CellFormats.CURRENCY) != 0) {
+            return "money:" + formats.money(cell);
+        }
+        return "number:" + cell.getNumericCellValue();
+    }
+}
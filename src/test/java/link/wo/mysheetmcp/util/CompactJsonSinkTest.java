@@ -0,0 +1,216 @@
+package link.wo.mysheetmcp.util;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import link.wo.mysheetmcp.SampleWorkbooks;
+import link.wo.mysheetmcp.store.RowStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 紧凑格式可以还原出与默认格式相同的单元格(类型、值、合并跨度)
+ */
+class CompactJsonSinkTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void basicRoundTrip() throws IOException {
+        RowStore store = SampleWorkbooks.store(tempDir, SampleWorkbooks.create(tempDir), "basic");
+        JSONObject compact = JSON.parseObject(write(store, 0));
+        JSONArray sheets = compact.getJSONArray("data");
+        JSONArray expected = store.toJson().getJSONArray("data");
+        assertEquals(expected.size(), sheets.size());
+        for (int s = 0; s < sheets.size(); s++) {
+            JSONObject sheet = sheets.getJSONObject(s);
+            assertEquals(expected.getJSONObject(s).getString("sheet"), sheet.getString("sheet"));
+            assertEquals(expected.getJSONObject(s).getJSONArray("rows").toJSONString(), expand(sheet, false).toJSONString());
+        }
+        assertEquals(store.getMd5(), compact.getString("md5"));
+        assertEquals(JSONArray.of("E1:E2", "A3:A5", "B6:C9"), sheets.getJSONObject(0).getJSONArray("merges"));
+
+        // 解析时直接写出与从行存储回放的结果相同
+        ByteArrayOutputStream direct = new ByteArrayOutputStream();
+        CompactJsonSink sink = new CompactJsonSink(direct, false, 0);
+        SampleWorkbooks.converter(tempDir, Long.MAX_VALUE).convert(SampleWorkbooks.create(tempDir), "basic", sink);
+        sink.finish(store.getFilename(), store.getMd5());
+        assertEquals(write(store, 0), direct.toString(StandardCharsets.UTF_8));
+        // 数量列的表头为文本，其余为数字
+        JSONObject quantity = sheets.getJSONObject(0).getJSONArray("columns").getJSONObject(1);
+        assertEquals("number", quantity.getString("type"));
+        assertEquals(JSONObject.of("text", "1"), quantity.getJSONObject("types"));
+    }
+
+    @Test
+    void rowObjectRoundTripInChunks() throws IOException {
+        RowStore store = SampleWorkbooks.store(tempDir, SampleWorkbooks.create(tempDir), "row-object");
+        String[] lines = write(store, 6).trim().split("\n");
+
+        JSONObject schema = JSON.parseObject(lines[1]);
+        JSONArray rows = new JSONArray();
+        assertEquals(1 + 1 + 4 + 1, lines.length);
+        assertEquals(JSONObject.of("filename", store.getFilename(), "md5", "md5"), JSON.parseObject(lines[lines.length - 1]));
+        for (int i = 2; i < lines.length - 1; i++) {
+            rows.addAll(JSON.parseObject(lines[i]).getJSONArray("rows"));
+        }
+        schema.put("rows", rows);
+        assertEquals(store.toJson().getJSONArray("data").toJSONString(), expand(schema, true).toJSONString());
+        assertEquals(store.readHeader().getString("A1"), schema.getJSONArray("columns").getJSONObject(0).getString("name"));
+    }
+
+    @Test
+    void tiledMergesAreRecordedOnce() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompactJsonSink sink = new CompactJsonSink(out, false, 0);
+        JSONArray expected = new JSONArray();
+        sink.startSheet("Sheet1");
+        // 整个 sheet 由 2x2 的合并区域铺满，每个单元格都带有所在区域的跨度
+        for (int row = 1; row <= 400; row++) {
+            sink.startRow(row);
+            for (int col = 0; col < 40; col++) {
+                String name = Excel2JsonUtil.getExcelColumnName(col);
+                sink.cell(name + row, "text", name + row, 2, 2);
+                if (row % 2 == 1 && col % 2 == 0) {
+                    expected.add(name + row + ":" + Excel2JsonUtil.getExcelColumnName(col + 1) + (row + 1));
+                }
+            }
+            sink.endRow();
+        }
+        sink.endSheet();
+        sink.finish("tiles.xlsx", "md5");
+        JSONObject sheet = JSON.parseObject(out.toString(StandardCharsets.UTF_8)).getJSONArray("data").getJSONObject(0);
+        assertEquals(expected, sheet.getJSONArray("merges"));
+    }
+
+    @Test
+    void mergesKeepTheirOriginWhenSelectionStartsInside() throws IOException {
+        File excel = SampleWorkbooks.create(tempDir);
+        Object[][] cases = {
+                {Selection.parse("数据", "A", "4-6", null), JSONArray.of("A3:A5")},
+                {Selection.parse("数据", "C", null, null), JSONArray.of("B6:C9")},
+        };
+        for (long threshold : new long[]{Long.MAX_VALUE, 0}) {
+            for (int i = 0; i < cases.length; i++) {
+                Object[] c = cases[i];
+                ByteArrayOutputStream direct = new ByteArrayOutputStream();
+                CompactJsonSink sink = new CompactJsonSink(direct, false, 0);
+                RowStore store;
+                try (RowStore.Writer writer = RowStore.create(new File(tempDir, "selection." + threshold + "." + i + ".bin"), false)) {
+                    SampleWorkbooks.converter(tempDir, threshold).convert(excel, "basic", new TeeSink(sink, writer),
+                            AttachmentMode.LAZY, (Selection) c[0]);
+                    writer.setMeta(excel.getName(), "md5");
+                    store = writer.commit();
+                }
+                sink.finish(excel.getName(), "md5");
+                JSONObject sheet = JSON.parseObject(direct.toString(StandardCharsets.UTF_8)).getJSONArray("data").getJSONObject(0);
+                assertEquals(c[1], sheet.getJSONArray("merges"), "threshold " + threshold);
+                // 从行存储回放时区域同样完整
+                assertEquals(direct.toString(StandardCharsets.UTF_8), write(store, 0));
+            }
+        }
+    }
+
+    private static String write(RowStore store, int chunkRows) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompactJsonSink sink = new CompactJsonSink(out, store.isRowObject(), chunkRows);
+        store.replay(sink);
+        sink.finish(store.getFilename(), store.getMd5());
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 按列定义把值数组还原为默认格式的行
+     */
+    private static JSONArray expand(JSONObject sheet, boolean rowObject) {
+        JSONArray columns = sheet.getJSONArray("columns");
+        List<int[]> merges = new ArrayList<>();
+        JSONArray ranges = sheet.getJSONArray("merges");
+        for (int i = 0; ranges != null && i < ranges.size(); i++) {
+            String[] range = ranges.getString(i).split(":");
+            int[] from = cell(range[0]);
+            int[] to = cell(range[1]);
+            merges.add(new int[]{from[0], from[1], to[0], to[1]});
+        }
+        JSONArray result = new JSONArray();
+        for (Object r : sheet.getJSONArray("rows")) {
+            JSONArray values = (JSONArray) r;
+            int rowIndex = values.getIntValue(0);
+            JSONObject row = new JSONObject();
+            row.put(rowObject ? "index" : "rowIndex", rowIndex);
+            JSONArray cells = new JSONArray();
+            for (int c = 1; c < values.size(); c++) {
+                if (values.get(c) == null) {
+                    continue;
+                }
+                JSONObject column = columns.getJSONObject(c - 1);
+                String key = column.getString("key");
+                JSONObject cell = new JSONObject();
+                if (!rowObject) {
+                    cell.put("colIndex", key);
+                }
+                cell.put("type", typeOf(column, rowIndex));
+                cell.put("value", values.get(c));
+                int col = cell(key + rowIndex)[1];
+                for (int[] merge : merges) {
+                    if (rowIndex >= merge[0] && rowIndex <= merge[2] && col >= merge[1] && col <= merge[3]) {
+                        if (merge[2] > merge[0]) {
+                            cell.put("rowspan", merge[2] - merge[0] + 1);
+                        }
+                        if (merge[3] > merge[1]) {
+                            cell.put("colspan", merge[3] - merge[1] + 1);
+                        }
+                    }
+                }
+                if (rowObject) {
+                    row.put(key, cell);
+                } else {
+                    cells.add(cell);
+                }
+            }
+            if (!rowObject) {
+                row.put("columns", cells);
+            }
+            result.add(row);
+        }
+        return result;
+    }
+
+    private static String typeOf(JSONObject column, int rowIndex) {
+        JSONObject types = column.getJSONObject("types");
+        for (int i = 0; types != null && i < types.size(); i++) {
+            String type = (String) types.keySet().toArray()[i];
+            for (String range : types.getString(type).split(",")) {
+                String[] bounds = range.split("-");
+                int from = Integer.parseInt(bounds[0]);
+                int to = bounds.length > 1 ? Integer.parseInt(bounds[1]) : from;
+                if (rowIndex >= from && rowIndex <= to) {
+                    return type;
+                }
+            }
+        }
+        return column.getString("type");
+    }
+
+    /**
+     * A1 引用 -> {行号, 列序号}
+     */
+    private static int[] cell(String ref) {
+        int col = 0;
+        int i = 0;
+        while (Character.isLetter(ref.charAt(i))) {
+            col = col * 26 + (ref.charAt(i++) - 'A' + 1);
+        }
+        return new int[]{Integer.parseInt(ref.substring(i)), col};
+    }
+}
@@ -0,0 +1,39 @@
+package link.wo.mysheetmcp.util;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class MergedRegionIndexTest {
+
+    @Test
+    void findMatchesLinearScan() {
+        List<CellRangeAddress> regions = new ArrayList<>();
+        // 互不重叠的区域：每 3 行一个纵向合并，每 5 行一个横向合并
+        for (int r = 0; r < 300; r += 3) {
+            regions.add(new CellRangeAddress(r, r + 1, 0, 0));
+        }
+        for (int r = 0; r < 300; r += 5) {
+            regions.add(new CellRangeAddress(r, r, 2, 6));
+        }
+        regions.add(new CellRangeAddress(400, 450, 1, 3));
+
+        MergedRegionIndex index = MergedRegionIndex.build("test", regions);
+        for (int row = 0; row < 460; row++) {
+            for (int col = 0; col < 10; col++) {
+                CellRangeAddress expected = null;
+                for (CellRangeAddress region : regions) {
+                    if (region.isInRange(row, col)) {
+                        expected = region;
+                        break;
+                    }
+                }
+                assertSame(expected, index.find(row, col), row + "," + col);
+            }
+        }
+    }
+}
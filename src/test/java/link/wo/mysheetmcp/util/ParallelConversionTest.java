@@ -0,0 +1,86 @@
+package link.wo.mysheetmcp.util;
+
+import link.wo.mysheetmcp.SampleWorkbooks;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 按 sheet 并行解析与逐个解析输出一致：xlsx 不论大小都由流式引擎并行解析，xls 每个线程使用自己打开的工作簿
+ */
+class ParallelConversionTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void parallelMatchesSequentialOutput() throws IOException {
+        for (String ext : new String[]{"xlsx", "xls"}) {
+            File file = SampleWorkbooks.createMultiSheet(tempDir, 6, 25, 5, ext);
+            String expected = convert(file, Long.MAX_VALUE, 1, 0);
+            for (long threshold : new long[]{Long.MAX_VALUE, 0}) {
+                assertEquals(expected, convert(file, threshold, 3, 1L << 20), ext + " threshold " + threshold);
+            }
+            // 缓冲超出预算：中止的 sheet 和之后的 sheet 逐个直接写出
+            assertEquals(expected, convert(file, Long.MAX_VALUE, 3, 12_000), ext);
+        }
+    }
+
+    @Test
+    void failureStopsUnitsAlreadyRunning() throws InterruptedException {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch stopped = new CountDownLatch(1);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            // 第一个单元在第二个单元开始输出后失败，第二个单元不会自行结束
+            IllegalStateException error = assertThrows(IllegalStateException.class, () ->
+                    ParallelConversion.run(List.of(0, 1), 2, Long.MAX_VALUE, pool, (unit, sink) -> {
+                        if (unit == 0) {
+                            running.await();
+                            throw new IllegalStateException("boom");
+                        }
+                        try {
+                            for (int row = 1; ; row++) {
+                                sink.startRow(row);
+                                sink.endRow();
+                                running.countDown();
+                                Thread.sleep(1);
+                            }
+                        } finally {
+                            stopped.countDown();
+                        }
+                    }, new BufferedSink()));
+            assertEquals("boom", error.getMessage());
+            assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private String convert(File file, long threshold, int parallelism, long bufferBytes) throws IOException {
+        Excel2JsonUtil util = SampleWorkbooks.converter(tempDir, threshold);
+        ReflectionTestUtils.setField(util, "PARALLEL_THREADS", 2);
+        ReflectionTestUtils.setField(util, "MAX_PARALLEL_PER_REQUEST", parallelism);
+        ReflectionTestUtils.setField(util, "PARALLEL_BUFFER_BYTES", bufferBytes);
+        util.init();
+        try {
+            String json = util.toJson(file, "basic").toJSONString();
+            // 线程池的工作线程在第一次提交任务时才创建
+            assertEquals(parallelism > 1, ((ForkJoinPool) util.getConvertPool()).getPoolSize() > 0, file.getName());
+            return json;
+        } finally {
+            util.shutdown();
+        }
+    }
+}
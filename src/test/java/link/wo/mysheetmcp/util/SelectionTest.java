@@ -0,0 +1,163 @@
+package link.wo.mysheetmcp.util;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import link.wo.mysheetmcp.SampleWorkbooks;
+import link.wo.mysheetmcp.store.AttachmentStore;
+import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * sheet / 列 / 行范围 / 条件在两种解析引擎中的结果一致
+ */
+class SelectionTest {
+
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void enginesApplySameSelection() throws IOException {
+        File file = SampleWorkbooks.create(tempDir);
+        Selection[] selections = {
+                Selection.parse("Sheet2", null, null, null),
+                Selection.parse("0", "名称,D", null, null),
+                Selection.parse(null, "A,B", "3-9", null),
+                Selection.parse(null, null, "-5", "数量 >= 3"),
+                Selection.parse("数据", "名称,金额", null, "名称 ~ '项目1' and 数量 < 20"),
+        };
+        for (String type : new String[]{"basic", "row-object"}) {
+            for (Selection selection : selections) {
+                assertEquals(convert(file, type, Long.MAX_VALUE, selection), convert(file, type, 0, selection),
+                        type + " " + selection.key());
+            }
+        }
+    }
+
+    @Test
+    void selectsColumnsAndFiltersRows() throws IOException {
+        File file = SampleWorkbooks.create(tempDir);
+        JSONObject json = convert(file, "row-object", 0, Selection.parse(null, "名称,B", "2-12", "数量 > 9"));
+
+        assertEquals(2, json.getJSONObject("header").size());
+        JSONArray data = json.getJSONArray("data");
+        // 数量 = 1.5 * 行序号；行 6..8 的 B 列合并到 B6(7.5)，行 7 缺失，满足条件的只有 9..11
+        assertEquals(3, data.size());
+        for (int i = 0; i < data.size(); i++) {
+            assertEquals(9 + i, data.getJSONObject(i).getIntValue("index"));
+            assertEquals(3, data.getJSONObject(i).size());
+        }
+    }
+
+    @Test
+    void attachmentsOutsideSelectionAreNotUploaded() throws IOException {
+        File file = createAttachments(new File(tempDir, "attachments.xlsx"));
+        Object[][] cases = {
+                // type, sheet, columns, rows, 上传的附件
+                {"basic", null, null, null, Set.of("B2", "B3", "D4", "Sheet2!A1")},
+                {"row-object", null, null, null, Set.of("B2", "B3", "D4")},
+                {"basic", "Sheet2", null, null, Set.of("Sheet2!A1")},
+                {"row-object", "Sheet2", null, null, Set.of()},
+                {"basic", null, "A", null, Set.of("Sheet2!A1")},
+                {"basic", null, null, "3", Set.of("B3")},
+                {"row-object", null, "图", "3-9", Set.of("B3")},
+                // D4 所在的合并区域 D4:E6 延伸到选中的行和列
+                {"basic", null, "E", "5-6", Set.of("D4")},
+                {"row-object", null, "C", "5-6", Set.of()},
+        };
+        for (long threshold : new long[]{Long.MAX_VALUE, 0}) {
+            for (Object[] c : cases) {
+                Set<String> uploaded = ConcurrentHashMap.newKeySet();
+                AttachmentStore store = mock(AttachmentStore.class);
+                when(store.url(any())).thenAnswer(inv -> "https://cos/" + inv.getArgument(0));
+                when(store.put(any(), any())).thenAnswer(inv -> {
+                    byte[] data = inv.getArgument(1);
+                    uploaded.add(new String(data, PNG.length, data.length - PNG.length, StandardCharsets.UTF_8));
+                    return "https://cos/" + inv.getArgument(0);
+                });
+                File dir = Files.createTempDirectory(tempDir.toPath(), "index").toFile();
+                Selection selection = Selection.parse((String) c[1], (String) c[2], (String) c[3], null);
+                SampleWorkbooks.converter(dir, threshold, store).convert(file, (String) c[0], new JsonTreeSink(Excel2JsonUtil.isRowObject((String) c[0])),
+                        AttachmentMode.UPLOAD, selection);
+                assertEquals(c[4], uploaded, threshold + " " + Arrays.toString(c));
+            }
+        }
+    }
+
+    /**
+     * Sheet1 的 B2、B3 和合并区域 D4:E6 的左上角各有一张图片，Sheet2 的 A1 有一张图片；图片内容为 PNG 文件头加位置
+     */
+    private static File createAttachments(File file) throws IOException {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            Sheet first = workbook.createSheet("Sheet1");
+            Row header = first.createRow(0);
+            String[] names = {"名称", "图", "备注", "合并"};
+            for (int i = 0; i < names.length; i++) {
+                header.createCell(i).setCellValue(names[i]);
+            }
+            for (int r = 1; r < 6; r++) {
+                first.createRow(r).createCell(0).setCellValue("项目" + r);
+            }
+            first.addMergedRegion(new CellRangeAddress(3, 5, 3, 4));
+            addPicture(first, 1, 1, "B2");
+            addPicture(first, 2, 1, "B3");
+            addPicture(first, 3, 3, "D4");
+            Sheet second = workbook.createSheet("Sheet2");
+            second.createRow(0).createCell(0).setCellValue("图");
+            addPicture(second, 0, 0, "Sheet2!A1");
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                workbook.write(out);
+            }
+        }
+        return file;
+    }
+
+    private static void addPicture(Sheet sheet, int row, int col, String name) {
+        Workbook workbook = sheet.getWorkbook();
+        ClientAnchor anchor = workbook.getCreationHelper().createClientAnchor();
+        anchor.setRow1(row);
+        anchor.setCol1(col);
+        byte[] tag = name.getBytes(StandardCharsets.UTF_8);
+        byte[] data = Arrays.copyOf(PNG, PNG.length + tag.length);
+        System.arraycopy(tag, 0, data, PNG.length, tag.length);
+        sheet.createDrawingPatriarch().createPicture(anchor, workbook.addPicture(data, Workbook.PICTURE_TYPE_PNG));
+    }
+
+    @Test
+    void rejectsInvalidSelection() throws IOException {
+        assertThrows(IllegalArgumentException.class, () -> Selection.parse(null, null, "9-2", null));
+        assertThrows(IllegalArgumentException.class, () -> Selection.parse(null, null, null, "数量"));
+        File file = SampleWorkbooks.create(tempDir);
+        assertThrows(IllegalArgumentException.class, () -> convert(file, "basic", 0, Selection.parse("missing", null, null, null)));
+        assertTrue(Selection.parse(null, " ", "", null).isAll());
+    }
+
+    private JSONObject convert(File file, String type, long threshold, Selection selection) throws IOException {
+        JsonTreeSink sink = new JsonTreeSink(Excel2JsonUtil.isRowObject(type));
+        SampleWorkbooks.converter(tempDir, threshold).convert(file, type, sink, AttachmentMode.LAZY, selection);
+        return sink.getJson();
+    }
+}
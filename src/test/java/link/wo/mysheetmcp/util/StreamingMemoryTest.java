@@ -0,0 +1,100 @@
+package link.wo.mysheetmcp.util;
+
+import link.wo.mysheetmcp.SampleWorkbooks;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 流式引擎并行解析多个大 sheet 时，堆内存远小于单个 sheet 的输出也能完成转换。
+ * 转换在独立的 JVM(-Xmx64m)中执行，输出写入空流。
+ */
+class StreamingMemoryTest {
+
+    private static final int SHEETS = 3;
+    private static final int ROWS = 60_000;
+    private static final int COLS = 10;
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void largeSheetsConvertUnderBoundedHeap() throws Exception {
+        File file = createLarge(new File(tempDir, "large.xlsx"));
+        String java = new File(System.getProperty("java.home"), "bin/java").getPath();
+        String classpath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+        File output = new File(tempDir, "child.log");
+        Process process = new ProcessBuilder(java, "-Xmx64m", "-XX:+ExitOnOutOfMemoryError", "-cp", classpath,
+                Child.class.getName(), file.getPath(), tempDir.getPath())
+                .redirectErrorStream(true)
+                .redirectOutput(output)
+                .start();
+        assertTrue(process.waitFor(5, TimeUnit.MINUTES), "conversion timed out");
+        List<String> lines = Files.readAllLines(output.toPath());
+        assertEquals(0, process.exitValue(), String.join("\n", lines));
+        // 输出的 JSON 比整个堆还大
+        long bytes = Long.parseLong(lines.get(lines.size() - 1).trim());
+        assertTrue(bytes > 64L << 20, "bytes " + bytes);
+    }
+
+    /**
+     * SXSSF 写出的单元格文本为内联字符串，流式引擎不需要加载共享字符串表
+     */
+    private static File createLarge(File file) throws IOException {
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(100)) {
+            for (int s = 0; s < SHEETS; s++) {
+                Sheet sheet = workbook.createSheet("Sheet" + (s + 1));
+                for (int r = 0; r < ROWS; r++) {
+                    Row row = sheet.createRow(r);
+                    for (int c = 0; c < COLS; c++) {
+                        if (c % 2 == 0) {
+                            row.createCell(c).setCellValue("S" + s + "R" + r + "C" + c);
+                        } else {
+                            row.createCell(c).setCellValue(r * 1.5 + c);
+                        }
+                    }
+                }
+            }
+            try (OutputStream out = new FileOutputStream(file)) {
+                workbook.write(out);
+            }
+            workbook.dispose();
+        }
+        return file;
+    }
+
+    /**
+     * 子进程入口：args[0] 为 xlsx 文件，args[1] 为工作目录；最后一行输出 JSON 的字节数
+     */
+    public static final class Child {
+        public static void main(String[] args) throws IOException {
+            File file = new File(args[0]);
+            Excel2JsonUtil util = SampleWorkbooks.converter(new File(args[1]), 0);
+            ReflectionTestUtils.setField(util, "PARALLEL_THREADS", 4);
+            ReflectionTestUtils.setField(util, "MAX_PARALLEL_PER_REQUEST", 4);
+            ReflectionTestUtils.setField(util, "PARALLEL_BUFFER_BYTES", 8L << 20);
+            util.init();
+            try {
+                JsonStreamSink sink = new JsonStreamSink(OutputStream.nullOutputStream(), false);
+                util.convert(file, "basic", sink);
+                System.out.println(sink.finish(file.getName(), ""));
+            } finally {
+                util.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package link.wo.mysheetmcp.util;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import link.wo.mysheetmcp.SampleWorkbooks;
+import link.wo.mysheetmcp.store.ColumnarTable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TableQueryTest {
+
+    @TempDir
+    File tempDir;
+
+    private JSONObject query(ColumnarTable table, String select, String where, String groupBy, String aggregates, String orderBy) {
+        return TableQuery.parse(select, where, groupBy, aggregates, orderBy)
+                .execute(table, table.getTables().get(0), null, 1, 0, 100);
+    }
+
+    @Test
+    void aggregatesByHeaderName() throws IOException {
+        ColumnarTable table = ColumnarTable.build(SampleWorkbooks.store(tempDir, SampleWorkbooks.create(tempDir), "basic"));
+
+        // 数量 = 1.5 * i，第 8 行(i = 7)缺失；金额为货币文本 i * 100.25
+        JSONObject result = query(table, null, "数量 > 9", null, "sum(数量), count(*), max(名称), sum(金额)", null);
+        assertEquals(13, result.getIntValue("matched"));
+        JSONArray row = result.getJSONArray("rows").getJSONArray(0);
+        assertEquals(273.0, row.getDoubleValue(0));
+        assertEquals(13L, row.getLongValue(1));
+        assertEquals("项目9", row.getString(2));
+        assertEquals(100.25 * (210 - 28), row.getDoubleValue(3), 1e-6);
+
+        JSONObject groups = query(table, null, null, "F", "count(*), avg(数量)", "F desc");
+        assertEquals(2, groups.getIntValue("groups"));
+        assertEquals(true, groups.getJSONArray("rows").getJSONArray(0).getBoolean(0));
+        assertEquals(10L, groups.getJSONArray("rows").getJSONArray(0).getLongValue(1));
+
+        JSONObject rows = query(table, "名称,B", "名称 ~ 项目1", null, null, "B desc");
+        assertEquals("row", rows.getJSONArray("columns").getString(0));
+        assertEquals(11, rows.getIntValue("matched"));
+        assertEquals(JSONArray.of(20, "项目19", 28.5), rows.getJSONArray("rows").getJSONArray(0));
+
+        assertThrows(IllegalArgumentException.class, () -> query(table, "不存在", null, null, null, null));
+        assertThrows(IllegalArgumentException.class, () -> query(table, null, null, null, "median(B)", null));
+    }
+
+    @Test
+    void orderedRowsAreTheTopOfAStableSort() throws IOException {
+        ColumnarTable table = ColumnarTable.build(SampleWorkbooks.store(tempDir, SampleWorkbooks.createMultiSheet(tempDir, 1, 3000, 6), "row-object"));
+        ColumnarTable.Table sheet = table.getTables().get(0);
+        for (String orderBy : new String[]{"D desc", "E", "A desc"}) {
+            TableQuery query = TableQuery.parse("A,D,E", "D > 30", null, null, orderBy);
+            JSONObject full = query.execute(table, sheet, null, 1, 0, 10_000);
+            JSONArray all = full.getJSONArray("rows");
+            assertEquals(full.getIntValue("matched"), all.size());
+            for (int i = 1; i < all.size(); i++) {
+                JSONArray prev = all.getJSONArray(i - 1);
+                JSONArray row = all.getJSONArray(i);
+                int c = switch (orderBy) {
+                    case "D desc" -> Double.compare(row.getDoubleValue(2), prev.getDoubleValue(2));
+                    case "A desc" -> row.getString(1).compareTo(prev.getString(1));
+                    default -> prev.getString(3).compareTo(row.getString(3));
+                };
+                assertTrue(c < 0 || c == 0 && prev.getIntValue(0) < row.getIntValue(0), orderBy + " at " + i);
+            }
+            for (int limit : new int[]{1, 7, 100}) {
+                JSONObject top = query.execute(table, sheet, null, 1, 0, limit);
+                assertEquals(new JSONArray(all.subList(0, limit)), top.getJSONArray("rows"), orderBy + " limit " + limit);
+                assertTrue(top.getBooleanValue("truncated"));
+            }
+        }
+    }
+
+    @Test
+    void parallelMatchesSequential() throws IOException {
+        ColumnarTable table = ColumnarTable.build(SampleWorkbooks.store(tempDir, SampleWorkbooks.createMultiSheet(tempDir, 1, 3000, 6), "row-object"));
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            String[][] queries = {
+                    {null, "B > 2000", "A", "sum(B), count(*), min(D), max(D), distinct(C)", "sum(B) desc"},
+                    {"A,B,F", "D < 1500 and A ~ R1", null, null, "B desc"},
+                    {null, null, null, "avg(B), count(E)", null},
+            };
+            for (String[] q : queries) {
+                TableQuery query = TableQuery.parse(q[0], q[1], q[2], q[3], q[4]);
+                ColumnarTable.Table sheet = table.getTables().get(0);
+                assertEquals(query.execute(table, sheet, null, 1, 0, 50), query.execute(table, sheet, pool, 3, 100, 50));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package link.wo.mysheetmcp.util;
+
+import com.alibaba.fastjson2.JSONObject;
+import link.wo.mysheetmcp.SampleWorkbooks;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 流式引擎与 XSSFWorkbook 引擎输出一致性
+ */
+class XlsxStreamingReaderTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void streamingMatchesWorkbookOutput() throws IOException {
+        File file = createWorkbook();
+        for (String type : new String[]{"basic", "row-object"}) {
+            JSONObject expected = convert(file, type, Long.MAX_VALUE);
+            JSONObject actual = convert(file, type, 0);
+            assertEquals(expected.toJSONString(), actual.toJSONString(), type);
+        }
+    }
+
+    private JSONObject convert(File file, String type, long streamingThreshold) throws IOException {
+        Excel2JsonUtil util = SampleWorkbooks.converter(tempDir, streamingThreshold);
+        return util.toJson(file, type);
+    }
+
+    private File createWorkbook() throws IOException {
+        return SampleWorkbooks.create(tempDir);
+    }
+}